@@ -0,0 +1,224 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+
+/**
+ * The Java Flight Recorder events marked by FNNEvents.  This is kept out of src, which is
+ * built for Java 8, because it needs jdk.jfr:  build it along with src (JDK 11 and up, or
+ * OpenJDK 8 from 8u262) to have the events recorded.
+ */
+public class JfrFNNEvents extends FNNEvents {
+
+	@Name("fnn.Step")
+	@Label("FNN Step")
+	@Category({ "FNN", "Simulation" })
+	@Description("One iteration (update and move) of a FluidNN, sampled every stepSampleInterval iterations")
+	@StackTrace(false)
+	static class StepEvent extends Event {
+		@Label("Iteration")
+		int iteration;
+		@Label("Rows")
+		int numRows;
+		@Label("Columns")
+		int numCols;
+		@Label("Neurons")
+		int numNeurons;
+		@Label("Gain")
+		double gain;
+		@Label("Active Neurons")
+		int numActive;
+		@Label("Moves")
+		long numMoves;
+	}
+
+
+	@Name("fnn.Run")
+	@Label("FNN Run")
+	@Category({ "FNN", "Simulation" })
+	@Description("One run of an experiment, from creating the network to the measures at the end")
+	@StackTrace(false)
+	static class RunEvent extends Event {
+		@Label("Lattice Size")
+		int latticeSize;
+		@Label("Density")
+		double density;
+		@Label("Neurons")
+		int numNeurons;
+		@Label("Gain")
+		double gain;
+		@Label("Spontaneous Activation Level")
+		double spontActLevel;
+		@Label("Spontaneous Activation Probability")
+		double spontActProb;
+		@Label("Run")
+		int run;
+		@Label("Seed")
+		long seed;
+		@Label("Iterations")
+		int numIterations;
+		@Label("Times Active")
+		long numTimesActive;
+		@Label("Moves")
+		long numActualMoves;
+	}
+
+
+	@Name("fnn.Configuration")
+	@Label("FNN Configuration")
+	@Category({ "FNN", "Simulation" })
+	@Description("All the runs of one configuration (one row of an experiment or sweep)")
+	@StackTrace(false)
+	static class ConfigurationEvent extends Event {
+		@Label("Lattice Size")
+		int latticeSize;
+		@Label("Density")
+		double density;
+		@Label("Neurons")
+		int numNeurons;
+		@Label("Gain")
+		double gain;
+		@Label("Spontaneous Activation Level")
+		double spontActLevel;
+		@Label("Spontaneous Activation Probability")
+		double spontActProb;
+		@Label("Runs")
+		int numRuns;
+		@Label("Seed")
+		long seed;
+	}
+
+
+	@Name("fnn.Analysis")
+	@Label("FNN Analysis")
+	@Category({ "FNN", "Analysis" })
+	@Description("Working out a measure from the histories (AIS, info transfer, SKE)")
+	@StackTrace(false)
+	static class AnalysisEvent extends Event {
+		@Label("Phase")
+		String phase;
+		// e.g., the length of the histories, or the number of bins
+		@Label("Size")
+		int size;
+	}
+
+
+	// to tell whether an event is to be recorded before allocating it
+	private static final EventType stepType = EventType.getEventType(StepEvent.class);
+	private static final EventType runType = EventType.getEventType(RunEvent.class);
+	private static final EventType configurationType = EventType.getEventType(ConfigurationEvent.class);
+	private static final EventType analysisType = EventType.getEventType(AnalysisEvent.class);
+
+
+	@Override
+	protected Object newStep() {
+		if (!stepType.isEnabled())
+			return null;
+		StepEvent event = new StepEvent();
+		event.begin();
+		return event;
+	}
+
+	@Override
+	protected void commitStep(Object step, int iteration, int numRows, int numCols, int numNeurons,
+			double gain, int numActive, long numMoves) {
+		StepEvent event = (StepEvent) step;
+		event.end();
+		if (event.shouldCommit()) {
+			event.iteration = iteration;
+			event.numRows = numRows;
+			event.numCols = numCols;
+			event.numNeurons = numNeurons;
+			event.gain = gain;
+			event.numActive = numActive;
+			event.numMoves = numMoves;
+			event.commit();
+		}
+	}
+
+
+	@Override
+	protected Object newRun() {
+		if (!runType.isEnabled())
+			return null;
+		RunEvent event = new RunEvent();
+		event.begin();
+		return event;
+	}
+
+	@Override
+	protected void commitRun(Object run, int latticeSize, double density, int numNeurons, double gain,
+			double spontActLevel, double spontActProb, int runNumber, long seed, int numIterations,
+			long numTimesActive, long numActualMoves) {
+		RunEvent event = (RunEvent) run;
+		event.end();
+		if (event.shouldCommit()) {
+			event.latticeSize = latticeSize;
+			event.density = density;
+			event.numNeurons = numNeurons;
+			event.gain = gain;
+			event.spontActLevel = spontActLevel;
+			event.spontActProb = spontActProb;
+			event.run = runNumber;
+			event.seed = seed;
+			event.numIterations = numIterations;
+			event.numTimesActive = numTimesActive;
+			event.numActualMoves = numActualMoves;
+			event.commit();
+		}
+	}
+
+
+	@Override
+	protected Object newConfiguration() {
+		if (!configurationType.isEnabled())
+			return null;
+		ConfigurationEvent event = new ConfigurationEvent();
+		event.begin();
+		return event;
+	}
+
+	@Override
+	protected void commitConfiguration(Object configuration, int latticeSize, double density, int numNeurons,
+			double gain, double spontActLevel, double spontActProb, int numRuns, long seed) {
+		ConfigurationEvent event = (ConfigurationEvent) configuration;
+		event.end();
+		if (event.shouldCommit()) {
+			event.latticeSize = latticeSize;
+			event.density = density;
+			event.numNeurons = numNeurons;
+			event.gain = gain;
+			event.spontActLevel = spontActLevel;
+			event.spontActProb = spontActProb;
+			event.numRuns = numRuns;
+			event.seed = seed;
+			event.commit();
+		}
+	}
+
+
+	@Override
+	protected Object newAnalysis() {
+		if (!analysisType.isEnabled())
+			return null;
+		AnalysisEvent event = new AnalysisEvent();
+		event.begin();
+		return event;
+	}
+
+	@Override
+	protected void commitAnalysis(Object analysis, String phase, int size) {
+		AnalysisEvent event = (AnalysisEvent) analysis;
+		event.end();
+		if (event.shouldCommit()) {
+			event.phase = phase;
+			event.size = size;
+			event.commit();
+		}
+	}
+
+}
@@ -0,0 +1,567 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+
+/**
+ * The history of a neuron's activation *levels*, one value per iteration of data collection,
+ * in one of several encodings:
+ *
+ *   DOUBLE      a double per iteration (exact; the default)
+ *   FLOAT32     a float per iteration
+ *   FLOAT16     an IEEE half-precision float per iteration
+ *   QUANTIZED   fixed point:  a short per iteration, level * 32767 rounded, which covers the
+ *               range of tanh (levels outside [-1, 1] are clamped)
+ *   DELTA       the same fixed-point codes, stored as the difference from the previous code
+ *               (zigzag-encoded, then as a varint:  7 bits per byte), so levels that change
+ *               slowly take a byte each
+ *
+ * On a big lattice a double per neuron per iteration doesn't fit in memory;  maxError() is
+ * the largest difference between a level that is set and the level get returns, for levels
+ * in [-1, 1] (activation levels are tanh of something, the spontaneous activation level or
+ * an initial level, all of which are in that range).  The bound is absolute, so QUANTIZED
+ * and DELTA can't tell apart levels very close to 0, while the floating-point encodings keep
+ * their relative precision there; the KSG estimator only looks at which points are nearest
+ * to which, so it can give quite different results with QUANTIZED or DELTA histories.
+ *
+ * Values that haven't been set are 0.0.  A DELTA history has to be written in order:  set(i)
+ * either appends (i is the number of values set so far) or overwrites the last value; the
+ * other encodings can be set in any order.
+ */
+public abstract class ActivationLevelHistory {
+
+	public static enum Encoding {
+		DOUBLE, FLOAT32, FLOAT16, QUANTIZED, DELTA
+	}
+
+	// largest fixed-point code (for QUANTIZED and DELTA):  level 1.0
+	private static final int QUANTIZED_SCALE = 32767;
+
+	protected int length;
+
+
+	protected ActivationLevelHistory(int length) {
+		this.length = length;
+	}
+
+
+	// a history of the given number of iterations in the given encoding
+	public static ActivationLevelHistory create(Encoding encoding, int length) {
+
+		if (encoding == Encoding.DOUBLE) {
+			return new DoubleHistory(length);
+		}
+		else if (encoding == Encoding.FLOAT32) {
+			return new Float32History(length);
+		}
+		else if (encoding == Encoding.FLOAT16) {
+			return new Float16History(length);
+		}
+		else if (encoding == Encoding.QUANTIZED) {
+			return new QuantizedHistory(length);
+		}
+		else if (encoding == Encoding.DELTA) {
+			return new DeltaHistory(length);
+		}
+
+		System.out.println("error:  unknown encoding in ActivationLevelHistory.create");
+		System.exit(-1);
+		return null;
+
+	}
+
+
+	// the level in iteration i
+	public abstract double get(int i);
+
+	// record the level in iteration i
+	public abstract void set(int i, double level);
+
+	public abstract Encoding getEncoding();
+
+	// largest error in a level in [-1, 1]
+	public abstract double maxError();
+
+	// approximate memory used by the values, in bytes
+	public abstract long numBytes();
+
+	// the values, as they are stored (only the first count of them, where the encoding
+	// allows it)
+	protected abstract void writeValues(DataOutput out, int count) throws IOException;
+
+	protected abstract void readValues(DataInput in) throws IOException;
+
+
+	// save the history; only the first count values are saved (the rest are 0.0 when it
+	// is read), e.g., the ones that have been set so far
+	public void write(DataOutput out, int count) throws IOException {
+		out.writeInt(getEncoding().ordinal());
+		out.writeInt(length);
+		writeValues(out, count);
+	}
+
+
+	// a history saved with write
+	public static ActivationLevelHistory read(DataInput in) throws IOException {
+		Encoding encoding = Encoding.values()[in.readInt()];
+		ActivationLevelHistory history = create(encoding, in.readInt());
+		history.readValues(in);
+		return history;
+	}
+
+
+	// the levels in iterations from (inclusive) to to (exclusive), like Arrays.copyOfRange
+	public double[] toArray(int from, int to) {
+		double[] levels = new double[to - from];
+		for (int i = from ; i < to ; ++i) {
+			levels[i - from] = get(i);
+		}
+		return levels;
+	}
+
+
+	// all of the levels
+	public double[] toArray() {
+		return toArray(0, length);
+	}
+
+
+	public int length() {
+		return length;
+	}
+
+
+	// fixed-point code of a level (for QUANTIZED and DELTA)
+	private static int quantize(double level) {
+		if (level >= 1.0) {
+			return QUANTIZED_SCALE;
+		}
+		if (level <= -1.0) {
+			return -QUANTIZED_SCALE;
+		}
+		return (int) Math.rint(level * QUANTIZED_SCALE);
+	}
+
+	private static double dequantize(int code) {
+		return (double) code / QUANTIZED_SCALE;
+	}
+
+
+	private static class DoubleHistory extends ActivationLevelHistory {
+
+		private double[] levels;
+
+		DoubleHistory(int length) {
+			super(length);
+			levels = new double[length];
+		}
+
+		public double get(int i) {
+			return levels[i];
+		}
+
+		public void set(int i, double level) {
+			levels[i] = level;
+		}
+
+		public double[] toArray(int from, int to) {
+			return Arrays.copyOfRange(levels, from, to);
+		}
+
+		public Encoding getEncoding() {
+			return Encoding.DOUBLE;
+		}
+
+		public double maxError() {
+			return 0.0;
+		}
+
+		public long numBytes() {
+			return 8L * levels.length;
+		}
+
+		protected void writeValues(DataOutput out, int count) throws IOException {
+			out.writeInt(count);
+			for (int i = 0 ; i < count ; ++i) {
+				out.writeDouble(levels[i]);
+			}
+		}
+
+		protected void readValues(DataInput in) throws IOException {
+			int count = in.readInt();
+			for (int i = 0 ; i < count ; ++i) {
+				levels[i] = in.readDouble();
+			}
+		}
+
+	}
+
+
+	private static class Float32History extends ActivationLevelHistory {
+
+		private float[] levels;
+
+		Float32History(int length) {
+			super(length);
+			levels = new float[length];
+		}
+
+		public double get(int i) {
+			return levels[i];
+		}
+
+		public void set(int i, double level) {
+			levels[i] = (float) level;
+		}
+
+		public Encoding getEncoding() {
+			return Encoding.FLOAT32;
+		}
+
+		// half the spacing of floats in [0.5, 1)
+		public double maxError() {
+			return 0x1.0p-25;
+		}
+
+		public long numBytes() {
+			return 4L * levels.length;
+		}
+
+		protected void writeValues(DataOutput out, int count) throws IOException {
+			out.writeInt(count);
+			for (int i = 0 ; i < count ; ++i) {
+				out.writeFloat(levels[i]);
+			}
+		}
+
+		protected void readValues(DataInput in) throws IOException {
+			int count = in.readInt();
+			for (int i = 0 ; i < count ; ++i) {
+				levels[i] = in.readFloat();
+			}
+		}
+
+	}
+
+
+	private static class Float16History extends ActivationLevelHistory {
+
+		private short[] levels;
+
+		Float16History(int length) {
+			super(length);
+			levels = new short[length];
+		}
+
+		public double get(int i) {
+			return fromHalf(levels[i]);
+		}
+
+		public void set(int i, double level) {
+			levels[i] = toHalf(level);
+		}
+
+		public Encoding getEncoding() {
+			return Encoding.FLOAT16;
+		}
+
+		// half the spacing of half-precision floats in [0.5, 1)
+		public double maxError() {
+			return 0x1.0p-12;
+		}
+
+		public long numBytes() {
+			return 2L * levels.length;
+		}
+
+		protected void writeValues(DataOutput out, int count) throws IOException {
+			out.writeInt(count);
+			for (int i = 0 ; i < count ; ++i) {
+				out.writeShort(levels[i]);
+			}
+		}
+
+		protected void readValues(DataInput in) throws IOException {
+			int count = in.readInt();
+			for (int i = 0 ; i < count ; ++i) {
+				levels[i] = in.readShort();
+			}
+		}
+
+		// nearest half-precision float (ties to even):  1 sign bit, 5 exponent bits (bias 15)
+		// and 10 fraction bits
+		static short toHalf(double level) {
+
+			int sign = (Double.doubleToRawLongBits(level) < 0) ? 0x8000 : 0;
+			double magnitude = Math.abs(level);
+
+			if (Double.isNaN(level)) {
+				return (short) 0x7E00;
+			}
+			// halfway between the largest half (65504) and the next power of two rounds up
+			if (magnitude >= 65520.0) {
+				return (short) (sign | 0x7C00);
+			}
+
+			int exponent = Math.getExponent(magnitude);
+			// subnormal (or zero):  a multiple of 2^-24
+			if (exponent < -14) {
+				return (short) (sign | (int) Math.rint(Math.scalb(magnitude, 24)));
+			}
+
+			int significand = (int) Math.rint(Math.scalb(magnitude, 10 - exponent));
+			// rounded up to the next power of two
+			if (significand == 2048) {
+				significand = 1024;
+				++exponent;
+			}
+			return (short) (sign | ((exponent + 15) << 10) | (significand - 1024));
+
+		}
+
+		static double fromHalf(short half) {
+
+			int exponent = (half >>> 10) & 0x1F;
+			int fraction = half & 0x3FF;
+			double magnitude;
+			if (exponent == 0) {
+				magnitude = Math.scalb((double) fraction, -24);
+			}
+			else if (exponent == 31) {
+				magnitude = (fraction == 0) ? Double.POSITIVE_INFINITY : Double.NaN;
+			}
+			else {
+				magnitude = Math.scalb((double) (fraction + 1024), exponent - 25);
+			}
+			return (half & 0x8000) != 0 ? -magnitude : magnitude;
+
+		}
+
+	}
+
+
+	private static class QuantizedHistory extends ActivationLevelHistory {
+
+		private short[] codes;
+
+		QuantizedHistory(int length) {
+			super(length);
+			codes = new short[length];
+		}
+
+		public double get(int i) {
+			return dequantize(codes[i]);
+		}
+
+		public void set(int i, double level) {
+			codes[i] = (short) quantize(level);
+		}
+
+		public Encoding getEncoding() {
+			return Encoding.QUANTIZED;
+		}
+
+		// half the spacing of the codes
+		public double maxError() {
+			return 0.5 / QUANTIZED_SCALE;
+		}
+
+		public long numBytes() {
+			return 2L * codes.length;
+		}
+
+		protected void writeValues(DataOutput out, int count) throws IOException {
+			out.writeInt(count);
+			for (int i = 0 ; i < count ; ++i) {
+				out.writeShort(codes[i]);
+			}
+		}
+
+		protected void readValues(DataInput in) throws IOException {
+			int count = in.readInt();
+			for (int i = 0 ; i < count ; ++i) {
+				codes[i] = in.readShort();
+			}
+		}
+
+	}
+
+
+	// the varint-encoded code differences, one after another, plus, for every block of
+	// BLOCK_SIZE values, where its first value starts and the code before it, so get(i)
+	// only decodes from the start of i's block
+	private static class DeltaHistory extends ActivationLevelHistory {
+
+		private static final int BLOCK_SHIFT = 6;
+		private static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+
+		private byte[] bytes;
+		private int numBytes;
+		// number of values set so far
+		private int size;
+
+		// where the last value starts, its code, and the code before it (so that it can be
+		// overwritten)
+		private int lastStart;
+		private int lastCode;
+		private int previousCode;
+
+		private int[] blockStart;
+		private int[] blockPreviousCode;
+
+		DeltaHistory(int length) {
+			super(length);
+			// slowly changing levels take one byte each
+			bytes = new byte[Math.max(16, length)];
+			numBytes = 0;
+			size = 0;
+			lastCode = 0;
+			previousCode = 0;
+			int numBlocks = (length + BLOCK_SIZE - 1) >>> BLOCK_SHIFT;
+			blockStart = new int[numBlocks];
+			blockPreviousCode = new int[numBlocks];
+		}
+
+		public double get(int i) {
+
+			if (i >= size) {
+				if (i >= length) {
+					throw new ArrayIndexOutOfBoundsException(i);
+				}
+				return 0.0;
+			}
+
+			int block = i >>> BLOCK_SHIFT;
+			int position = blockStart[block];
+			int code = blockPreviousCode[block];
+			for (int j = block << BLOCK_SHIFT ; j <= i ; ++j) {
+				int delta = 0;
+				int shift = 0;
+				int b;
+				do {
+					b = bytes[position++];
+					delta |= (b & 0x7F) << shift;
+					shift += 7;
+				} while ((b & 0x80) != 0);
+				code += (delta >>> 1) ^ -(delta & 1);
+			}
+			return dequantize(code);
+
+		}
+
+		public void set(int i, double level) {
+
+			if (i == size - 1) {
+				// overwrite the last value
+				numBytes = lastStart;
+				--size;
+				lastCode = previousCode;
+			}
+			else if (i != size) {
+				throw new IllegalArgumentException("a DELTA history has to be set in order (set " + i + " after "
+						+ size + " values)");
+			}
+
+			int code = quantize(level);
+			if ((size & (BLOCK_SIZE - 1)) == 0) {
+				blockStart[size >>> BLOCK_SHIFT] = numBytes;
+				blockPreviousCode[size >>> BLOCK_SHIFT] = lastCode;
+			}
+
+			// at most 3 bytes for the difference of two codes
+			if (numBytes + 3 > bytes.length) {
+				bytes = Arrays.copyOf(bytes, bytes.length + (bytes.length >>> 1) + 3);
+			}
+			lastStart = numBytes;
+			int delta = code - lastCode;
+			int zigzag = (delta << 1) ^ (delta >> 31);
+			while ((zigzag & ~0x7F) != 0) {
+				bytes[numBytes++] = (byte) ((zigzag & 0x7F) | 0x80);
+				zigzag >>>= 7;
+			}
+			bytes[numBytes++] = (byte) zigzag;
+
+			previousCode = lastCode;
+			lastCode = code;
+			++size;
+
+		}
+
+		// decodes from the start of from's block in one pass
+		public double[] toArray(int from, int to) {
+
+			double[] levels = new double[to - from];
+			int end = Math.min(to, size);
+			if (from >= end) {
+				return levels;
+			}
+			int block = from >>> BLOCK_SHIFT;
+			int position = blockStart[block];
+			int code = blockPreviousCode[block];
+			for (int i = block << BLOCK_SHIFT ; i < end ; ++i) {
+				int delta = 0;
+				int shift = 0;
+				int b;
+				do {
+					b = bytes[position++];
+					delta |= (b & 0x7F) << shift;
+					shift += 7;
+				} while ((b & 0x80) != 0);
+				code += (delta >>> 1) ^ -(delta & 1);
+				if (i >= from) {
+					levels[i - from] = dequantize(code);
+				}
+			}
+			return levels;
+
+		}
+
+		public Encoding getEncoding() {
+			return Encoding.DELTA;
+		}
+
+		// the same codes as QUANTIZED
+		public double maxError() {
+			return 0.5 / QUANTIZED_SCALE;
+		}
+
+		public long numBytes() {
+			return bytes.length + 8L * blockStart.length;
+		}
+
+		// everything that has been set (count doesn't matter; the values are set in order)
+		protected void writeValues(DataOutput out, int count) throws IOException {
+			out.writeInt(size);
+			out.writeInt(numBytes);
+			out.write(bytes, 0, numBytes);
+			out.writeInt(lastStart);
+			out.writeInt(lastCode);
+			out.writeInt(previousCode);
+			int numBlocks = (size + BLOCK_SIZE - 1) >>> BLOCK_SHIFT;
+			for (int block = 0 ; block < numBlocks ; ++block) {
+				out.writeInt(blockStart[block]);
+				out.writeInt(blockPreviousCode[block]);
+			}
+		}
+
+		protected void readValues(DataInput in) throws IOException {
+			size = in.readInt();
+			numBytes = in.readInt();
+			if (numBytes > bytes.length) {
+				bytes = new byte[numBytes];
+			}
+			in.readFully(bytes, 0, numBytes);
+			lastStart = in.readInt();
+			lastCode = in.readInt();
+			previousCode = in.readInt();
+			int numBlocks = (size + BLOCK_SIZE - 1) >>> BLOCK_SHIFT;
+			for (int block = 0 ; block < numBlocks ; ++block) {
+				blockStart[block] = in.readInt();
+				blockPreviousCode[block] = in.readInt();
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,128 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+
+/**
+ * The history of a neuron's activation *status* (active or not), one bit per iteration of
+ * data collection, packed 64 to a long:  bit i of the history is bit (i % 64) of word i / 64.
+ * Bits past the end of the history are always 0.
+ *
+ * This is 32 times smaller than an int per iteration, and the probabilities Neuron and FNN
+ * need come from Long.bitCount over whole words (ANDed together, or with one of them
+ * inverted, for joint states) rather than from a loop over every iteration.
+ */
+public class ActiveInactiveHistory {
+
+	private long[] words;
+	private int length;
+
+
+	// a history of the given number of iterations, all of them inactive
+	public ActiveInactiveHistory(int length) {
+		this.length = length;
+		words = new long[(length + 63) >>> 6];
+	}
+
+
+	// record the status in iteration i
+	public void set(int i, boolean active) {
+		if (active) {
+			words[i >>> 6] |= 1L << i;
+		}
+		else {
+			words[i >>> 6] &= ~(1L << i);
+		}
+	}
+
+
+	// 1 if active in iteration i, 0 if not
+	public int get(int i) {
+		return (int) (words[i >>> 6] >>> i) & 1;
+	}
+
+
+	// number of iterations the neuron was in the given state (1 = active, 0 = inactive)
+	public int count(int state) {
+		int numActive = 0;
+		for (int w = 0 ; w < words.length ; ++w) {
+			numActive += Long.bitCount(words[w]);
+		}
+		return state == 1 ? numActive : length - numActive;
+	}
+
+
+	// number of iterations in which history1 was in state1 *and* history2 was in state2
+	// (the histories are the same length)
+	public static int countJoint(ActiveInactiveHistory history1, int state1, ActiveInactiveHistory history2, int state2) {
+
+		long[] words1 = history1.words;
+		long[] words2 = history2.words;
+		// inverting a word (for state 0) also turns on the bits past the end of the history,
+		// so the last word is masked
+		long flip1 = state1 == 1 ? 0L : -1L;
+		long flip2 = state2 == 1 ? 0L : -1L;
+
+		int numJoint = 0;
+		int last = words1.length - 1;
+		for (int w = 0 ; w < last ; ++w) {
+			numJoint += Long.bitCount((words1[w] ^ flip1) & (words2[w] ^ flip2));
+		}
+		if (last >= 0) {
+			numJoint += Long.bitCount((words1[last] ^ flip1) & (words2[last] ^ flip2) & lastWordMask(history1.length));
+		}
+		return numJoint;
+
+	}
+
+
+	// the bits of the last word that are part of a history of the given length
+	private static long lastWordMask(int length) {
+		return (length & 63) == 0 ? -1L : -1L >>> (64 - (length & 63));
+	}
+
+
+	// same as an int per iteration
+	public int[] toArray() {
+		int[] history = new int[length];
+		for (int i = 0 ; i < length ; ++i) {
+			history[i] = get(i);
+		}
+		return history;
+	}
+
+
+	// save the history; only the words with the first count iterations in them are saved
+	// (the rest are inactive when it is read), e.g., the iterations recorded so far
+	public void write(DataOutput out, int count) throws IOException {
+		int numWords = (count + 63) >>> 6;
+		out.writeInt(length);
+		out.writeInt(numWords);
+		for (int w = 0 ; w < numWords ; ++w) {
+			out.writeLong(words[w]);
+		}
+	}
+
+
+	// a history saved with write
+	public static ActiveInactiveHistory read(DataInput in) throws IOException {
+		ActiveInactiveHistory history = new ActiveInactiveHistory(in.readInt());
+		int numWords = in.readInt();
+		for (int w = 0 ; w < numWords ; ++w) {
+			history.words[w] = in.readLong();
+		}
+		return history;
+	}
+
+
+	// getters
+	public int length() {
+		return length;
+	}
+
+	// the packed bits themselves (not a copy)
+	public long[] getWords() {
+		return words;
+	}
+
+}
@@ -0,0 +1,76 @@
+import java.util.Arrays;
+
+
+/**
+ * The active neurons of a FluidNN, by their index in its neuron list, kept up to date as
+ * their status changes, so that the ones that move each iteration (and, with
+ * ONLY_ACTIVE_NEURONS, the neighbors in a GBEST neighborhood) can be gone through without
+ * looking at all the inactive ones.  At low spontaneous activation probabilities, most of
+ * the neurons are inactive most of the time.
+ *
+ * It is a bitset, so that going through the active neurons takes them in the order of the
+ * neuron list, as going through the whole list does (which neuron moves first matters, as
+ * does the order in which activations are added up), and a count.  Going through them
+ * skips 64 inactive neurons at a time.
+ */
+public class ActiveSet {
+
+	private long[] words;
+	private int size;
+
+
+	// an empty set, with room for the given number of neurons before it has to grow
+	public ActiveSet(int numNeurons) {
+		words = new long[Math.max(1, (numNeurons + 63) >>> 6)];
+	}
+
+
+	public boolean contains(int n) {
+		int w = n >>> 6;
+		return w < words.length && (words[w] & (1L << n)) != 0;
+	}
+
+
+	// make neuron n active (true) or inactive (false) in the set, if it isn't already
+	public void set(int n, boolean active) {
+
+		int w = n >>> 6;
+		if (w >= words.length) {
+			if (!active)
+				return;
+			words = Arrays.copyOf(words, Math.max(w + 1, 2 * words.length));
+		}
+
+		long bit = 1L << n;
+		if (((words[w] & bit) != 0) == active)
+			return;
+		words[w] ^= bit;
+		size += active ? 1 : -1;
+
+	}
+
+
+	// the first active neuron at or after n (-1 if there are none); so, to go through them all:
+	//   for (int n = activeSet.next(0) ; n >= 0 ; n = activeSet.next(n + 1))
+	public int next(int n) {
+
+		int w = n >>> 6;
+		if (w >= words.length)
+			return -1;
+		long word = words[w] & (-1L << n);
+		while (word == 0) {
+			if (++w == words.length)
+				return -1;
+			word = words[w];
+		}
+		return (w << 6) + Long.numberOfTrailingZeros(word);
+
+	}
+
+
+	// number of active neurons
+	public int size() {
+		return size;
+	}
+
+}
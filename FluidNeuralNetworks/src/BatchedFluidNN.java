@@ -0,0 +1,652 @@
+import java.util.Arrays;
+
+
+/**
+ * A number of independent replicas ("runs") of the same FluidNN configuration, stored
+ * together and stepped in lockstep:  every array interleaves the replicas, so that the
+ * value for neuron (or cell) i in replica r is at index i * numReplicas + r.
+ *
+ * The point is the activation sums.  Every step, each replica's neurons are written into a
+ * padded grid of J-weighted activation levels (one grid for an active neuron being updated,
+ * one for an inactive one), and the neighborhood sums are then computed for every cell of
+ * every replica at once:  for each neighborhood offset, the innermost loop runs over the
+ * replicas, which are contiguous in memory, so the JIT can turn it into SIMD adds.  The
+ * terms are added in the same order as in FluidNN, starting from 0.0 (empty cells and the
+ * lattice boundary add 0.0, which changes nothing), so the sums are exactly the same.
+ *
+ * Everything else (spontaneous activation, moves, histories) is done replica by replica
+ * with the replica's own SimulationContext, exactly as in FluidNN, so replica r follows the
+ * same trajectory as a FluidNN created with the same context.  FNN_GBEST is not supported:
+ * its neighborhood is every neuron, not a set of cells.
+ */
+public class BatchedFluidNN {
+
+	// marks an empty cell in the grid
+	public static final int EMPTY = -1;
+
+	// new neurons have an activation level between 0.0 and 1.0 (same as FluidNN)
+	private static final double INITIAL_ACTIVATION_LOW_LEVEL = 0.0;
+	private static final double INITIAL_ACTIVATION_HIGH_LEVEL = 1.0;
+	private static final double INITIAL_ACTIVATION_RANGE =
+		INITIAL_ACTIVATION_HIGH_LEVEL- INITIAL_ACTIVATION_LOW_LEVEL;
+
+	private int numReplicas;
+	// size of grid
+	private int numRows;
+	private int numCols;
+	// number of neurons (in each replica)
+	private int numNeurons;
+
+	// one context per replica:  random number stream, iteration, move counters, parameters
+	private SimulationContext[] contexts;
+
+	// the grids, cell by cell (row * numCols + col):  grid[cell * numReplicas + r] is the ID
+	// of the neuron in that cell in replica r, or EMPTY
+	private int[] grid;
+
+	// neuron state:  index n * numReplicas + r is neuron n of replica r
+	private double[] activationLevel;
+	private boolean[] active;
+	private int[] row;
+	private int[] col;
+
+	// scratch space for the new activation levels
+	private double[] newActivationLevels;
+
+	// the padded grids the sums are computed over (a one-cell border around the grid, as in
+	// FluidNN), cell by cell and interleaved like everything else:  the J-weighted activation
+	// level of the neuron in each cell, as seen by an active (0) or inactive (1) neuron, and the
+	// resulting sums
+	private int stride;
+	private double[] weight0;
+	private double[] weight1;
+	private double[] sum0;
+	private double[] sum1;
+	// the same for the number of neighbors in the Moore neighborhood (not counting the neuron
+	// itself), which decides whether a neuron can activate spontaneously
+	private int[] occupied;
+	private int[] numMooreNeighbors;
+	// for every cell in the padded grid, the cell of the grid it wraps around to (itself for
+	// a cell in the grid)
+	private int[] wrappedIndex;
+
+	// offsets of the neighborhood and of the Moore neighbors for the current combination of
+	// models; worked out the first time they are used, and again only if the models change
+	private int[] offsets;
+	private int[] mooreOffsets;
+	private FNN.Topology offsetsTopology;
+	private FNN.SelfModel offsetsSelfModel;
+	private FNN.FNN_BoundaryModel offsetsFNNBoundaryModel;
+
+	// history data, as in Neuron (null if histories are not being recorded)
+	private ActivationLevelHistory[] activationLevelHistory;
+	private ActiveInactiveHistory[] activeInactiveHistory;
+	private int[] historyIndex;
+
+	// the "coupling matrix" (see FluidNN):  the first index is 0 if the neuron being
+	// updated is active, 1 if not; the second, the same for the neighbor
+	private double[][] J = { { 1.0, 1.0 }, { 1.0, 1.0 } };
+
+
+	// create one replica for each context, each of a given size with a given number of
+	// neurons (randomly placed, in the same way as FluidNN, from the replica's own random
+	// number stream); histories are recorded as in Neuron
+	public BatchedFluidNN (int numRows, int numCols, int numNeurons, SimulationContext[] contexts) {
+
+		this(numRows, numCols, numNeurons, contexts, true);
+	}
+
+
+	// same, but histories are only kept if recordHistories is true
+	public BatchedFluidNN (int numRows, int numCols, int numNeurons, SimulationContext[] contexts,
+			boolean recordHistories) {
+
+		this.numRows = numRows;
+		this.numCols = numCols;
+		this.numNeurons = numNeurons;
+		this.contexts = contexts;
+		numReplicas = contexts.length;
+
+		grid = new int[numRows * numCols * numReplicas];
+		Arrays.fill(grid, EMPTY);
+		activationLevel = new double[numNeurons * numReplicas];
+		active = new boolean[numNeurons * numReplicas];
+		row = new int[numNeurons * numReplicas];
+		col = new int[numNeurons * numReplicas];
+		newActivationLevels = new double[numNeurons * numReplicas];
+
+		stride = numCols + 2;
+		int numPaddedCells = (numRows + 2) * stride;
+		weight0 = new double[numPaddedCells * numReplicas];
+		weight1 = new double[numPaddedCells * numReplicas];
+		sum0 = new double[numPaddedCells * numReplicas];
+		sum1 = new double[numPaddedCells * numReplicas];
+		occupied = new int[numPaddedCells * numReplicas];
+		numMooreNeighbors = new int[numPaddedCells * numReplicas];
+		wrappedIndex = new int[numPaddedCells];
+		for (int r = -1 ; r <= numRows ; ++r) {
+			for (int c = -1 ; c <= numCols ; ++c) {
+				wrappedIndex[paddedIndex(r, c)] = paddedIndex(rowWrap(r), colWrap(c));
+			}
+		}
+
+		if (recordHistories) {
+			activationLevelHistory = new ActivationLevelHistory[numNeurons * numReplicas];
+			activeInactiveHistory = new ActiveInactiveHistory[numNeurons * numReplicas];
+			for (int r = 0 ; r < numReplicas ; ++r) {
+				int length = contexts[r].getNumIterationsDataCollection();
+				for (int n = 0 ; n < numNeurons ; ++n) {
+					activationLevelHistory[n * numReplicas + r] = ActivationLevelHistory.create(contexts[r].getHistoryEncoding(), length);
+					activeInactiveHistory[n * numReplicas + r] = new ActiveInactiveHistory(length);
+				}
+			}
+		}
+		historyIndex = new int[numReplicas];
+
+		for (int r = 0 ; r < numReplicas ; ++r) {
+			randomPopulate(r);
+		}
+
+	}
+
+
+	// put the neurons of replica r at random locations, in the same way (and with the same
+	// random numbers) as FluidNN.randomPopulate
+	private void randomPopulate(int r) {
+
+		if (numNeurons > numRows * numCols) {
+			System.out.println("error: grid too small in randomPopulate");
+			System.exit(0);
+		}
+
+		RandomStream rand = contexts[r].getRand();
+		for (int n = 0 ; n < numNeurons ; ++n) {
+
+			// get random row and col
+			int newRow = rand.nextInt(numRows);
+			int newCol = rand.nextInt(numCols);
+
+			// kludgey way of finding an empty location
+			while (grid[cellIndex(newRow, newCol) + r] != EMPTY) {
+				newRow = rand.nextInt(numRows);
+				newCol = rand.nextInt(numCols);
+			}
+
+			// random initial activation level
+			double initialActivationLevel = INITIAL_ACTIVATION_LOW_LEVEL + (rand.nextDouble() * INITIAL_ACTIVATION_RANGE);
+			int index = n * numReplicas + r;
+			grid[cellIndex(newRow, newCol) + r] = n;
+			row[index] = newRow;
+			col[index] = newCol;
+			activationLevel[index] = initialActivationLevel;
+			active[index] = initialActivationLevel > contexts[r].getActivationThreshold();
+
+			if (activationLevelHistory != null) {
+				activationLevelHistory[index].set(0, initialActivationLevel);
+				activeInactiveHistory[index].set(0, active[index]);
+			}
+		}
+
+	}
+
+
+	// set the current iteration of every replica
+	public void setIteration(int iteration) {
+
+		for (int r = 0 ; r < numReplicas ; ++r) {
+			contexts[r].setIteration(iteration);
+		}
+
+	}
+
+
+	// update the activation levels of all the neurons of all the replicas and move them
+	public void moveAndUpdateNeurons(FNN.Topology currentTopology, FNN.SelfModel currentSelfModel,
+			FNN.FNN_BoundaryModel currentFNNBoundaryModel, FNN.FNN_ActivityModel currentFNNActivityModel) {
+
+		// update activations; they are updated for all the replicas at once, so each 
+		// replica's metrics are charged an equal share of the time
+		long start = System.nanoTime();
+		updateActivationLevels(currentTopology, currentSelfModel, currentFNNBoundaryModel, currentFNNActivityModel);
+		long share = (System.nanoTime() - start) / numReplicas;
+		for (int r = 0 ; r < numReplicas ; ++r) {
+			SimulationMetrics metrics = contexts[r].getMetrics();
+			metrics.addActivationPhase(share);
+			metrics.recordNumActive(numActiveNeurons(r));
+		}
+
+		// move them (timed replica by replica; see moveAllMoore)
+		moveAllMoore(currentFNNBoundaryModel);
+
+	}
+
+
+	// update activation levels according to the Sole & Miramontes paper, as in FluidNN:  new
+	// levels are calculated entirely from current levels, then the activity status of each
+	// neuron is updated (a neuron can only activate spontaneously if it has no neighbors)
+	public void updateActivationLevels(FNN.Topology currentTopology, FNN.SelfModel currentSelfModel,
+			FNN.FNN_BoundaryModel currentFNNBoundaryModel, FNN.FNN_ActivityModel currentFNNActivityModel) {
+
+		if (offsets == null || currentTopology != offsetsTopology || currentSelfModel != offsetsSelfModel
+				|| currentFNNBoundaryModel != offsetsFNNBoundaryModel) {
+			offsets = getOffsets(currentTopology, currentSelfModel, currentFNNBoundaryModel);
+			mooreOffsets = getOffsets(FNN.Topology.FNN_MOORE, FNN.SelfModel.NOT_INCLUDE_SELF, currentFNNBoundaryModel);
+			offsetsTopology = currentTopology;
+			offsetsSelfModel = currentSelfModel;
+			offsetsFNNBoundaryModel = currentFNNBoundaryModel;
+		}
+		int[] offsets = this.offsets;
+		int[] mooreOffsets = this.mooreOffsets;
+		boolean onlyActive = currentFNNActivityModel == FNN.FNN_ActivityModel.ONLY_ACTIVE_NEURONS;
+		int R = numReplicas;
+
+		// the J-weighted activation levels, cell by cell; cells that aren't in anyone's
+		// neighborhood sum (empty cells, inactive neurons if only active ones count, the
+		// boundary of a lattice) stay 0.0
+		Arrays.fill(weight0, 0.0);
+		Arrays.fill(weight1, 0.0);
+		Arrays.fill(occupied, 0);
+		for (int n = 0 ; n < numNeurons ; ++n) {
+			for (int r = 0 ; r < R ; ++r) {
+				int index = n * R + r;
+				int cell = paddedIndex(row[index], col[index]) * R + r;
+				occupied[cell] = 1;
+				if (onlyActive && !active[index])
+					continue;
+				int neighborState = active[index] ? 0 : 1;
+				weight0[cell] = J[0][neighborState] * activationLevel[index];
+				weight1[cell] = J[1][neighborState] * activationLevel[index];
+			}
+		}
+
+		// on a torus, the border holds copies of the cells on the opposite edge
+		if (currentFNNBoundaryModel == FNN.FNN_BoundaryModel.TORUS) {
+			for (int cell = 0 ; cell < wrappedIndex.length ; ++cell) {
+				if (wrappedIndex[cell] != cell) {
+					System.arraycopy(weight0, wrappedIndex[cell] * R, weight0, cell * R, R);
+					System.arraycopy(weight1, wrappedIndex[cell] * R, weight1, cell * R, R);
+					System.arraycopy(occupied, wrappedIndex[cell] * R, occupied, cell * R, R);
+				}
+			}
+		}
+
+		// the sums for every cell of the grid, all the replicas at once
+		for (int r = 0 ; r < numRows ; ++r) {
+			int first = paddedIndex(r, 0) * R;
+			int last = paddedIndex(r, numCols - 1) * R + R;
+			Arrays.fill(sum0, first, last, 0.0);
+			Arrays.fill(sum1, first, last, 0.0);
+			Arrays.fill(numMooreNeighbors, first, last, 0);
+			for (int i = 0 ; i < offsets.length ; ++i) {
+				int shift = offsets[i] * R;
+				for (int k = first ; k < last ; ++k) {
+					sum0[k] += weight0[k + shift];
+					sum1[k] += weight1[k + shift];
+				}
+			}
+			for (int i = 0 ; i < mooreOffsets.length ; ++i) {
+				int shift = mooreOffsets[i] * R;
+				for (int k = first ; k < last ; ++k) {
+					numMooreNeighbors[k] += occupied[k + shift];
+				}
+			}
+		}
+
+		for (int r = 0 ; r < numReplicas ; ++r) {
+			double gain = contexts[r].getGain();
+			double sumNeighborActivationsThreshold = contexts[r].getSumNeighborActivationsThreshold();
+			for (int n = 0 ; n < numNeurons ; ++n) {
+				int index = n * R + r;
+				int cell = paddedIndex(row[index], col[index]) * R + r;
+				double sumAct = active[index] ? sum0[cell] : sum1[cell];
+				newActivationLevels[index] = Math.tanh(gain * (sumAct - sumNeighborActivationsThreshold));
+			}
+		}
+
+		// using the raw activation levels just computed, update the neurons' activity status
+		for (int r = 0 ; r < numReplicas ; ++r) {
+			updateActivationStatus(r, currentFNNBoundaryModel);
+		}
+
+	}
+
+
+	// update the activity status of the neurons of replica r (see Neuron.updateActivationStatusNew)
+	private void updateActivationStatus(int r, FNN.FNN_BoundaryModel currentFNNBoundaryModel) {
+
+		SimulationContext context = contexts[r];
+		double activationThreshold = context.getActivationThreshold();
+		double spontaneousActivationLevel = context.getSpontaneousActivationLevel();
+		double spontaneousActivationProbability = context.getSpontaneousActivationProbability();
+		RandomStream rand = context.getRand();
+		boolean recordHistory = activationLevelHistory != null && context.collectingData();
+
+		for (int n = 0 ; n < numNeurons ; ++n) {
+
+			int index = n * numReplicas + r;
+			int cell = paddedIndex(row[index], col[index]) * numReplicas + r;
+			double level = newActivationLevels[index];
+			boolean isActive = false;
+
+			// does current activation level suffice to activate it?
+			if (level > activationThreshold) {
+				isActive = true;
+			}
+			// if not, and it's isolated, it can spontaneously activate
+			// (no neuron has moved since the neighbors were counted)
+			else if (numMooreNeighbors[cell] == 0) {
+				if (rand.nextDouble() < spontaneousActivationProbability) {
+					level = spontaneousActivationLevel;
+					isActive = true;
+				}
+			}
+
+			activationLevel[index] = level;
+			active[index] = isActive;
+
+			if (recordHistory) {
+				activationLevelHistory[index].set(historyIndex[r], level);
+				activeInactiveHistory[index].set(historyIndex[r], isActive);
+			}
+		}
+
+		if (recordHistory) {
+			++historyIndex[r];
+		}
+
+	}
+
+
+	// offsets (in padded cells) of the neighborhood, in the order FluidNN.getXXXNeighborhood
+	// considers the cells; FNN_GBEST isn't a neighborhood of cells, so it isn't supported
+	private int[] getOffsets(FNN.Topology currentTopology, FNN.SelfModel currentSelfModel,
+			FNN.FNN_BoundaryModel currentFNNBoundaryModel) {
+
+		int[][] cells = null;
+		if (currentTopology == FNN.Topology.FNN_MOORE) {
+			cells = new int[][] { { -1, -1 }, { -1, 0 }, { -1, 1 }, { 0, -1 }, { 0, 0 }, { 0, 1 }, { 1, -1 }, { 1, 0 }, { 1, 1 } };
+		}
+		else if (currentTopology == FNN.Topology.FNN_vonNEUMANN) {
+			// center, north, east, south, west
+			cells = new int[][] { { 0, 0 }, { -1, 0 }, { 0, 1 }, { 1, 0 }, { 0, -1 } };
+		}
+		else if (currentTopology == FNN.Topology.FNN_RING) {
+			// center, right, left
+			cells = new int[][] { { 0, 0 }, { 0, 1 }, { 0, -1 } };
+		}
+		else {
+			throw new IllegalArgumentException("topology not supported by BatchedFluidNN:  " + currentTopology 
+					+ " (only FNN_MOORE, FNN_vonNEUMANN and FNN_RING; use FluidNN for FNN_GBEST)");
+		}
+
+		int[] offsets = new int[cells.length];
+		int numOffsets = 0;
+		for (int i = 0 ; i < cells.length ; ++i) {
+			// if the neuron isn't included, leave out every cell that is the neuron's own:  the
+			// center, and on a torus with fewer than 3 rows or columns, the ones that wrap around to it
+			boolean self = cells[i][0] == 0 && cells[i][1] == 0;
+			if (currentFNNBoundaryModel == FNN.FNN_BoundaryModel.TORUS) {
+				self = (cells[i][0] + numRows) % numRows == 0 && (cells[i][1] + numCols) % numCols == 0;
+			}
+			if (currentSelfModel == FNN.SelfModel.NOT_INCLUDE_SELF && self)
+				continue;
+			offsets[numOffsets++] = cells[i][0] * stride + cells[i][1];
+		}
+
+		return Arrays.copyOf(offsets, numOffsets);
+
+	}
+
+
+	// move the neurons of every replica sequentially, exactly as in FluidNN.moveAllMoore,
+	// collecting the same data
+	public void moveAllMoore(FNN.FNN_BoundaryModel currentFNNBoundaryModel) {
+
+		for (int r = 0 ; r < numReplicas ; ++r) {
+			long start = System.nanoTime();
+			// counted here, and added to the replica's metrics once per sweep
+			int numTimesActive = 0;
+			int numActualMoves = 0;
+			for (int n = 0 ; n < numNeurons ; ++n) {
+				if (active[n * numReplicas + r]) {
+					++numTimesActive;
+					if (moveMoore(r, n, currentFNNBoundaryModel)) {
+						++numActualMoves;
+					}
+				}
+			}
+			SimulationMetrics metrics = contexts[r].getMetrics();
+			metrics.addMoveCounts(numNeurons, numTimesActive, numActualMoves);
+			metrics.addMovementPhase(System.nanoTime() - start);
+		}
+
+	}
+
+
+	// move neuron n of replica r to a random empty cell in its Moore neighborhood, if there
+	// is one (see FluidNN.moveMoore); returns true if a move was made
+	public boolean moveMoore(int r, int n, FNN.FNN_BoundaryModel currentFNNBoundaryModel) {
+
+		if (!anyMooreCell(r, n, currentFNNBoundaryModel, true)) {
+			return false;
+		}
+
+		RandomStream rand = contexts[r].getRand();
+		int index = n * numReplicas + r;
+		int oldRow = row[index];
+		int oldCol = col[index];
+		int newRow = 0;
+		int newCol = 0;
+		int numAttempts = 1;
+
+		if (currentFNNBoundaryModel == FNN.FNN_BoundaryModel.LATTICE) {
+			int rowChange = rand.nextInt(3) - 1;
+			int colChange = rand.nextInt(3) - 1;
+			newRow = oldRow + rowChange;
+			newCol = oldCol + colChange;
+			while ((rowChange == 0 && colChange == 0) ||
+					!legalCell(newRow, newCol) ||
+					grid[cellIndex(newRow, newCol) + r] != EMPTY) {
+				rowChange = rand.nextInt(3) - 1;
+				colChange = rand.nextInt(3) - 1;
+				newRow = oldRow + rowChange;
+				newCol = oldCol + colChange;
+				++numAttempts;
+			}
+		}
+
+		else if (currentFNNBoundaryModel == FNN.FNN_BoundaryModel.TORUS) {
+			int rowChange = rand.nextInt(3) - 1;
+			int colChange = rand.nextInt(3) - 1;
+			newRow = rowWrap(oldRow + rowChange);
+			newCol = colWrap(oldCol + colChange);
+			while ((rowChange == 0 && colChange == 0) || grid[cellIndex(newRow, newCol) + r] != EMPTY) {
+				rowChange = rand.nextInt(3) - 1;
+				colChange = rand.nextInt(3) - 1;
+				newRow = rowWrap(oldRow + rowChange);
+				newCol = colWrap(oldCol + colChange);
+				++numAttempts;
+			}
+		}
+		contexts[r].getMetrics().recordMoveAttempts(numAttempts);
+
+		row[index] = newRow;
+		col[index] = newCol;
+		grid[cellIndex(newRow, newCol) + r] = n;
+		grid[cellIndex(oldRow, oldCol) + r] = EMPTY;
+
+		return true;
+
+	}
+
+
+	// find out if neuron n of replica r has neighbors; used to determine whether a neuron can
+	// spontaneously activate
+	public boolean hasNeighbors(int r, int n, FNN.FNN_BoundaryModel boundaryCondition) {
+
+		return anyMooreCell(r, n, boundaryCondition, false);
+
+	}
+
+
+	// is any of the 8 Moore neighbor cells of neuron n of replica r empty (or occupied, if
+	// empty is false)?
+	private boolean anyMooreCell(int r, int n, FNN.FNN_BoundaryModel boundaryCondition, boolean empty) {
+
+		int index = n * numReplicas + r;
+		int neuronRow = row[index];
+		int neuronCol = col[index];
+
+		for (int rDelta = -1 ; rDelta <= 1 ; ++rDelta) {
+			for (int cDelta = -1 ; cDelta <= 1 ; ++cDelta) {
+				if (rDelta == 0 && cDelta == 0)
+					continue;
+				int newRow = neuronRow + rDelta;
+				int newCol = neuronCol + cDelta;
+				if (boundaryCondition == FNN.FNN_BoundaryModel.TORUS) {
+					newRow = rowWrap(newRow);
+					newCol = colWrap(newCol);
+					// on a tiny torus, a "neighbor" cell can be the cell itself
+					if (newRow == neuronRow && newCol == neuronCol)
+						continue;
+				}
+				else if (!legalCell(newRow, newCol)) {
+					continue;
+				}
+				if ((grid[cellIndex(newRow, newCol) + r] == EMPTY) == empty)
+					return true;
+			}
+		}
+
+		return false;
+
+	}
+
+
+	// check whether given values for row and column are legal
+	public boolean legalCell(int row, int col) {
+
+		return row >= 0 && row < numRows && col >= 0 && col < numCols;
+
+	}
+
+
+	// index of replica 0 of a cell in grid
+	private int cellIndex(int row, int col) {
+		return (row * numCols + col) * numReplicas;
+	}
+
+
+	// index of a cell (or a cell of the border) in the padded grids, not counting replicas
+	private int paddedIndex(int row, int col) {
+		return (row + 1) * stride + col + 1;
+	}
+
+
+	// get the number of active neurons in replica r
+	public int numActiveNeurons(int r) {
+
+		int numActiveNeurons = 0;
+		for (int n = 0 ; n < numNeurons ; ++n) {
+			if (active[n * numReplicas + r])
+				++numActiveNeurons;
+		}
+		return numActiveNeurons;
+
+	}
+
+
+	// the number of active neurons, averaged over the replicas
+	public double averageNumActiveNeurons() {
+
+		int numActiveNeurons = 0;
+		for (int index = 0 ; index < active.length ; ++index) {
+			if (active[index])
+				++numActiveNeurons;
+		}
+		return (double) numActiveNeurons / numReplicas;
+
+	}
+
+
+	// a random neuron of replica r (from the replica's random number stream, as in FluidNN)
+	public int getRandomNeuron (int r) {
+
+		return contexts[r].getRand().nextInt(numNeurons);
+
+	}
+
+
+	// row wrap-around
+	public int rowWrap (int row) {
+		if (row < 0)
+			return numRows - 1;
+
+		if (row == numRows) {
+			return 0;
+		}
+
+		return row;
+	}
+
+
+	// column wrap-around
+	public int colWrap (int col) {
+		if (col < 0)
+			return numCols - 1;
+
+		if (col == numCols) {
+			return 0;
+		}
+
+		return col;
+	}
+
+
+	// getters and setters
+
+	public boolean active(int r, int n) {
+		return active[n * numReplicas + r];
+	}
+
+	public double getActivationLevel(int r, int n) {
+		return activationLevel[n * numReplicas + r];
+	}
+
+	public int getRow(int r, int n) {
+		return row[n * numReplicas + r];
+	}
+
+	public int getCol(int r, int n) {
+		return col[n * numReplicas + r];
+	}
+
+	public ActivationLevelHistory getActivationLevelHistory(int r, int n) {
+		return activationLevelHistory == null ? null : activationLevelHistory[n * numReplicas + r];
+	}
+
+	public ActiveInactiveHistory getActiveInactiveHistory(int r, int n) {
+		return activeInactiveHistory == null ? null : activeInactiveHistory[n * numReplicas + r];
+	}
+
+	public SimulationContext getContext(int r) {
+		return contexts[r];
+	}
+
+	public int getNumReplicas() {
+		return numReplicas;
+	}
+
+	public int getNumNeurons() {
+		return numNeurons;
+	}
+
+	public int getNumRows() {
+		return numRows;
+	}
+
+	public int getNumCols() {
+		return numCols;
+	}
+
+}
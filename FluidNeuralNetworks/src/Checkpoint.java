@@ -0,0 +1,99 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+
+/**
+ * Snapshots of the whole state of a FluidNN:  the grid and every neuron, the part of the
+ * histories recorded so far, the iteration, the move counters, the parameters and the
+ * state of the random number streams.  A network restored from a snapshot carries on
+ * exactly as the original would have.
+ *
+ * Every run of an experiment spends its first numIterationsDiscarded iterations settling
+ * down; with a snapshot taken after them, the burn-in can be paid once and shared:  fork
+ * gives a copy of the network with a random number stream of its own, so each copy goes
+ * its own way from there.  (The runs are then not independent of one another before the
+ * snapshot, of course.)  Snapshots can also be saved to a file, so that a long run can be
+ * picked up again after it has been interrupted.
+ */
+public class Checkpoint {
+
+	private static final int MAGIC = 0x464E4E43;
+	private static final int VERSION = 1;
+
+
+	// a snapshot of the network, as it is now
+	public static byte[] toBytes(FluidNN fnn) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		write(fnn, out);
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+
+	// a network in the state of the snapshot
+	public static FluidNN fromBytes(byte[] snapshot) throws IOException {
+		return read(new DataInputStream(new ByteArrayInputStream(snapshot)));
+	}
+
+
+	// same, to and from a file
+	public static void save(FluidNN fnn, File file) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			write(fnn, out);
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	public static FluidNN load(File file) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			return read(in);
+		}
+		finally {
+			in.close();
+		}
+	}
+
+
+	// a network in the state of the snapshot, but with its own random numbers from here on,
+	// from a stream of the same generator with the given seed (the parallel update is off,
+	// and gets new streams from the new seed when it is turned on)
+	public static FluidNN fork(byte[] snapshot, long seed) throws IOException {
+		FluidNN fnn = fromBytes(snapshot);
+		SimulationContext context = fnn.getContext();
+		context.setRand(RandomStream.create(context.getRand().getGenerator(), seed));
+		fnn.setParallelUpdate(null);
+		return fnn;
+	}
+
+
+	private static void write(FluidNN fnn, DataOutputStream out) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		fnn.write(out);
+	}
+
+	private static FluidNN read(DataInputStream in) throws IOException {
+		if (in.readInt() != MAGIC) {
+			throw new IOException("not a FluidNN checkpoint");
+		}
+		int version = in.readInt();
+		if (version != VERSION) {
+			throw new IOException("unknown checkpoint version " + version);
+		}
+		return FluidNN.read(in);
+	}
+
+}
@@ -0,0 +1,530 @@
+/**
+ * A structure-of-arrays version of FluidNN:  instead of Neuron objects, the state of
+ * neuron i lives at index i of primitive arrays (activation levels in a double[], active
+ * flags in a long[] bitset, positions in int[]s), and the grid is a flat int[] of neuron
+ * IDs, so a neighbor lookup is an array read rather than a chain of pointers.
+ *
+ * moveAndUpdateNeurons has exactly the same semantics as FluidNN's, and it draws from
+ * its context's random number stream in exactly the same order, so given the same seed
+ * the two produce the same trajectory.
+ */
+public class CompactFluidNN {
+
+	// marks an empty cell in the grid
+	public static final int EMPTY = -1;
+
+	// new neurons have an activation level between 0.0 and 1.0 (same as FluidNN)
+	private static final double INITIAL_ACTIVATION_LOW_LEVEL = 0.0;
+	private static final double INITIAL_ACTIVATION_HIGH_LEVEL = 1.0;
+	private static final double INITIAL_ACTIVATION_RANGE =
+		INITIAL_ACTIVATION_HIGH_LEVEL- INITIAL_ACTIVATION_LOW_LEVEL;
+
+	// size of grid
+	private int numRows;
+	private int numCols;
+	// number of neurons
+	private int numNeurons;
+
+	// the grid, row by row:  grid[row * numCols + col] is the ID of the neuron in that cell, or EMPTY
+	private int[] grid;
+
+	// neuron state, indexed by neuron ID
+	private double[] activationLevel;
+	// bit i is set if neuron i is active
+	private long[] active;
+	private int[] row;
+	private int[] col;
+
+	// scratch space for the new activation levels, so updating allocates nothing
+	private double[] newActivationLevels;
+
+	// history data, as in Neuron (null if histories are not being recorded)
+	private ActivationLevelHistory[] activationLevelHistory;
+	private ActiveInactiveHistory[] activeInactiveHistory;
+	private int historyIndex;
+
+	// the "coupling matrix" (see FluidNN):  the first index is 0 if the neuron being
+	// updated is active, 1 if not; the second, the same for the neighbor
+	private double[][] J = { { 1.0, 1.0 }, { 1.0, 1.0 } };
+
+	// the random number stream, iteration, move counters and parameters of the
+	// simulation (see FluidNN)
+	private SimulationContext context;
+
+
+	// create a CompactFluidNN of a given size with a given number of neurons (randomly placed);
+	// the parameters are the context's, and histories are recorded as in Neuron
+	public CompactFluidNN (int numRows, int numCols, int numNeurons, SimulationContext context) {
+
+		this(numRows, numCols, numNeurons, context, true);
+	}
+
+
+	// same, but histories (numIterationsDataCollection values per neuron) are only kept if
+	// recordHistories is true; on large lattices they are by far the biggest thing in memory
+	public CompactFluidNN (int numRows, int numCols, int numNeurons, SimulationContext context,
+			boolean recordHistories) {
+
+		this.numRows = numRows;
+		this.numCols = numCols;
+		this.numNeurons = numNeurons;
+		this.context = context;
+
+		grid = new int[numRows * numCols];
+		for (int cell = 0 ; cell < grid.length ; ++cell) {
+			grid[cell] = EMPTY;
+		}
+		activationLevel = new double[numNeurons];
+		active = new long[(numNeurons + 63) >>> 6];
+		row = new int[numNeurons];
+		col = new int[numNeurons];
+		newActivationLevels = new double[numNeurons];
+
+		if (recordHistories) {
+			activationLevelHistory = new ActivationLevelHistory[numNeurons];
+			activeInactiveHistory = new ActiveInactiveHistory[numNeurons];
+			for (int n = 0 ; n < numNeurons ; ++n) {
+				activationLevelHistory[n] = ActivationLevelHistory.create(context.getHistoryEncoding(),
+						context.getNumIterationsDataCollection());
+				activeInactiveHistory[n] = new ActiveInactiveHistory(context.getNumIterationsDataCollection());
+			}
+		}
+		historyIndex = 0;
+
+		randomPopulate();
+
+	}
+
+
+	// put the neurons in the net at random locations, in the same way (and with the same
+	// random numbers) as FluidNN.randomPopulate
+	private void randomPopulate() {
+
+		if (numNeurons > grid.length) {
+			System.out.println("error: grid too small in randomPopulate");
+			System.exit(0);
+		}
+
+		for (int id = 0 ; id < numNeurons ; ++id) {
+
+			// get random row and col
+			int r = context.getRand().nextInt(numRows);
+			int c = context.getRand().nextInt(numCols);
+
+			// kludgey way of finding an empty location
+			while (grid[r * numCols + c] != EMPTY) {
+				r = context.getRand().nextInt(numRows);
+				c = context.getRand().nextInt(numCols);
+			}
+
+			// random initial activation level
+			double initialActivationLevel = INITIAL_ACTIVATION_LOW_LEVEL + (context.getRand().nextDouble() * INITIAL_ACTIVATION_RANGE);
+			grid[r * numCols + c] = id;
+			row[id] = r;
+			col[id] = c;
+			activationLevel[id] = initialActivationLevel;
+			setActive(id, initialActivationLevel > context.getActivationThreshold());
+
+			if (activationLevelHistory != null) {
+				activationLevelHistory[id].set(0, initialActivationLevel);
+				activeInactiveHistory[id].set(0, active(id));
+			}
+		}
+
+	}
+
+
+	// update the activation levels of all the neurons and move them
+	public void moveAndUpdateNeurons(FNN.Topology currentTopology, FNN.SelfModel currentSelfModel,
+			FNN.FNN_BoundaryModel currentFNNBoundaryModel, FNN.FNN_ActivityModel currentFNNActivityModel) {
+
+		// timed and recorded as in FluidNN
+		SimulationMetrics metrics = context.getMetrics();
+		long start = System.nanoTime();
+
+		// update activations
+		updateActivationLevels(currentTopology, currentSelfModel, currentFNNBoundaryModel, currentFNNActivityModel);
+		long updated = System.nanoTime();
+		metrics.addActivationPhase(updated - start);
+		metrics.recordNumActive(numActiveNeurons());
+
+		// move them
+		moveAllMoore(currentFNNBoundaryModel);
+		metrics.addMovementPhase(System.nanoTime() - updated);
+
+	}
+
+
+	// update activation levels according to the Sole & Miramontes paper:  new levels are
+	// calculated entirely from current levels, then the activity status of each neuron is
+	// updated (as in FluidNN, a neuron can only activate spontaneously if it has no neighbors)
+	public void updateActivationLevels(FNN.Topology currentTopology, FNN.SelfModel currentSelfModel,
+			FNN.FNN_BoundaryModel currentFNNBoundaryModel, FNN.FNN_ActivityModel currentFNNActivityModel) {
+
+		double gain = context.getGain();
+		double sumNeighborActivationsThreshold = context.getSumNeighborActivationsThreshold();
+		double activationThreshold = context.getActivationThreshold();
+		double spontaneousActivationLevel = context.getSpontaneousActivationLevel();
+		double spontaneousActivationProbability = context.getSpontaneousActivationProbability();
+		RandomStream rand = context.getRand();
+
+		for (int n = 0 ; n < numNeurons ; ++n) {
+			double sumAct = getSumActivations(n, currentTopology, currentSelfModel, currentFNNBoundaryModel, currentFNNActivityModel);
+			newActivationLevels[n] = Math.tanh(gain * (sumAct - sumNeighborActivationsThreshold));
+		}
+
+		boolean recordHistory = activationLevelHistory != null && context.collectingData();
+
+		for (int n = 0 ; n < numNeurons ; ++n) {
+
+			double level = newActivationLevels[n];
+			boolean isActive = false;
+
+			// does current activation level suffice to activate it?
+			if (level > activationThreshold) {
+				isActive = true;
+			}
+			// if not, and it's isolated, it can spontaneously activate
+			else if (!hasNeighbors(n, currentFNNBoundaryModel)) {
+				if (rand.nextDouble() < spontaneousActivationProbability) {
+					level = spontaneousActivationLevel;
+					isActive = true;
+				}
+			}
+
+			activationLevel[n] = level;
+			setActive(n, isActive);
+
+			if (recordHistory) {
+				activationLevelHistory[n].set(historyIndex, level);
+				activeInactiveHistory[n].set(historyIndex, isActive);
+			}
+		}
+
+		if (recordHistory) {
+			++historyIndex;
+		}
+
+	}
+
+
+	// sum of J * activation level over the neighborhood of neuron n, in the same order
+	// as the neighborhoods are built in FluidNN (so the sums are identical)
+	public double getSumActivations(int n, FNN.Topology currentTopology, FNN.SelfModel currentSelfModel,
+			FNN.FNN_BoundaryModel currentFNNBoundaryModel, FNN.FNN_ActivityModel currentFNNActivityModel) {
+
+		double sumActivations = 0.0;
+
+		if (currentTopology == FNN.Topology.FNN_MOORE) {
+			for (int rDelta = -1 ; rDelta <= 1 ; ++rDelta) {
+				for (int cDelta = -1 ; cDelta <= 1 ; ++cDelta) {
+					sumActivations += neighborTerm(n, rDelta, cDelta, currentSelfModel, currentFNNBoundaryModel, currentFNNActivityModel);
+				}
+			}
+		}
+
+		else if (currentTopology == FNN.Topology.FNN_vonNEUMANN) {
+			// center, north, east, south, west
+			sumActivations += neighborTerm(n, 0, 0, currentSelfModel, currentFNNBoundaryModel, currentFNNActivityModel);
+			sumActivations += neighborTerm(n, -1, 0, currentSelfModel, currentFNNBoundaryModel, currentFNNActivityModel);
+			sumActivations += neighborTerm(n, 0, 1, currentSelfModel, currentFNNBoundaryModel, currentFNNActivityModel);
+			sumActivations += neighborTerm(n, 1, 0, currentSelfModel, currentFNNBoundaryModel, currentFNNActivityModel);
+			sumActivations += neighborTerm(n, 0, -1, currentSelfModel, currentFNNBoundaryModel, currentFNNActivityModel);
+		}
+
+		else if (currentTopology == FNN.Topology.FNN_RING) {
+			// center, right, left
+			sumActivations += neighborTerm(n, 0, 0, currentSelfModel, currentFNNBoundaryModel, currentFNNActivityModel);
+			sumActivations += neighborTerm(n, 0, 1, currentSelfModel, currentFNNBoundaryModel, currentFNNActivityModel);
+			sumActivations += neighborTerm(n, 0, -1, currentSelfModel, currentFNNBoundaryModel, currentFNNActivityModel);
+		}
+
+		else if (currentTopology == FNN.Topology.FNN_GBEST) {
+			for (int m = 0 ; m < numNeurons ; ++m) {
+				if (currentSelfModel == FNN.SelfModel.NOT_INCLUDE_SELF && m == n)
+					continue;
+				if (currentFNNActivityModel == FNN.FNN_ActivityModel.ONLY_ACTIVE_NEURONS && !active(m))
+					continue;
+				sumActivations += getJValue(n, m) * activationLevel[m];
+			}
+		}
+
+		else {
+			System.out.println("error:  unknown topology in CompactFluidNN.getSumActivations");
+			System.exit(-1);
+		}
+
+		return sumActivations;
+
+	}
+
+
+	// J * activation level for the cell at the given offset from neuron n, if it holds a
+	// neighbor (see FluidNN.isNeighbor); otherwise 0.0
+	private double neighborTerm(int n, int rDelta, int cDelta, FNN.SelfModel currentSelfModel,
+			FNN.FNN_BoundaryModel currentFNNBoundaryModel, FNN.FNN_ActivityModel currentFNNActivityModel) {
+
+		int neighRow = row[n] + rDelta;
+		int neighCol = col[n] + cDelta;
+
+		if (currentFNNBoundaryModel == FNN.FNN_BoundaryModel.TORUS) {
+			neighRow = rowWrap(neighRow);
+			neighCol = colWrap(neighCol);
+		}
+		else if (!legalCell(neighRow, neighCol)) {
+			return 0.0;
+		}
+
+		if (currentSelfModel == FNN.SelfModel.NOT_INCLUDE_SELF && neighRow == row[n] && neighCol == col[n]) {
+			return 0.0;
+		}
+
+		int m = grid[neighRow * numCols + neighCol];
+		if (m == EMPTY) {
+			return 0.0;
+		}
+		if (currentFNNActivityModel == FNN.FNN_ActivityModel.ONLY_ACTIVE_NEURONS && !active(m)) {
+			return 0.0;
+		}
+
+		return getJValue(n, m) * activationLevel[m];
+
+	}
+
+
+	// returns correct J value given activation status
+	public double getJValue(int n1, int n2) {
+		return J[active(n1) ? 0 : 1][active(n2) ? 0 : 1];
+	}
+
+
+	// move the neurons sequentially, exactly as in FluidNN.moveAllMoore, collecting the same data
+	public void moveAllMoore(FNN.FNN_BoundaryModel currentFNNBoundaryModel) {
+
+		// counted here, and added to the context's metrics once per sweep
+		int numTimesActive = 0;
+		int numActualMoves = 0;
+		for (int n = 0 ; n < numNeurons ; ++n) {
+			if (active(n)) {
+				++numTimesActive;
+				if (moveMoore(n, currentFNNBoundaryModel)) {
+					++numActualMoves;
+				}
+			}
+		}
+		context.getMetrics().addMoveCounts(numNeurons, numTimesActive, numActualMoves);
+
+	}
+
+
+	// move neuron n to a random empty cell in its Moore neighborhood, if there is one
+	// (see FluidNN.moveMoore); returns true if a move was made
+	public boolean moveMoore(int n, FNN.FNN_BoundaryModel currentFNNBoundaryModel) {
+
+		if (noMovePossible(n, currentFNNBoundaryModel)) {
+			return false;
+		}
+
+		int r = row[n];
+		int c = col[n];
+		int newRow = 0;
+		int newCol = 0;
+		int numAttempts = 1;
+
+		if (currentFNNBoundaryModel == FNN.FNN_BoundaryModel.LATTICE) {
+			int rowChange = context.getRand().nextInt(3) - 1;
+			int colChange = context.getRand().nextInt(3) - 1;
+			newRow = r + rowChange;
+			newCol = c + colChange;
+			while ((rowChange == 0 && colChange == 0) ||
+					!legalCell(newRow, newCol) ||
+					grid[newRow * numCols + newCol] != EMPTY) {
+				rowChange = context.getRand().nextInt(3) - 1;
+				colChange = context.getRand().nextInt(3) - 1;
+				newRow = r + rowChange;
+				newCol = c + colChange;
+				++numAttempts;
+			}
+		}
+
+		else if (currentFNNBoundaryModel == FNN.FNN_BoundaryModel.TORUS) {
+			int rowChange = context.getRand().nextInt(3) - 1;
+			int colChange = context.getRand().nextInt(3) - 1;
+			newRow = rowWrap(r + rowChange);
+			newCol = colWrap(c + colChange);
+			while ((rowChange == 0 && colChange == 0) || grid[newRow * numCols + newCol] != EMPTY) {
+				rowChange = context.getRand().nextInt(3) - 1;
+				colChange = context.getRand().nextInt(3) - 1;
+				newRow = rowWrap(r + rowChange);
+				newCol = colWrap(c + colChange);
+				++numAttempts;
+			}
+		}
+		context.getMetrics().recordMoveAttempts(numAttempts);
+
+		row[n] = newRow;
+		col[n] = newCol;
+		grid[newRow * numCols + newCol] = n;
+		grid[r * numCols + c] = EMPTY;
+
+		return true;
+
+	}
+
+
+	// check whether given values for row and column are legal
+	public boolean legalCell(int row, int col) {
+
+		return row >= 0 && row < numRows && col >= 0 && col < numCols;
+
+	}
+
+
+	// true if none of the 8 Moore neighbor cells of neuron n is empty
+	public boolean noMovePossible(int n, FNN.FNN_BoundaryModel boundaryCondition) {
+
+		return !anyMooreCell(n, boundaryCondition, true);
+
+	}
+
+
+	// find out if neuron n has neighbors; used to determine whether a neuron can spontaneously activate
+	public boolean hasNeighbors(int n, FNN.FNN_BoundaryModel boundaryCondition) {
+
+		return anyMooreCell(n, boundaryCondition, false);
+
+	}
+
+
+	// is any of the 8 Moore neighbor cells of neuron n empty (or occupied, if empty is false)?
+	private boolean anyMooreCell(int n, FNN.FNN_BoundaryModel boundaryCondition, boolean empty) {
+
+		int r = row[n];
+		int c = col[n];
+
+		for (int rDelta = -1 ; rDelta <= 1 ; ++rDelta) {
+			for (int cDelta = -1 ; cDelta <= 1 ; ++cDelta) {
+				if (rDelta == 0 && cDelta == 0)
+					continue;
+				int newRow = r + rDelta;
+				int newCol = c + cDelta;
+				if (boundaryCondition == FNN.FNN_BoundaryModel.TORUS) {
+					newRow = rowWrap(newRow);
+					newCol = colWrap(newCol);
+					// on a tiny torus, a "neighbor" cell can be the cell itself
+					if (newRow == r && newCol == c)
+						continue;
+				}
+				else if (!legalCell(newRow, newCol)) {
+					continue;
+				}
+				if ((grid[newRow * numCols + newCol] == EMPTY) == empty)
+					return true;
+			}
+		}
+
+		return false;
+
+	}
+
+
+	// get the number of active neurons
+	public int numActiveNeurons() {
+
+		int numActiveNeurons = 0;
+		for (int w = 0 ; w < active.length ; ++w) {
+			numActiveNeurons += Long.bitCount(active[w]);
+		}
+		return numActiveNeurons;
+
+	}
+
+
+	public int getRandomNeuron () {
+
+		return context.getRand().nextInt(numNeurons);
+
+	}
+
+
+	// row wrap-around
+	public int rowWrap (int row) {
+		if (row < 0)
+			return numRows - 1;
+
+		if (row == numRows) {
+			return 0;
+		}
+
+		return row;
+	}
+
+
+	// column wrap-around
+	public int colWrap (int col) {
+		if (col < 0)
+			return numCols - 1;
+
+		if (col == numCols) {
+			return 0;
+		}
+
+		return col;
+	}
+
+
+	// getters and setters
+
+	public boolean active(int n) {
+		return (active[n >>> 6] & (1L << n)) != 0;
+	}
+
+	private void setActive(int n, boolean isActive) {
+		if (isActive)
+			active[n >>> 6] |= 1L << n;
+		else
+			active[n >>> 6] &= ~(1L << n);
+	}
+
+	public double getActivationLevel(int n) {
+		return activationLevel[n];
+	}
+
+	public int getRow(int n) {
+		return row[n];
+	}
+
+	public int getCol(int n) {
+		return col[n];
+	}
+
+	// ID of the neuron at the given cell, or EMPTY
+	public int getNeuronAt(int row, int col) {
+		return grid[row * numCols + col];
+	}
+
+	public int getNumNeurons() {
+		return numNeurons;
+	}
+
+	public int getNumRows() {
+		return numRows;
+	}
+
+	public int getNumCols() {
+		return numCols;
+	}
+
+	public ActivationLevelHistory getActivationLevelHistory(int n) {
+		return activationLevelHistory == null ? null : activationLevelHistory[n];
+	}
+
+	public ActiveInactiveHistory getActiveInactiveHistory(int n) {
+		return activeInactiveHistory == null ? null : activeInactiveHistory[n];
+	}
+
+	public SimulationContext getContext() {
+		return context;
+	}
+
+}
@@ -0,0 +1,300 @@
+import java.util.Arrays;
+
+
+/**
+ * Active information storage of the activity status (active or not) of neurons:  the mutual
+ * information between the last k states of a neuron and its next state (Lizier et al.,
+ * "Local measures of information storage in complex distributed computation", Information
+ * Sciences 208 (2012) 39), estimated by counting, with the counts of all the series that
+ * are added pooled.
+ *
+ * The last k states are coded as an integer (oldest first), which is kept up to date with a
+ * rolling code:  shift in the newest state, mask off the oldest.  Each time step is then one
+ * count added, to a flat long[] table indexed by (past << 1) | next when k is small, or to a
+ * hash table (open addressing, with the codes themselves as keys) when it is too big for
+ * that.  Counting is linear in the length of the series, and so is working out the local
+ * AIS of every step of a series once the counts are in.
+ *
+ * The states can be added as the simulation runs, one iteration at a time (addStates), or
+ * from whole histories afterwards (addSeries).  Results are in bits.
+ */
+public class DiscreteActiveInformationStorage {
+
+	// the largest k with a flat table (2^(k + 1) counts)
+	private static final int MAX_FLAT_HISTORY_LENGTH = 16;
+
+	// length k of the past
+	private int historyLength;
+	private long pastMask;
+
+	// the counts of (past, next):  a flat table, or a hash table if k is too big for one
+	// (long, since pooling whole runs of a big network passes 2^31 counts in a cell)
+	private long[] flatCounts;
+	private CountTable hashedCounts;
+	// number of time steps counted, and how many of them had next = 0 and next = 1
+	private long numCounted;
+	private long[] numNext = new long[2];
+
+	// for adding states one iteration at a time:  the rolling code of each series and the
+	// number of states it has had so far
+	private long[] pastCodes;
+	private int[] numStates;
+
+
+	// AIS with the given history length k (from 1 to 62)
+	public DiscreteActiveInformationStorage(int historyLength) {
+
+		// the past and the next state are coded together in a long, past << 1 | next
+		if (historyLength < 1 || historyLength > 62) {
+			throw new IllegalArgumentException("history length not supported by DiscreteActiveInformationStorage:  " 
+					+ historyLength + " (from 1 to 62)");
+		}
+
+		this.historyLength = historyLength;
+		pastMask = (1L << historyLength) - 1;
+		if (historyLength <= MAX_FLAT_HISTORY_LENGTH) {
+			flatCounts = new long[1 << (historyLength + 1)];
+		}
+		else {
+			hashedCounts = new CountTable();
+		}
+
+	}
+
+
+	// same, for adding the states of numSeries series (e.g., the neurons of a network) one
+	// iteration at a time with addState or addStates; the history length is checked as above
+	public DiscreteActiveInformationStorage(int historyLength, int numSeries) {
+
+		this(historyLength);
+		pastCodes = new long[numSeries];
+		numStates = new int[numSeries];
+
+	}
+
+
+	private void count(long past, int next) {
+		if (flatCounts != null) {
+			++flatCounts[(int) (past << 1) | next];
+		}
+		else {
+			hashedCounts.increment((past << 1) | next);
+		}
+		++numCounted;
+		++numNext[next];
+	}
+
+
+	private long getCount(long past, int next) {
+		if (flatCounts != null) {
+			return flatCounts[(int) (past << 1) | next];
+		}
+		return hashedCounts.get((past << 1) | next);
+	}
+
+
+	// the next state of a series (1 = active, 0 = inactive); it is counted once the series
+	// has had k states
+	public void addState(int series, int state) {
+
+		if (numStates[series] >= historyLength) {
+			count(pastCodes[series], state);
+		}
+		else {
+			++numStates[series];
+		}
+		pastCodes[series] = ((pastCodes[series] << 1) | state) & pastMask;
+
+	}
+
+
+	// the current states of the neurons of a network, series n being neuron n of its list
+	// (e.g., after every iteration of data collection)
+	public void addStates(FluidNN fnn) {
+		Neuron[] neurons = fnn.getNeuronList();
+		for (int n = 0 ; n < neurons.length ; ++n) {
+			addState(n, neurons[n].active() ? 1 : 0);
+		}
+	}
+
+
+	// add all the time steps of a whole history
+	public void addSeries(ActiveInactiveHistory history) {
+		addSeries(history, history.length());
+	}
+
+
+	// add the time steps of the first length states of a history
+	public void addSeries(ActiveInactiveHistory history, int length) {
+
+		long past = 0;
+		for (int t = 0 ; t < length ; ++t) {
+			int next = history.get(t);
+			if (t >= historyLength) {
+				count(past, next);
+			}
+			past = ((past << 1) | next) & pastMask;
+		}
+
+	}
+
+
+	// local AIS of a past followed by a next state:  lg [ p(past, next) / (p(past) p(next)) ]
+	// (infinite if they were never counted together)
+	public double localAIS(long past, int next) {
+		return FNN.lg((double) getCount(past, next) * numCounted / ((double) (getCount(past, 0) + getCount(past, 1)) * numNext[next]));
+	}
+
+
+	// local AIS of every time step of a history, from the counts added so far (which
+	// should include the history itself):  step t is at index t - k
+	public double[] localAIS(ActiveInactiveHistory history) {
+
+		int length = history.length();
+		double[] localAIS = new double[Math.max(0, length - historyLength)];
+		long past = 0;
+		for (int t = 0 ; t < length ; ++t) {
+			int next = history.get(t);
+			if (t >= historyLength) {
+				localAIS[t - historyLength] = localAIS(past, next);
+			}
+			past = ((past << 1) | next) & pastMask;
+		}
+		return localAIS;
+
+	}
+
+
+	// AIS of a single history:  the average of its local AIS
+	public double averageAIS(ActiveInactiveHistory history) {
+		double[] localAIS = localAIS(history);
+		double sum = 0.0;
+		for (int t = 0 ; t < localAIS.length ; ++t) {
+			sum += localAIS[t];
+		}
+		return localAIS.length == 0 ? 0.0 : sum / localAIS.length;
+	}
+
+
+	// average AIS over every time step counted:
+	//   sum over (past, next) of p(past, next) lg [ p(past, next) / (p(past) p(next)) ]
+	public double averageAIS() {
+
+		if (numCounted == 0) {
+			return 0.0;
+		}
+
+		double sum = 0.0;
+		if (flatCounts != null) {
+			for (int past = 0 ; past < flatCounts.length >>> 1 ; ++past) {
+				sum += pastTerm(flatCounts[past << 1], flatCounts[(past << 1) | 1]);
+			}
+		}
+		else {
+			// the keys of a past are adjacent codes, so take each past once, at next = 0 or
+			// at next = 1 if it was never followed by 0
+			long[] keys = hashedCounts.keys;
+			for (int slot = 0 ; slot < keys.length ; ++slot) {
+				long key = keys[slot];
+				if (key != CountTable.EMPTY && ((key & 1) == 0 || hashedCounts.get(key ^ 1) == 0)) {
+					long past = key >>> 1;
+					sum += pastTerm(getCount(past, 0), getCount(past, 1));
+				}
+			}
+		}
+		return sum / numCounted;
+
+	}
+
+
+	// the terms of the average for one past, times the number of time steps counted
+	private double pastTerm(long count0, long count1) {
+		long pastCount = count0 + count1;
+		double term = 0.0;
+		if (count0 > 0) {
+			term += count0 * FNN.lg((double) count0 * numCounted / ((double) pastCount * numNext[0]));
+		}
+		if (count1 > 0) {
+			term += count1 * FNN.lg((double) count1 * numCounted / ((double) pastCount * numNext[1]));
+		}
+		return term;
+	}
+
+
+	// getters
+	public int getHistoryLength() {
+		return historyLength;
+	}
+
+	public long getNumCounted() {
+		return numCounted;
+	}
+
+
+	// counts keyed by long (which are never negative), with open addressing and linear
+	// probing; no boxing, and nothing allocated but the arrays
+	private static class CountTable {
+
+		static final long EMPTY = -1L;
+
+		long[] keys;
+		long[] counts;
+		int size;
+
+		CountTable() {
+			keys = new long[1024];
+			counts = new long[1024];
+			Arrays.fill(keys, EMPTY);
+		}
+
+		private int slot(long key) {
+			// the bits of a code are far from random, so mix them (the SplitMix64 finalizer)
+			long h = key;
+			h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+			h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+			h = h ^ (h >>> 31);
+			int mask = keys.length - 1;
+			int slot = (int) h & mask;
+			while (keys[slot] != EMPTY && keys[slot] != key) {
+				slot = (slot + 1) & mask;
+			}
+			return slot;
+		}
+
+		long get(long key) {
+			int slot = slot(key);
+			return keys[slot] == EMPTY ? 0 : counts[slot];
+		}
+
+		void increment(long key) {
+			int slot = slot(key);
+			if (keys[slot] == EMPTY) {
+				// kept at most half full
+				if (2 * (size + 1) > keys.length) {
+					grow();
+					slot = slot(key);
+				}
+				keys[slot] = key;
+				++size;
+			}
+			++counts[slot];
+		}
+
+		private void grow() {
+			long[] oldKeys = keys;
+			long[] oldCounts = counts;
+			keys = new long[2 * oldKeys.length];
+			counts = new long[2 * oldKeys.length];
+			Arrays.fill(keys, EMPTY);
+			for (int i = 0 ; i < oldKeys.length ; ++i) {
+				if (oldKeys[i] != EMPTY) {
+					int slot = slot(oldKeys[i]);
+					keys[slot] = oldKeys[i];
+					counts[slot] = oldCounts[i];
+				}
+			}
+		}
+
+	}
+
+}
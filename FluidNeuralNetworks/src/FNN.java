@@ -8,26 +8,45 @@
  *
  */
 
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.List;
-import java.util.Random;
+import java.util.Locale;
 
 
 public class FNN {
 
-	// for random numbers in all classes
-	public static Random rand = new Random();
-
-	public static int iteration;
-	public static int numIterations;
-	// a certain number of iterations are discarded before data is collected
-	// to give the FNN time to settle into its behavior
-	public static int numIterationsDiscarded;
-	// how many iterations will we actually collect data for?
-	public static int numIterationsDataCollection;
-	public static int firstIterationDataCollection;
+	// run r of an experiment is seeded with seed + r, so fixing this makes every 
+	// run (and every prefix of every run) reproducible
+	// (the random number stream, iteration count and so on of each run are in its
+	// SimulationContext)
+	public static long seed = System.currentTimeMillis();
+	// and the generator behind the stream (JAVA_RANDOM gives the same runs as before there
+	// was a choice)
+	public static RandomStream.Generator generator = RandomStream.Generator.JAVA_RANDOM;
+	// how each run stores activation level histories (DOUBLE is exact; the others take less
+	// memory, to within ActivationLevelHistory.maxError)
+	public static ActivationLevelHistory.Encoding historyEncoding = ActivationLevelHistory.Encoding.DOUBLE;
+	// how each run stores its lattice (SPARSE takes less memory on big lattices at low 
+	// densities; the results are the same)
+	public static FluidNN.GridModel gridModel = FluidNN.GridModel.DENSE;
+	// if not null, the metrics of every configuration of an experiment (the sum over its 
+	// finished runs), and of each run while it runs, are registered here (e.g., to be 
+	// exported while a sweep runs; see MetricsRegistry)
+	public static MetricsRegistry metricsRegistry = null;
+	// if not null, runExperiment (and so ParameterSweep) writes the trajectory of every run
+	// to a file in this directory (see trajectoryFile and TrajectoryWriter), so that it can
+	// be analyzed again later without running it again
+	public static File trajectoryDirectory = null;
+
+	// this is what Sole and Miramontes did:  a certain number of iterations are discarded 
+	// before data is collected to give the FNN time to settle into its behavior
+	public static final int NUM_ITERATIONS = 11000;
+	public static final int NUM_ITERATIONS_DISCARDED = 1000;
 
 
 	// shape of the neighborhood
@@ -63,14 +82,6 @@ public class FNN {
 	}
 
 
-	// to collect data about how many times neurons could move
-	public static int numMoveOpportunities = 0;
-	// how many times they were active (and could have moved)
-	public static int numTimesActive = 0;
-	// and how many times they actually moved
-	public static int numActualMoves = 0;
-
-
 	/**
 	 * @param args
 	 */
@@ -112,60 +123,16 @@ public class FNN {
 		double sumNeighborActivationsThreshold = 0.0;
 
 
-		runExperiment2(numRuns, latticeSize, density, numNeurons, gain, spontActLevel,
+		System.out.println("SEED = " + seed + "  GENERATOR = " + generator + "\n");
+
+		runExperiment2Incremental(numRuns, latticeSize, density, numNeurons, gain, spontActLevel,
 					   spontActProb, activationThreshold, sumNeighborActivationsThreshold);
 		
-//		// headings for data ouput
-//		System.out.printf("                                                                            prob        prob        prob        prob        active as    moves as  \n");	
-//		System.out.printf(" lat                  spont-act    spont-act     average      average       0/0         0/1         1/0         1/1          perc of      perc of  \n");	
-//		System.out.printf("size   density  gain    level         prob       entropy    info trans      pair        pair        pair        pair          opps         active  \n");
-//		
-//		// all lattice size values
-//		for (int latticeSizeIndex = 0 ; latticeSizeIndex < latticeSizes.length ; ++latticeSizeIndex ) {
-//
-//			latticeSize = latticeSizes[latticeSizeIndex];
-//
-//
-//			// all density values
-//			for (int densityIndex = 0 ; densityIndex < densities.length ; ++densityIndex) {
-//
-//				density = densities[densityIndex];
-//				numNeurons = (int) ((latticeSize * latticeSize) * density);
-//
-//
-//				// all gain values
-//				for (int gainIndex = 0 ; gainIndex < gains.length ; ++gainIndex ) {
-//
-//					gain = gains[gainIndex];
-//
-//
-//					// all spontaneous activation levels
-//					for (int spontActLevelIndex = 0 ; spontActLevelIndex < spontActLevels.length ; ++spontActLevelIndex ) {
-//
-//						spontActLevel = spontActLevels[spontActLevelIndex];
-//
-//
-//						// all spontaneous activation probabilities
-//						for (int spontActProbIndex = 0 ; spontActProbIndex < spontActProbs.length ; ++spontActProbIndex ) {
-//
-//							spontActProb = spontActProbs[spontActProbIndex];
-//
-//							runExperiment(numRuns, latticeSize, density,
-//									numNeurons, gain, spontActLevel,
-//									spontActProb, activationThreshold,
-//									sumNeighborActivationsThreshold);	
-//
-//
-//						}
-//
-//
-//					}
-//
-//				}
-//
-//			}
-//
-//		}
+//		// all combinations of the values above, run in parallel (see ParameterSweep)
+//		printExperimentHeadings(System.out);
+//		ParameterSweep sweep = new ParameterSweep(latticeSizes, densities, gains, spontActLevels, spontActProbs, 
+//				numRuns, activationThreshold, sumNeighborActivationsThreshold, seed);
+//		sweep.run(Runtime.getRuntime().availableProcessors(), System.out);
 
 
 		System.out.println("\n\nDONE");			
@@ -188,65 +155,35 @@ public class FNN {
 		spontActProb = 1e-4;
 		
 		
-		History fullActiveInactiveGlobalHistory = new History();
-		History kPastActiveInactiveGlobalHistory = new History();
-		History lastStateActiveInactiveGlobalHistory = new History();
+		History fullActiveInactiveGlobalHistory = new VPTreeHistory();
+		History kPastActiveInactiveGlobalHistory = new VPTreeHistory();
+		History lastStateActiveInactiveGlobalHistory = new VPTreeHistory();
 		Stats stats = new Stats();
 		
-		numIterations = 11000;
-		numIterationsDiscarded = 1000;
-		numIterationsDataCollection = numIterations - numIterationsDiscarded;
-		firstIterationDataCollection = numIterationsDiscarded + 1;
+		int firstIterationDataCollection = NUM_ITERATIONS_DISCARDED + 1;
 		
-		for (int outerIteration = firstIterationDataCollection; outerIteration < numIterations; ++outerIteration) {
+		for (int outerIteration = firstIterationDataCollection; outerIteration < NUM_ITERATIONS; ++outerIteration) {
 			double totalAIS = 0;
-			HistoryKey activeInactiveLocalHistory;
-			HistoryKey kPastActiveInactiveLocalHistory;
-			HistoryKey lastStateLocalHistory;
-			
-			double[] activeInactiveHistory;
-			double[] kPastActiveInactiveHistory;
-			double lastStateHistory ;
-			
 			
 			for (int run = 0; run < numRuns; ++run) {
 				
-				FluidNN fnn = new FluidNN(latticeSize, latticeSize, numNeurons, gain, sumNeighborActivationsThreshold,
-						activationThreshold, spontActLevel, spontActProb);
+				// reseed so that every prefix replays the same trajectory for this run
+				SimulationContext context = new SimulationContext(RandomStream.create(generator, seed + run), NUM_ITERATIONS, NUM_ITERATIONS_DISCARDED, 
+						gain, sumNeighborActivationsThreshold, activationThreshold, spontActLevel, spontActProb);
+				context.setHistoryEncoding(historyEncoding);
+				FluidNN fnn = new FluidNN(latticeSize, latticeSize, numNeurons, context, gridModel);
 				
-				for (iteration = 0; iteration < outerIteration; ++iteration) {
+				for (int iteration = 0; iteration < outerIteration; ++iteration) {
+					context.setIteration(iteration);
 					fnn.moveAndUpdateNeurons(Topology.FNN_MOORE, SelfModel.INCLUDE_SELF, FNN_BoundaryModel.LATTICE, 
 											 FNN_ActivityModel.ALL_NEURONS);
 				}
-				Neuron[] neurons = fnn.getNeuronList();
-				for (int neuronIndex = 0; neuronIndex < neurons.length; ++neuronIndex) {
-					Neuron neuron = neurons[neuronIndex];
-					activeInactiveHistory = Arrays.copyOfRange(neuron.getActivationLevelHistory(), 0, neuron.getActivationLevelHistory().length - 1);
-					kPastActiveInactiveHistory = Arrays.copyOfRange(activeInactiveHistory, 0, activeInactiveHistory.length - 1);
-					lastStateHistory = activeInactiveHistory[activeInactiveHistory.length - 1];
-					stats.add(lastStateHistory);
-					
-					activeInactiveLocalHistory = new HistoryKey(activeInactiveHistory);
-					kPastActiveInactiveLocalHistory = new HistoryKey(kPastActiveInactiveHistory);
-					lastStateLocalHistory = new HistoryKey(lastStateHistory);
-					
-					fullActiveInactiveGlobalHistory.put(activeInactiveLocalHistory);
-					kPastActiveInactiveGlobalHistory.put(kPastActiveInactiveLocalHistory);
-					lastStateActiveInactiveGlobalHistory.put(lastStateLocalHistory);
-				}
+				poolActivationLevelHistories(fnn, fullActiveInactiveGlobalHistory, kPastActiveInactiveGlobalHistory, 
+											 lastStateActiveInactiveGlobalHistory, stats);
 				
 				if (run == numRuns - 1) {
-					double neighborhoodSize = 3.5 * (stats.standardDeviation()) / Math.pow(stats.size(), 1/3);
-					double AIS = 0;
-							for (int neuronIndex = 0; neuronIndex < neurons.length; ++neuronIndex) {
-								Neuron[] neuronList = fnn.getNeuronList();
-								Neuron neuron = neuronList[neuronIndex];
-								
-								AIS += localActiveInformationStorage(neuron, fullActiveInactiveGlobalHistory, 
-										kPastActiveInactiveGlobalHistory, lastStateActiveInactiveGlobalHistory,
-										neighborhoodSize);
-							}
-					totalAIS += AIS / numNeurons;
+					totalAIS += sumLocalAIS(fnn, fullActiveInactiveGlobalHistory, kPastActiveInactiveGlobalHistory, 
+											lastStateActiveInactiveGlobalHistory, stats) / numNeurons;
 				}
 			}
 			System.out.println("Average AIS = " + totalAIS/numRuns) ;
@@ -256,6 +193,104 @@ public class FNN {
 		//lastStateActiveInactiveGlobalHistory.printHistory();
 	}
 
+
+	// same output as runExperiment2, but each run is simulated only once:  the runs are
+	// stepped in lockstep (each with its own random number stream, seeded exactly as 
+	// runExperiment2 seeds it) and the pooled-history AIS is estimated at every checkpoint 
+	// as the trajectories grow, instead of replaying every prefix from iteration 0
+	private static void runExperiment2Incremental(int numRuns, int latticeSize,
+			double density, int numNeurons, double gain, double spontActLevel,
+			double spontActProb, double activationThreshold,
+			double sumNeighborActivationsThreshold) {
+		
+		// for testing purpose
+		numRuns = 10;
+		latticeSize = 9;
+		density = 0.49;
+		numNeurons = (int) ((latticeSize * latticeSize) * density);
+		gain = 0.2;
+		spontActLevel = 0.2;
+		spontActProb = 1e-4;
+		
+		
+		History fullActiveInactiveGlobalHistory = new VPTreeHistory();
+		History kPastActiveInactiveGlobalHistory = new VPTreeHistory();
+		History lastStateActiveInactiveGlobalHistory = new VPTreeHistory();
+		Stats stats = new Stats();
+		
+		int firstIterationDataCollection = NUM_ITERATIONS_DISCARDED + 1;
+		
+		// every run has its own context, and so its own random number stream
+		FluidNN[] fnns = new FluidNN[numRuns];
+		for (int run = 0; run < numRuns; ++run) {
+			SimulationContext context = new SimulationContext(RandomStream.create(generator, seed + run), NUM_ITERATIONS, NUM_ITERATIONS_DISCARDED, 
+					gain, sumNeighborActivationsThreshold, activationThreshold, spontActLevel, spontActProb);
+			context.setHistoryEncoding(historyEncoding);
+			fnns[run] = new FluidNN(latticeSize, latticeSize, numNeurons, context, gridModel);
+		}
+		
+		int iteration = 0;
+		for (int checkpoint = firstIterationDataCollection; checkpoint < NUM_ITERATIONS; ++checkpoint) {
+			
+			// advance every run up to (but not including) the checkpoint iteration
+			for ( ; iteration < checkpoint; ++iteration) {
+				for (int run = 0; run < numRuns; ++run) {
+					fnns[run].getContext().setIteration(iteration);
+					fnns[run].moveAndUpdateNeurons(Topology.FNN_MOORE, SelfModel.INCLUDE_SELF, FNN_BoundaryModel.LATTICE, 
+												   FNN_ActivityModel.ALL_NEURONS);
+				}
+			}
+			
+			for (int run = 0; run < numRuns; ++run) {
+				poolActivationLevelHistories(fnns[run], fullActiveInactiveGlobalHistory, kPastActiveInactiveGlobalHistory, 
+											 lastStateActiveInactiveGlobalHistory, stats);
+			}
+			
+			double totalAIS = sumLocalAIS(fnns[numRuns - 1], fullActiveInactiveGlobalHistory, kPastActiveInactiveGlobalHistory, 
+										  lastStateActiveInactiveGlobalHistory, stats) / numNeurons;
+			System.out.println("Average AIS = " + totalAIS/numRuns) ;
+		}
+	}
+
+
+	// add a snapshot of the activation level history of every neuron in the network to
+	// the pooled (global) histories, along with the last state of each to the stats
+	private static void poolActivationLevelHistories(FluidNN fnn, History fullActiveInactiveGlobalHistory, 
+			History kPastActiveInactiveGlobalHistory, History lastStateActiveInactiveGlobalHistory, Stats stats) {
+		
+		Neuron[] neurons = fnn.getNeuronList();
+		for (int neuronIndex = 0; neuronIndex < neurons.length; ++neuronIndex) {
+			Neuron neuron = neurons[neuronIndex];
+			double[] activeInactiveHistory = neuron.getActivationLevelHistory().toArray(0, neuron.getActivationLevelHistory().length() - 1);
+			double[] kPastActiveInactiveHistory = Arrays.copyOfRange(activeInactiveHistory, 0, activeInactiveHistory.length - 1);
+			double lastStateHistory = activeInactiveHistory[activeInactiveHistory.length - 1];
+			stats.add(lastStateHistory);
+			
+			fullActiveInactiveGlobalHistory.put(new HistoryKey(activeInactiveHistory));
+			kPastActiveInactiveGlobalHistory.put(new HistoryKey(kPastActiveInactiveHistory));
+			lastStateActiveInactiveGlobalHistory.put(new HistoryKey(lastStateHistory));
+		}
+	}
+
+
+	// sum of the local AIS of every neuron in the network with respect to the pooled histories
+	private static double sumLocalAIS(FluidNN fnn, History fullActiveInactiveGlobalHistory, 
+			History kPastActiveInactiveGlobalHistory, History lastStateActiveInactiveGlobalHistory, Stats stats) {
+		
+		double neighborhoodSize = 3.5 * (stats.standardDeviation()) / Math.pow(stats.size(), 1/3);
+		// one event for the whole network, rather than one per neuron
+		Object event = FNNEvents.beginAnalysis();
+		double AIS = 0;
+		Neuron[] neurons = fnn.getNeuronList();
+		for (int neuronIndex = 0; neuronIndex < neurons.length; ++neuronIndex) {
+			AIS += localActiveInformationStorage(neurons[neuronIndex], fullActiveInactiveGlobalHistory, 
+					kPastActiveInactiveGlobalHistory, lastStateActiveInactiveGlobalHistory,
+					neighborhoodSize);
+		}
+		FNNEvents.endAnalysis(event, "localActiveInformationStorage", neurons.length);
+		return AIS;
+	}
+
 	
 
 	private static List<Integer> convertToIntegerList(int[] intList) {
@@ -268,10 +303,21 @@ public class FNN {
 	}
 
 	
-	private static void runExperiment(int numRuns, int latticeSize,
+	// headings for the rows runExperiment returns
+	public static void printExperimentHeadings(PrintStream out) {
+		out.printf("                                                                            prob        prob        prob        prob        active as    moves as  \n");	
+		out.printf(" lat                  spont-act    spont-act     average      average       0/0         0/1         1/0         1/1          perc of      perc of  \n");	
+		out.printf("size   density  gain    level         prob       entropy    info trans      pair        pair        pair        pair          opps         active  \n");
+	}
+
+
+	// do numRuns runs of one configuration and return a row of averages; run r is seeded 
+	// with seed + r, and uses nothing but its own context, so any number of experiments
+	// can run at the same time
+	public static String runExperiment(int numRuns, int latticeSize,
 			double density, int numNeurons, double gain, double spontActLevel,
 			double spontActProb, double activationThreshold,
-			double sumNeighborActivationsThreshold) {
+			double sumNeighborActivationsThreshold, long seed) {
 		// initializations
 		double sumEntropy = 0.0;
 		double sumInfoTransfer = 0.0;
@@ -282,36 +328,50 @@ public class FNN {
 		double sumTimesActivePercentOfOpportunities = 0.0;
 		double sumMovesPercentOfTimesActive = 0.0;
 
+		Object configurationEvent = FNNEvents.beginConfiguration();
+
+		MetricsRegistry registry = metricsRegistry;
+		SimulationMetrics configurationMetrics = registerConfigurationMetrics(registry, latticeSize, density, gain, 
+				spontActLevel, spontActProb);
+		File trajectories = trajectoryDirectory;
+
 
 		for(int run = 0 ; run < numRuns ; ++run) {
 
-			numMoveOpportunities = 0;
-			numTimesActive = 0;
-			numActualMoves = 0;
+			Object runEvent = FNNEvents.beginRun();
 
-			// this is what Sole and Miramontes did
-			numIterations = 11000;
-			numIterationsDiscarded = 1000;
-			numIterationsDataCollection = numIterations - numIterationsDiscarded;
-			firstIterationDataCollection = numIterationsDiscarded + 1;
+			SimulationContext context = new SimulationContext(RandomStream.create(generator, seed + run), NUM_ITERATIONS, NUM_ITERATIONS_DISCARDED, 
+					gain, sumNeighborActivationsThreshold, activationThreshold, spontActLevel, spontActProb);
+			context.setHistoryEncoding(historyEncoding);
+			String runMetricsName = metricsName(latticeSize, density, gain, spontActLevel, spontActProb) + "_run" + run;
+			if (registry != null) {
+				registry.register(runMetricsName, context.getMetrics());
+			}
 
-			double[] histogramNumActive = new double[numNeurons+1];
+			// over the whole of data collection; a shorter window shows how it changes during a run
+			SlidingWindowSKE ske = new SlidingWindowSKE(numNeurons, context.getNumIterationsDataCollection());
 
-			FluidNN fnn = new FluidNN(latticeSize, latticeSize, numNeurons, gain, sumNeighborActivationsThreshold,
-					activationThreshold, spontActLevel, spontActProb);
+			FluidNN fnn = new FluidNN(latticeSize, latticeSize, numNeurons, context, gridModel);
+			TrajectoryWriter trajectory = openTrajectory(trajectories, fnn, latticeSize, density, gain, spontActLevel, 
+					spontActProb, run);
 
 
-			for (iteration = 1 ; iteration <= numIterations ; ++iteration) {
+			for (int iteration = 1 ; iteration <= context.getNumIterations() ; ++iteration) {
 
+				context.setIteration(iteration);
 				fnn.moveAndUpdateNeurons(Topology.FNN_MOORE, SelfModel.INCLUDE_SELF, FNN_BoundaryModel.LATTICE, FNN_ActivityModel.ALL_NEURONS);
+				if (trajectory != null)
+					appendTrajectory(trajectory, fnn);
 				int numActiveNeurons = fnn.numActiveNeurons();
-				if (iteration >= firstIterationDataCollection)
-					++histogramNumActive[numActiveNeurons];
+				if (context.collectingData())
+					ske.add(numActiveNeurons);
 				//				System.out.println("iteration " + iteration + "   num active neurons = " + numActiveNeurons);
 				//				fnn.printActiveStatusWithIDs();
 				//				activityDataFile.println(iteration + "   " + (double) numActiveNeurons/numNeurons);
 			}
+			closeTrajectory(trajectory);
 
+			sumEntropy += ske.entropy();
 
 			double[] infoTransferInfo = calculateInfoTransferRandomPair(fnn);
 			//									System.out.println("Info Transfer = " + infoTransfer);
@@ -321,14 +381,113 @@ public class FNN {
 			sum10PairProb += infoTransferInfo[3];
 			sum11PairProb += infoTransferInfo[4];
 
-			sumTimesActivePercentOfOpportunities += numTimesActive * 100.0 / numMoveOpportunities;
-			sumMovesPercentOfTimesActive += numActualMoves * 100.0 / numTimesActive;
+			sumTimesActivePercentOfOpportunities += context.getNumTimesActive() * 100.0 / context.getNumMoveOpportunities();
+			sumMovesPercentOfTimesActive += context.getNumActualMoves() * 100.0 / context.getNumTimesActive();
+
+			finishRunMetrics(registry, configurationMetrics, runMetricsName, context.getMetrics());
+
+			FNNEvents.endRun(runEvent, latticeSize, density, numNeurons, gain, spontActLevel, spontActProb, run, 
+					seed + run, context.getNumIterations(), context.getNumTimesActive(), context.getNumActualMoves());
+
+		}
+
+		FNNEvents.endConfiguration(configurationEvent, latticeSize, density, numNeurons, gain, spontActLevel, 
+				spontActProb, numRuns, seed);
+
+
+		// averages
+		return String.format("%2d      %4.2f    %4.2f     %4.2f       %8.6f   %9.5f    %9.5f     %7.5f     %7.5f     %7.5f     %7.5f     %9.5f     %9.5f", 
+				latticeSize, density, gain, spontActLevel, spontActProb,
+				sumEntropy/numRuns,
+
+				sumInfoTransfer/numRuns,
+				sum00PairProb/numRuns,
+				sum01PairProb/numRuns,
+				sum10PairProb/numRuns,
+				sum11PairProb/numRuns,
+
+				sumTimesActivePercentOfOpportunities/numRuns,
+				sumMovesPercentOfTimesActive/numRuns);
+	}
+
+	
+	// same row as runExperiment (with the same seeds, exactly the same numbers), but the runs
+	// are replicas in a BatchedFluidNN, all stepped together, and the averages are reduced
+	// straight from the batch
+	public static String runExperimentBatched(int numRuns, int latticeSize,
+			double density, int numNeurons, double gain, double spontActLevel,
+			double spontActProb, double activationThreshold,
+			double sumNeighborActivationsThreshold, long seed) {
+		// initializations
+		double sumEntropy = 0.0;
+		double sumInfoTransfer = 0.0;
+		double sum00PairProb = 0.0;
+		double sum01PairProb = 0.0;
+		double sum10PairProb = 0.0;
+		double sum11PairProb = 0.0;
+		double sumTimesActivePercentOfOpportunities = 0.0;
+		double sumMovesPercentOfTimesActive = 0.0;
+
+		Object configurationEvent = FNNEvents.beginConfiguration();
+
+		SimulationContext[] contexts = new SimulationContext[numRuns];
+		for (int run = 0 ; run < numRuns ; ++run) {
+			contexts[run] = new SimulationContext(RandomStream.create(generator, seed + run), NUM_ITERATIONS, NUM_ITERATIONS_DISCARDED, 
+					gain, sumNeighborActivationsThreshold, activationThreshold, spontActLevel, spontActProb);
+			contexts[run].setHistoryEncoding(historyEncoding);
+		}
+		// (as in runExperiment, with every replica a run)
+		MetricsRegistry registry = metricsRegistry;
+		SimulationMetrics configurationMetrics = registerConfigurationMetrics(registry, latticeSize, density, gain, 
+				spontActLevel, spontActProb);
+		String[] runMetricsNames = new String[numRuns];
+		for (int run = 0 ; run < numRuns ; ++run) {
+			runMetricsNames[run] = metricsName(latticeSize, density, gain, spontActLevel, spontActProb) + "_run" + run;
+			if (registry != null) {
+				registry.register(runMetricsNames[run], contexts[run].getMetrics());
+			}
+		}
+		BatchedFluidNN batch = new BatchedFluidNN(latticeSize, latticeSize, numNeurons, contexts);
+		// (as in runExperiment)
+		SlidingWindowSKE[] skes = new SlidingWindowSKE[numRuns];
+		for (int run = 0 ; run < numRuns ; ++run) {
+			skes[run] = new SlidingWindowSKE(numNeurons, contexts[run].getNumIterationsDataCollection());
+		}
+
+		for (int iteration = 1 ; iteration <= NUM_ITERATIONS ; ++iteration) {
+			batch.setIteration(iteration);
+			batch.moveAndUpdateNeurons(Topology.FNN_MOORE, SelfModel.INCLUDE_SELF, FNN_BoundaryModel.LATTICE, FNN_ActivityModel.ALL_NEURONS);
+			for (int run = 0 ; run < numRuns ; ++run) {
+				if (contexts[run].collectingData())
+					skes[run].add(batch.numActiveNeurons(run));
+			}
+		}
+
+		for (int run = 0 ; run < numRuns ; ++run) {
+
+			sumEntropy += skes[run].entropy();
+
+			double[] infoTransferInfo = calculateInfoTransferRandomPair(batch, run);
+			sumInfoTransfer += infoTransferInfo[0];
+			sum00PairProb += infoTransferInfo[1];
+			sum01PairProb += infoTransferInfo[2];
+			sum10PairProb += infoTransferInfo[3];
+			sum11PairProb += infoTransferInfo[4];
+
+			SimulationContext context = batch.getContext(run);
+			sumTimesActivePercentOfOpportunities += context.getNumTimesActive() * 100.0 / context.getNumMoveOpportunities();
+			sumMovesPercentOfTimesActive += context.getNumActualMoves() * 100.0 / context.getNumTimesActive();
+
+			finishRunMetrics(registry, configurationMetrics, runMetricsNames[run], context.getMetrics());
 
 		}
 
+		FNNEvents.endConfiguration(configurationEvent, latticeSize, density, numNeurons, gain, spontActLevel, 
+				spontActProb, numRuns, seed);
 
-		// print out averages
-		System.out.printf("%2d      %4.2f    %4.2f     %4.2f       %8.6f   %9.5f    %9.5f     %7.5f     %7.5f     %7.5f     %7.5f     %9.5f     %9.5f\n", 
+
+		// averages
+		return String.format("%2d      %4.2f    %4.2f     %4.2f       %8.6f   %9.5f    %9.5f     %7.5f     %7.5f     %7.5f     %7.5f     %9.5f     %9.5f", 
 				latticeSize, density, gain, spontActLevel, spontActProb,
 				sumEntropy/numRuns,
 
@@ -343,12 +502,108 @@ public class FNN {
 	}
 
 	
-	// Shannon-Kolmogorov entropy
+	// name of the metrics of a configuration in the registry (a run's add "_run" and its number)
+	private static String metricsName(int latticeSize, double density, double gain, double spontActLevel, double spontActProb) {
+		return String.format(Locale.ROOT, "size%d_density%.2f_gain%.2f_level%.2f_prob%.6f", 
+				latticeSize, density, gain, spontActLevel, spontActProb);
+	}
+
+
+	// the file in the directory that runExperiment writes the trajectory of a run of a
+	// configuration to (named like the run's metrics)
+	public static File trajectoryFile(File directory, int latticeSize, double density, double gain, double spontActLevel, 
+			double spontActProb, int run) {
+		return new File(directory, metricsName(latticeSize, density, gain, spontActLevel, spontActProb) + "_run" + run 
+				+ ".trajectory");
+	}
+
+
+	// a writer for the trajectory of a run, or null if trajectories aren't being written (the
+	// simulation can't carry on without it, so a file that can't be written stops the run)
+	private static TrajectoryWriter openTrajectory(File directory, FluidNN fnn, int latticeSize, double density, double gain, 
+			double spontActLevel, double spontActProb, int run) {
+
+		if (directory == null)
+			return null;
+		File file = trajectoryFile(directory, latticeSize, density, gain, spontActLevel, spontActProb, run);
+		directory.mkdirs();
+		try {
+			return new TrajectoryWriter(file, fnn);
+		}
+		catch (IOException e) {
+			throw new RuntimeException("could not write trajectory " + file, e);
+		}
+
+	}
+
+
+	private static void appendTrajectory(TrajectoryWriter trajectory, FluidNN fnn) {
+
+		try {
+			trajectory.append(fnn);
+		}
+		catch (IOException e) {
+			try {
+				trajectory.close();
+			}
+			catch (IOException closing) {
+				// the write failing is what matters
+			}
+			throw new RuntimeException("could not write trajectory", e);
+		}
+
+	}
+
+
+	private static void closeTrajectory(TrajectoryWriter trajectory) {
+
+		if (trajectory == null)
+			return;
+		try {
+			trajectory.close();
+		}
+		catch (IOException e) {
+			throw new RuntimeException("could not write trajectory", e);
+		}
+
+	}
+
+
+	// metrics for the sum over the runs of a configuration, registered if there is a registry
+	private static SimulationMetrics registerConfigurationMetrics(MetricsRegistry registry, int latticeSize, double density, 
+			double gain, double spontActLevel, double spontActProb) {
+
+		SimulationMetrics configurationMetrics = new SimulationMetrics();
+		if (registry != null) {
+			registry.register(metricsName(latticeSize, density, gain, spontActLevel, spontActProb), configurationMetrics);
+		}
+		return configurationMetrics;
+
+	}
+
+
+	// add the metrics of a finished run to those of its configuration, and unregister the run,
+	// so that a sweep leaves one entry per configuration in the registry
+	private static void finishRunMetrics(MetricsRegistry registry, SimulationMetrics configurationMetrics, String runMetricsName, 
+			SimulationMetrics runMetrics) {
+
+		configurationMetrics.add(runMetrics);
+		if (registry != null) {
+			registry.unregister(runMetricsName);
+		}
+
+	}
+
+
+	// Shannon-Kolmogorov entropy (see also SlidingWindowSKE, which keeps it up to date as a
+	// run goes on)
 	// histogramNumActive provides the number of iterations that had
 	// 0, 1, ..., numNeurons neurons active for a given run
 	// NOTE:  this is different from the entropy of the activity history of a neuron   *******************************
 	public static double calculateSKE (double[] histogramNumActive) {
 
+		Object event = FNNEvents.beginAnalysis();
+
 		double[] freqenciesNumActive = new double[histogramNumActive.length];
 
 		// over how many iterations was the data collected?
@@ -368,6 +623,7 @@ public class FNN {
 				SKEsummation += frequency * lg(frequency);
 		}
 
+		FNNEvents.endAnalysis(event, "calculateSKE", histogramNumActive.length);
 		return - SKEsummation;
 
 
@@ -378,26 +634,78 @@ public class FNN {
 	// plus the probabilities of each pair of activation values
 	public static double[] calculateInfoTransferRandomPair(FluidNN fnn) {
 
+		Object event = FNNEvents.beginAnalysis();
+
 		Neuron n1 = fnn.getRandomNeuron();
 		Neuron n2 = fnn.getRandomNeuron();
 		while (n1 == n2) {
 			n2 = fnn.getRandomNeuron();
 		}
 
-		double prob_n1state0 = Neuron.probabilityState(n1, 0);
-		double prob_n1state1 = Neuron.probabilityState(n1, 1);
+		double[] infoTransferInfo = calculateInfoTransfer(n1.getActiveInactiveHistory(), n2.getActiveInactiveHistory());
+		FNNEvents.endAnalysis(event, "calculateInfoTransferRandomPair", n1.getActiveInactiveHistory().length());
+		return infoTransferInfo;
+
+	}
+
+
+	// same, for a random pair of neurons of replica r of a batch
+	public static double[] calculateInfoTransferRandomPair(BatchedFluidNN batch, int r) {
+
+		Object event = FNNEvents.beginAnalysis();
+
+		int n1 = batch.getRandomNeuron(r);
+		int n2 = batch.getRandomNeuron(r);
+		while (n1 == n2) {
+			n2 = batch.getRandomNeuron(r);
+		}
+
+		double[] infoTransferInfo = calculateInfoTransfer(batch.getActiveInactiveHistory(r, n1), batch.getActiveInactiveHistory(r, n2));
+		FNNEvents.endAnalysis(event, "calculateInfoTransferRandomPair", batch.getActiveInactiveHistory(r, n1).length());
+		return infoTransferInfo;
+
+	}
+
+
+	// average information transfer over every pair of neurons of the network (see 
+	// MutualInformationMatrix), a far less noisy estimate than a single random pair
+	public static double calculateInfoTransferAllPairs(FluidNN fnn) {
+
+		return new MutualInformationMatrix(fnn).mean();
+
+	}
+
+
+	// transfer entropy from neighbors to neurons (see TransferEntropy), with the counts of all
+	// ordered pairs of neighbors at the end of the run pooled; unlike the info transfer, it
+	// has a direction, and sees influence with a lag
+	public static double calculateNeighborTransferEntropy(FluidNN fnn, FNN_BoundaryModel boundaryModel,
+			int targetHistoryLength, int sourceHistoryLength) {
+
+		int[][] pairs = TransferEntropy.neighborPairs(fnn, boundaryModel);
+		return new TransferEntropy(fnn, targetHistoryLength, sourceHistoryLength).pooled(pairs[0], pairs[1]);
+
+	}
+
+
+	// information transfer between two neurons, given their activity histories, plus the 
+	// probabilities of each pair of activation values
+	public static double[] calculateInfoTransfer(ActiveInactiveHistory activeInactiveHistory1, ActiveInactiveHistory activeInactiveHistory2) {
+
+		double prob_n1state0 = Neuron.probabilityState(activeInactiveHistory1, 0);
+		double prob_n1state1 = Neuron.probabilityState(activeInactiveHistory1, 1);
 		double[] probs1 = { prob_n1state0, prob_n1state1};
 		double entropy1 = calculateEntropy(probs1);
 
-		double prob_n2state0 = Neuron.probabilityState(n2, 0);
-		double prob_n2state1 = Neuron.probabilityState(n2, 1);
+		double prob_n2state0 = Neuron.probabilityState(activeInactiveHistory2, 0);
+		double prob_n2state1 = Neuron.probabilityState(activeInactiveHistory2, 1);
 		double[] probs2 = { prob_n2state0, prob_n2state1 };
 		double entropy2 = calculateEntropy(probs2);
 
-		double prob_n1state0_n2state0 = Neuron.probabilityStatesJoint(n1, 0, n2, 0);
-		double prob_n1state0_n2state1 = Neuron.probabilityStatesJoint(n1, 0, n2, 1);
-		double prob_n1state1_n2state0 = Neuron.probabilityStatesJoint(n1, 1, n2, 0);
-		double prob_n1state1_n2state1 = Neuron.probabilityStatesJoint(n1, 1, n2, 1);
+		double prob_n1state0_n2state0 = Neuron.probabilityStatesJoint(activeInactiveHistory1, 0, activeInactiveHistory2, 0);
+		double prob_n1state0_n2state1 = Neuron.probabilityStatesJoint(activeInactiveHistory1, 0, activeInactiveHistory2, 1);
+		double prob_n1state1_n2state0 = Neuron.probabilityStatesJoint(activeInactiveHistory1, 1, activeInactiveHistory2, 0);
+		double prob_n1state1_n2state1 = Neuron.probabilityStatesJoint(activeInactiveHistory1, 1, activeInactiveHistory2, 1);
 		double[] probs = { prob_n1state0_n2state0, prob_n1state0_n2state1, prob_n1state1_n2state0, prob_n1state1_n2state1 };
 		double jointEntropy = calculateEntropy(probs);
 
@@ -429,7 +737,7 @@ public class FNN {
 	public static double localActiveInformationStorage(Neuron neuron, History fullActiveInactiveGlobalHistory, 
 													   History kPastActiveInactiveGlobalHistory, 
 													   History lastStateActiveInactiveGlobalHistory, double neighborhoodSize) {
-		double[] activeInactiveHistory = Arrays.copyOfRange(neuron.getActivationLevelHistory(), 0, neuron.getActivationLevelHistory().length - 1);
+		double[] activeInactiveHistory = neuron.getActivationLevelHistory().toArray(0, neuron.getActivationLevelHistory().length() - 1);
 		double[] kPastActiveInactiveHistory = Arrays.copyOfRange(activeInactiveHistory, 0, activeInactiveHistory.length - 1);
 		double lastStateActiveInactive = activeInactiveHistory[activeInactiveHistory.length - 1];
 		
@@ -456,6 +764,51 @@ public class FNN {
 		return res;
 	}
 
+	// average AIS over every neuron of every given network (e.g., all the runs of one
+	// configuration), estimated with the KSG estimator on time-delay embeddings of length
+	// historyLength of the neurons' activation level histories
+	public static double calculateKSGActiveInformationStorage(FluidNN[] fnns, int historyLength, int numNeighbors) {
+		
+		KSGActiveInformationStorage ksg = new KSGActiveInformationStorage(historyLength, numNeighbors);
+		for (int run = 0; run < fnns.length; ++run) {
+			Neuron[] neurons = fnns[run].getNeuronList();
+			for (int neuronIndex = 0; neuronIndex < neurons.length; ++neuronIndex) {
+				ksg.addSeries(neurons[neuronIndex].getActivationLevelHistory());
+			}
+		}
+		return ksg.averageAIS();
+	}
+
+	// same, for stored trajectories (see TrajectoryWriter), over the steps recorded while
+	// data was being collected
+	public static double calculateKSGActiveInformationStorage(TrajectoryReader[] trajectories, int historyLength, int numNeighbors) {
+		
+		KSGActiveInformationStorage ksg = new KSGActiveInformationStorage(historyLength, numNeighbors);
+		for (int run = 0; run < trajectories.length; ++run) {
+			TrajectoryReader trajectory = trajectories[run];
+			int firstStep = trajectory.findStep(trajectory.getNumIterationsDiscarded() + 1);
+			for (int neuronIndex = 0; neuronIndex < trajectory.getNumNeurons(); ++neuronIndex) {
+				ksg.addSeries(trajectory.getActivationLevelHistory(neuronIndex, firstStep, trajectory.getNumSteps(), 
+						ActivationLevelHistory.Encoding.DOUBLE));
+			}
+		}
+		return ksg.averageAIS();
+	}
+
+	// average AIS of the activity status (active or not) of every neuron in every run, with
+	// the last historyLength states as the past (see DiscreteActiveInformationStorage)
+	public static double calculateDiscreteActiveInformationStorage(FluidNN[] fnns, int historyLength) {
+		
+		DiscreteActiveInformationStorage ais = new DiscreteActiveInformationStorage(historyLength);
+		for (int run = 0; run < fnns.length; ++run) {
+			Neuron[] neurons = fnns[run].getNeuronList();
+			for (int neuronIndex = 0; neuronIndex < neurons.length; ++neuronIndex) {
+				ais.addSeries(neurons[neuronIndex].getActiveInactiveHistory());
+			}
+		}
+		return ais.averageAIS();
+	}
+
 	// log base 2
 	public static double lg (double d) {	
 		return Math.log10(d) / Math.log10(2.0);
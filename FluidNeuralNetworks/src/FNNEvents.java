@@ -0,0 +1,154 @@
+/**
+ * Java Flight Recorder events for what the simulation is doing, so that a recording of a
+ * sweep (e.g., java -XX:StartFlightRecording=filename=fnn.jfr ...) shows which
+ * configurations and which phases the time and the allocation go to:
+ *   - fnn.Configuration, around all the runs of one configuration (FNN.runExperiment)
+ *   - fnn.Run, around one run, with its move counts
+ *   - fnn.Step, around one iteration (FluidNN.moveAndUpdateNeurons), but only every
+ *     stepSampleInterval-th one, with the number of active neurons and moves
+ *   - fnn.Analysis, around the measures worked out from the histories
+ *
+ * The simulation is built for Java 8, which need not have jdk.jfr (it is in JDK 11 and up,
+ * and in OpenJDK 8 from 8u262), so this class only marks where the events begin and end.
+ * The events themselves are in JfrFNNEvents, in the jfr source folder, and are picked up
+ * if it has been built along with src.  The Eclipse project has jfr as a second source
+ * folder (take it off the build path on a JRE without jdk.jfr), and the benchmarks build it
+ * on JDK 11 and up; by hand:
+ *   javac -d bin src/*.java jfr/*.java
+ * Without it, the events are off, and a line on System.err says why, once.
+ *
+ * A begin method gives back the event that has begun, or null if it won't be recorded (no
+ * JfrFNNEvents, no recording going, or the event turned off in the recording's settings),
+ * in which case nothing is allocated and the end method does nothing.
+ */
+public class FNNEvents {
+
+	// a step event is recorded for iterations that are a multiple of this (0 for none)
+	public static volatile int stepSampleInterval = 100;
+
+	// the events, if JfrFNNEvents is there and jdk.jfr with it (otherwise this, which records nothing)
+	private static final FNNEvents events = load();
+
+
+	protected FNNEvents() {
+	}
+
+
+	private static FNNEvents load() {
+
+		try {
+			Class.forName("jdk.jfr.Event");
+		}
+		catch (ClassNotFoundException e) {
+			System.err.println("FNN events off:  no jdk.jfr in this JVM (JDK 11 and up, or OpenJDK 8 from 8u262)");
+			return new FNNEvents();
+		}
+
+		try {
+			return (FNNEvents) Class.forName("JfrFNNEvents").getDeclaredConstructor().newInstance();
+		}
+		catch (ReflectiveOperationException e) {
+			System.err.println("FNN events off:  JfrFNNEvents isn't there (build the jfr source folder along with src):  " + e);
+		}
+		catch (LinkageError e) {
+			System.err.println("FNN events off:  JfrFNNEvents couldn't be loaded:  " + e);
+		}
+		return new FNNEvents();
+
+	}
+
+
+	// whether a step event should be recorded for this iteration
+	public static boolean sampleStep(int iteration) {
+		int interval = stepSampleInterval;
+		return interval > 0 && iteration % interval == 0;
+	}
+
+
+	// one iteration of a FluidNN (null unless this iteration is sampled and the event is recorded)
+	public static Object beginStep(int iteration) {
+		return sampleStep(iteration) ? events.newStep() : null;
+	}
+
+	public static void endStep(Object step, int iteration, int numRows, int numCols, int numNeurons,
+			double gain, int numActive, long numMoves) {
+		if (step != null)
+			events.commitStep(step, iteration, numRows, numCols, numNeurons, gain, numActive, numMoves);
+	}
+
+
+	// one run of an experiment
+	public static Object beginRun() {
+		return events.newRun();
+	}
+
+	public static void endRun(Object run, int latticeSize, double density, int numNeurons, double gain,
+			double spontActLevel, double spontActProb, int runNumber, long seed, int numIterations,
+			long numTimesActive, long numActualMoves) {
+		if (run != null)
+			events.commitRun(run, latticeSize, density, numNeurons, gain, spontActLevel, spontActProb, runNumber,
+					seed, numIterations, numTimesActive, numActualMoves);
+	}
+
+
+	// all the runs of one configuration
+	public static Object beginConfiguration() {
+		return events.newConfiguration();
+	}
+
+	public static void endConfiguration(Object configuration, int latticeSize, double density, int numNeurons,
+			double gain, double spontActLevel, double spontActProb, int numRuns, long seed) {
+		if (configuration != null)
+			events.commitConfiguration(configuration, latticeSize, density, numNeurons, gain, spontActLevel,
+					spontActProb, numRuns, seed);
+	}
+
+
+	// working out a measure (phase) from the histories; size is, e.g., the length of the
+	// histories, or the number of bins
+	public static Object beginAnalysis() {
+		return events.newAnalysis();
+	}
+
+	public static void endAnalysis(Object analysis, String phase, int size) {
+		if (analysis != null)
+			events.commitAnalysis(analysis, phase, size);
+	}
+
+
+	// what JfrFNNEvents records:  newX begins an event and gives it back (null if it won't be
+	// recorded), and commitX ends it and, if it is still to be recorded, fills it in and commits it
+
+	protected Object newStep() {
+		return null;
+	}
+
+	protected void commitStep(Object step, int iteration, int numRows, int numCols, int numNeurons,
+			double gain, int numActive, long numMoves) {
+	}
+
+	protected Object newRun() {
+		return null;
+	}
+
+	protected void commitRun(Object run, int latticeSize, double density, int numNeurons, double gain,
+			double spontActLevel, double spontActProb, int runNumber, long seed, int numIterations,
+			long numTimesActive, long numActualMoves) {
+	}
+
+	protected Object newConfiguration() {
+		return null;
+	}
+
+	protected void commitConfiguration(Object configuration, int latticeSize, double density, int numNeurons,
+			double gain, double spontActLevel, double spontActProb, int numRuns, long seed) {
+	}
+
+	protected Object newAnalysis() {
+		return null;
+	}
+
+	protected void commitAnalysis(Object analysis, String phase, int size) {
+	}
+
+}
@@ -15,17 +15,61 @@
  * 12/03/13
  *
  */
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+
 public class FluidNN {
 
+	// how the lattice is stored:
+	//   - DENSE:  the padded grid (below); fastest, but it takes memory in proportion to
+	//     the area of the lattice, whatever the density
+	//   - SPARSE:  only the occupied cells, in a SparseGrid; memory in proportion to the
+	//     number of neurons, for big lattices at low densities
+	// a run gives the same results either way
+	public static enum GridModel {
+		DENSE, SPARSE
+	}
+
 	// an array of the neurons
 	private Neuron[] neuronList;
-	// the nodes/automata of an FNN live on a lattice/grid
-	private Neuron[][] grid;
+	// the nodes/automata of an FNN live on a lattice/grid;
+	// it is stored row by row in a flat array, with a one-cell halo all the way around
+	// it, so every cell of the grid has all 8 Moore neighbor cells and neighbors can be
+	// found by adding a fixed offset to a cell's index, with no bounds checks or wrap-around:
+	//   - on a LATTICE the halo cells hold the wall, which is never a neighbor, but
+	//     makes the cell look occupied when a neuron is looking for somewhere to move
+	//   - on a TORUS the halo cells are ghosts of the cells they wrap around to, and 
+	//     are kept up to date whenever a cell changes
+	private Neuron[] grid;
 	// size of grid
 	private int numRows;
 	private int numCols;
+	// a row of the padded grid is numCols + 2 cells long
+	private int stride;
+	// what the halo is currently set up for
+	private FNN.FNN_BoundaryModel haloBoundaryModel;
+	// occupies the halo on a LATTICE; it is never active and its activation level is 0.0
+	private Neuron wall;
+	// for every index in the padded grid, the index of the cell in the grid it wraps around to
+	// (itself, for a cell in the grid)
+	private int[] wrappedIndex;
+	// for every cell in the grid, the indices of the halo cells that are its ghosts (null if none)
+	private int[][] ghostIndices;
+	// offsets of the 8 Moore neighbor cells
+	private int[] mooreOffsets;
+	// with a SPARSE grid model, the occupied cells (and grid, wrappedIndex, ghostIndices 
+	// and mooreOffsets are null); null with a DENSE one
+	private SparseGrid sparseGrid;
+	// number of occupied cells (neurons only ever move from one cell to another)
+	private int numOccupied;
 	// number of neurons
 	private int numNeurons;
+	// the ones that are active (by index in neuronList), kept up to date as their status changes
+	private ActiveSet activeSet = new ActiveSet(0);
 
 	// this is the "coupling matrix" in Sole & Miramontes:
 	//
@@ -51,6 +95,25 @@ public class FluidNN {
 	// for now, we will follow the paper
 	private double[][] J = { { 1.0, 1.0 }, { 1.0, 1.0 } };
 
+	// sums activations over neighborhoods for the current combination of models without
+	// building the neighborhoods; created the first time they are used (i.e., once per run)
+	private NeighborhoodKernel neighborhoodKernel;
+	private FNN.Topology kernelTopology;
+	private FNN.SelfModel kernelSelfModel;
+	private FNN.FNN_BoundaryModel kernelFNNBoundaryModel;
+	private FNN.FNN_ActivityModel kernelFNNActivityModel;
+
+	// scratch space for updateActivationLevels, so that updating allocates nothing
+	private double[] newActivationLevels;
+
+	// for the parallel update (see setParallelUpdate):  the pool that blocks of neurons are
+	// handed to (null for the usual sequential update), and one stream of random numbers
+	// per neuron, so the results don't depend on which thread updates which neuron
+	private ForkJoinPool updatePool;
+	private RandomStream[] neuronRands;
+	// number of neurons in a block
+	private static final int UPDATE_BLOCK_SIZE = 1024;
+
 	// *************************** this is what I've been using
 	// *************************** it's possible that INITIAL_ACTIVATION_LOW_LEVEL should be -1.0; unclear whether it makes a difference
 	// new neurons have an activation level between 0.0 and 1.0
@@ -60,78 +123,157 @@ public class FluidNN {
 		INITIAL_ACTIVATION_HIGH_LEVEL- INITIAL_ACTIVATION_LOW_LEVEL;
 
 
-	// NOTE: all of the values below are defaults and will usually be over-ridden
-	// No idea why I made them static....
-	
-	
-	// this is factor that dials the activation level up and down;
-	// it is applied to the activation sum before the "squashing
-	//  function" (tanh, in this case) is applied
-	private static double gain = 0.2;
+	// the random number stream, iteration, move counters and parameters of the
+	// simulation this network belongs to
+	private SimulationContext context;
 
-	
-	// there appear to be two thresholds in the Sole & Miramontes paper:
-	//   1) one that is used in the sum of neighbor activations calculation
-	//		(but is set to 0.0 in the paper)
-	private static double sumNeighborActivationsThreshold = 0.0;
 
-	
-	// a neuron can become active in one of two ways:
-	//   1) its activation level exceeds a threshold:
-	//      (in Sole & Miramontes this is 1e-16)
-	private static double activationThreshold = 1e-16;
-	//   2) it is inactive and becomes active spontaneously
-	//		at a specified level with a specified probability
-	//      In the Sole & Miramontes paper, the level is given 
-	//		as 0.1; the probability is not given, but in the
-	//		Delgado and Sole paper cited above, they experiment
-	//		with values in the range of 0.00003 to 0.3, with
-	// 		0.1 appearing to be the "default"
-	private static double spontaneousActivationLevel = 0.1;
-	private static double spontaneousActivationProbability = 0.1;   
+	// create a FluidNN of a given size (dimensions), but with no neurons
+	public FluidNN (int numRows, int numCols, SimulationContext context) {
+		this(numRows, numCols, context, GridModel.DENSE);
+	}
 
 
-	// create a FluidNN of a given size (dimensions), but with no neurons
-	public FluidNN (int numRows, int numCols) {
+	// the same, with the lattice stored as given
+	public FluidNN (int numRows, int numCols, SimulationContext context, GridModel gridModel) {
 
+		this.context = context;
 		this.numRows = numRows;
 		this.numCols = numCols;
-		grid = new Neuron[numRows][numCols];
+		createGrid(gridModel, 0);
 		this.numNeurons = 0;
 
 	}
 
 	
-	// create a FluidNN of a given size with a given number of neurons (randomly placed)
-	public FluidNN (int numRows, int numCols, int numNeurons) {
+	// create a FluidNN of a given size with a given number of neurons (randomly placed);
+	// the parameters are the context's
+	public FluidNN (int numRows, int numCols, int numNeurons, SimulationContext context) {
+		this(numRows, numCols, numNeurons, context, GridModel.DENSE);
+	}
+
+
+	// the same, with the lattice stored as given
+	public FluidNN (int numRows, int numCols, int numNeurons, SimulationContext context, GridModel gridModel) {
 
+		this.context = context;
 		this.numRows = numRows;
 		this.numCols = numCols;
 		neuronList = new Neuron[numNeurons];
-		grid = new Neuron[numRows][numCols];
+		createGrid(gridModel, numNeurons);
 		this.numNeurons = numNeurons;
 		randomPopulate(numNeurons);
 
 	}
 
-	
-	// create a FluidNN of a given size with a given number of neurons (randomly placed)
-	// and with specified values for the parameters
-	public FluidNN (int numRows, int numCols, int numNeurons, double gain,
-			double sumNeighborActivationsThreshold, double activationThreshold, 
-			double spontaneousActivationLevel, double spontaneousActivationProbability) {
 
-		this.numRows = numRows;
-		this.numCols = numCols;
-		neuronList = new Neuron[numNeurons];
-		grid = new Neuron[numRows][numCols];
-		this.numNeurons = numNeurons;
-		randomPopulate(numNeurons);
-		this.gain = gain;
-		this.sumNeighborActivationsThreshold = sumNeighborActivationsThreshold;
-		this.activationThreshold = activationThreshold;
-		this.spontaneousActivationLevel = spontaneousActivationLevel;
-		this.spontaneousActivationProbability = spontaneousActivationProbability;
+	// create the (padded) grid, or the sparse grid, with the halo set up for a LATTICE
+	private void createGrid(GridModel gridModel, int expectedNumNeurons) {
+
+		wall = new Neuron(-1, -1, -1);
+		haloBoundaryModel = FNN.FNN_BoundaryModel.LATTICE;
+		if (gridModel == GridModel.SPARSE) {
+			sparseGrid = new SparseGrid(numRows, numCols, expectedNumNeurons, wall);
+			return;
+		}
+
+		stride = numCols + 2;
+		grid = new Neuron[(numRows + 2) * stride];
+
+		wrappedIndex = new int[grid.length];
+		int[] numGhosts = new int[grid.length];
+		for (int r = -1 ; r <= numRows ; ++r) {
+			for (int c = -1 ; c <= numCols ; ++c) {
+				int index = cellIndex(r, c);
+				wrappedIndex[index] = cellIndex(rowWrap(r), colWrap(c));
+				if (wrappedIndex[index] != index)
+					++numGhosts[wrappedIndex[index]];
+			}
+		}
+		ghostIndices = new int[grid.length][];
+		for (int index = 0 ; index < grid.length ; ++index) {
+			if (wrappedIndex[index] != index) {
+				int cell = wrappedIndex[index];
+				if (ghostIndices[cell] == null)
+					ghostIndices[cell] = new int[numGhosts[cell]];
+				ghostIndices[cell][--numGhosts[cell]] = index;
+			}
+		}
+
+		mooreOffsets = new int[8];
+		int i = 0;
+		for (int rDelta = -1 ; rDelta <= 1 ; ++rDelta) {
+			for (int cDelta = -1 ; cDelta <= 1 ; ++cDelta) {
+				if (rDelta != 0 || cDelta != 0)
+					mooreOffsets[i++] = rDelta * stride + cDelta;
+			}
+		}
+
+		for (int index = 0 ; index < grid.length ; ++index) {
+			if (wrappedIndex[index] != index)
+				grid[index] = wall;
+		}
+
+	}
+
+
+	// index in the (padded) grid of the cell at the given row and column; the halo is 
+	// row -1, row numRows, column -1, and column numCols (DENSE only)
+	public int cellIndex(int row, int col) {
+		return (row + 1) * stride + (col + 1);
+	}
+
+
+	// the neuron in the cell at the given row and column of the grid (null if empty)
+	public Neuron getNeuronAt(int row, int col) {
+		if (sparseGrid != null)
+			return sparseGrid.get(row, col);
+		return grid[cellIndex(row, col)];
+	}
+
+
+	// put a new neuron, neuron n of the neuron list, in its cell
+	private void placeNeuron(int n, Neuron neuron) {
+		if (sparseGrid != null)
+			sparseGrid.put(neuron.getRow(), neuron.getCol(), neuron);
+		else
+			setCell(cellIndex(neuron.getRow(), neuron.getCol()), neuron);
+		++numOccupied;
+		activeSet.set(n, neuron.active());
+	}
+
+
+	// put the neuron (or null) in the cell with the given index, keeping its ghosts up to date
+	private void setCell(int index, Neuron neuron) {
+		grid[index] = neuron;
+		if (haloBoundaryModel == FNN.FNN_BoundaryModel.TORUS && ghostIndices[index] != null) {
+			int[] ghosts = ghostIndices[index];
+			for (int i = 0 ; i < ghosts.length ; ++i) {
+				grid[ghosts[i]] = neuron;
+			}
+		}
+	}
+
+
+	// set up the halo for the given boundary model, if it isn't already
+	public void setHaloBoundaryModel(FNN.FNN_BoundaryModel boundaryModel) {
+
+		if (boundaryModel == haloBoundaryModel)
+			return;
+
+		haloBoundaryModel = boundaryModel;
+		if (sparseGrid != null) {
+			sparseGrid.setBoundaryModel(boundaryModel);
+			return;
+		}
+		for (int index = 0 ; index < grid.length ; ++index) {
+			if (wrappedIndex[index] != index) {
+				if (boundaryModel == FNN.FNN_BoundaryModel.TORUS)
+					grid[index] = grid[wrappedIndex[index]];
+				else
+					grid[index] = wall;
+			}
+		}
 
 	}
 
@@ -162,20 +304,21 @@ public class FluidNN {
 		}
 
 		// get random row and col
-		int r = FNN.rand.nextInt(numRows);
-		int c = FNN.rand.nextInt(numCols);
+		int r = context.getRand().nextInt(numRows);
+		int c = context.getRand().nextInt(numCols);
 
 		// kludgey way of finding an empty location
-		while (grid[r][c] != null) {
-			r = FNN.rand.nextInt(numRows);
-			c = FNN.rand.nextInt(numCols);
+		while (getNeuronAt(r, c) != null) {
+			r = context.getRand().nextInt(numRows);
+			c = context.getRand().nextInt(numCols);
 		}
 
 		// random initial activation level
-		double initialActivationLevel = INITIAL_ACTIVATION_LOW_LEVEL + (FNN.rand.nextDouble() * INITIAL_ACTIVATION_RANGE);
-		grid[r][c] = new Neuron(neuronID, r, c, initialActivationLevel, this);
+		double initialActivationLevel = INITIAL_ACTIVATION_LOW_LEVEL + (context.getRand().nextDouble() * INITIAL_ACTIVATION_RANGE);
+		Neuron neuron = new Neuron(neuronID, r, c, initialActivationLevel, this);
+		placeNeuron(neuronID, neuron);
 
-		return grid[r][c];
+		return neuron;
 
 	}
 
@@ -184,12 +327,23 @@ public class FluidNN {
 	public void moveAndUpdateNeurons(FNN.Topology currentTopology, FNN.SelfModel currentSelfModel, 
 			FNN.FNN_BoundaryModel currentFNNBoundaryModel, FNN.FNN_ActivityModel currentFNNActivityModel) {
 
+		SimulationMetrics metrics = context.getMetrics();
+		Object stepEvent = FNNEvents.beginStep(context.getIteration());
+		long movesBefore = metrics.getNumActualMoves();
+		long start = System.nanoTime();
+
 		// update activations
 		updateActivationLevels(currentTopology, currentSelfModel, currentFNNBoundaryModel, currentFNNActivityModel);
+		long updated = System.nanoTime();
+		metrics.addActivationPhase(updated - start);
+		metrics.recordNumActive(activeSet.size());
 		
 		// move them
 		moveAllMoore(currentFNNBoundaryModel);
+		metrics.addMovementPhase(System.nanoTime() - updated);
 
+		FNNEvents.endStep(stepEvent, context.getIteration(), numRows, numCols, neuronList.length, context.getGain(), 
+				activeSet.size(), metrics.getNumActualMoves() - movesBefore);
 
 	}
 
@@ -200,10 +354,29 @@ public class FluidNN {
 	public void updateActivationLevels(FNN.Topology currentTopology, FNN.SelfModel currentSelfModel, 
 			FNN.FNN_BoundaryModel currentFNNBoundaryModel, FNN.FNN_ActivityModel currentFNNActivityModel) {
 
-		double[] newActivationLevels = new double[neuronList.length];
+		setHaloBoundaryModel(currentFNNBoundaryModel);
+
+		if (newActivationLevels == null || newActivationLevels.length != neuronList.length) {
+			newActivationLevels = new double[neuronList.length];
+		}
+
+		NeighborhoodKernel kernel = getNeighborhoodKernel(currentTopology, currentSelfModel, currentFNNBoundaryModel, currentFNNActivityModel);
 
+		if (updatePool != null) {
+			// the first phase has to be finished everywhere before the second can start anywhere
+			updatePool.invoke(new UpdateBlock(kernel, currentFNNBoundaryModel, false, 0, neuronList.length));
+			updatePool.invoke(new UpdateBlock(kernel, currentFNNBoundaryModel, true, 0, neuronList.length));
+			// the blocks can't all change the active set at once, so bring it up to date here
+			for (int n = 0 ; n < neuronList.length ; ++n) {
+				activeSet.set(n, neuronList[n].active());
+			}
+			return;
+		}
+
+		double gain = context.getGain();
+		double sumNeighborActivationsThreshold = context.getSumNeighborActivationsThreshold();
 		for (int n = 0 ; n < neuronList.length ; ++n) {
-			double sumAct = getSumActivations(neuronList[n], currentTopology, currentSelfModel, currentFNNBoundaryModel, currentFNNActivityModel);  
+			double sumAct = kernel.sumActivations(neuronList[n]);  
 			newActivationLevels[n] = Math.tanh(gain * (sumAct - sumNeighborActivationsThreshold));
 		}
 
@@ -211,6 +384,8 @@ public class FluidNN {
 		// includes both its activation level and whether it is actually "active"
 		for (int n = 0 ; n < neuronList.length ; ++n) {
 			
+			boolean wasActive = neuronList[n].active();
+			
 			// *************************************************************************************************
 			// *************************************************************************************************
 			// here a neuron CAN spontaneously activate even if it has neighbors
@@ -221,8 +396,142 @@ public class FluidNN {
 			// *************************************************************************************************
 			// *************************************************************************************************
 			
+			if (neuronList[n].active() != wasActive)
+				activeSet.set(n, !wasActive);
+			
+		}
+
+
+	}
+
+
+	// update the neurons in a block of neuronList, splitting it up among the threads of
+	// the pool if it is big:  either compute their new activation levels (the neighbors'
+	// current activation levels aren't touched, so every neuron can be done independently), or,
+	// once all of those are computed, update their activity status (each neuron only changes
+	// itself, and draws from its own random number stream)
+	private class UpdateBlock extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private NeighborhoodKernel kernel;
+		private FNN.FNN_BoundaryModel currentFNNBoundaryModel;
+		private boolean updateStatus;
+		private int from;
+		private int to;
+
+		UpdateBlock(NeighborhoodKernel kernel, FNN.FNN_BoundaryModel currentFNNBoundaryModel, boolean updateStatus, int from, int to) {
+			this.kernel = kernel;
+			this.currentFNNBoundaryModel = currentFNNBoundaryModel;
+			this.updateStatus = updateStatus;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected void compute() {
+			if (to - from > UPDATE_BLOCK_SIZE) {
+				int mid = (from + to) >>> 1;
+				UpdateBlock left = new UpdateBlock(kernel, currentFNNBoundaryModel, updateStatus, from, mid);
+				UpdateBlock right = new UpdateBlock(kernel, currentFNNBoundaryModel, updateStatus, mid, to);
+				invokeAll(left, right);
+				return;
+			}
+
+			if (!updateStatus) {
+				double gain = context.getGain();
+				double sumNeighborActivationsThreshold = context.getSumNeighborActivationsThreshold();
+				for (int n = from ; n < to ; ++n) {
+					double sumAct = kernel.sumActivations(neuronList[n]);  
+					newActivationLevels[n] = Math.tanh(gain * (sumAct - sumNeighborActivationsThreshold));
+				}
+			}
+			else {
+				for (int n = from ; n < to ; ++n) {
+					neuronList[n].updateActivationStatusNew(newActivationLevels[n], currentFNNBoundaryModel, neuronRands[n]);
+				}
+			}
+		}
+
+	}
+
+
+	// update activation levels in parallel on the given pool (null to go back to the usual
+	// sequential update); neuron n gets its own random number stream, substream n of the
+	// simulation's, so a run gives the same results whatever the number of threads (though not
+	// the same results as the sequential update, which takes every random number from the
+	// simulation's stream); streams the neurons already have (e.g., restored from a
+	// checkpoint) are kept
+	public void setParallelUpdate(ForkJoinPool pool) {
+
+		updatePool = pool;
+		if (pool == null) {
+			neuronRands = null;
+			return;
+		}
+
+		if (neuronRands == null) {
+			neuronRands = new RandomStream[neuronList.length];
+			for (int n = 0 ; n < neuronList.length ; ++n) {
+				neuronRands[n] = context.getRand().substream(n);
+			}
 		}
 
+	}
+
+
+	// save the whole state of the network:  its context, the neurons (with their histories)
+	// and the random number streams of the parallel update, if it is on (see Checkpoint)
+	public void write(DataOutput out) throws IOException {
+
+		context.write(out);
+		out.writeInt(numRows);
+		out.writeInt(numCols);
+		out.writeInt(neuronList.length);
+		out.writeInt(haloBoundaryModel.ordinal());
+		out.writeInt(getGridModel().ordinal());
+		for (int n = 0 ; n < neuronList.length ; ++n) {
+			neuronList[n].write(out);
+		}
+
+		out.writeBoolean(neuronRands != null);
+		if (neuronRands != null) {
+			for (int n = 0 ; n < neuronRands.length ; ++n) {
+				neuronRands[n].write(out);
+			}
+		}
+
+	}
+
+
+	// a network saved with write, in exactly the state it was saved in (the parallel update
+	// is off until setParallelUpdate is called, which picks up the saved streams)
+	public static FluidNN read(DataInput in) throws IOException {
+
+		SimulationContext context = SimulationContext.read(in);
+		int numRows = in.readInt();
+		int numCols = in.readInt();
+		int numNeurons = in.readInt();
+		FNN.FNN_BoundaryModel boundaryModel = FNN.FNN_BoundaryModel.values()[in.readInt()];
+		GridModel gridModel = GridModel.values()[in.readInt()];
+
+		FluidNN fnn = new FluidNN(numRows, numCols, context, gridModel);
+		fnn.neuronList = new Neuron[numNeurons];
+		fnn.numNeurons = numNeurons;
+		for (int n = 0 ; n < numNeurons ; ++n) {
+			Neuron neuron = Neuron.read(in, fnn);
+			fnn.neuronList[n] = neuron;
+			fnn.placeNeuron(n, neuron);
+		}
+		fnn.setHaloBoundaryModel(boundaryModel);
+
+		if (in.readBoolean()) {
+			fnn.neuronRands = new RandomStream[numNeurons];
+			for (int n = 0 ; n < numNeurons ; ++n) {
+				fnn.neuronRands[n] = RandomStream.read(in);
+			}
+		}
+
+		return fnn;
 
 	}
 
@@ -237,16 +546,32 @@ public class FluidNN {
 		//       it will always be lambda_11 ("both" active) or lambda_22 
 		//       ("both" inactive)
 
-		// an array of the Neurons that are neighbors
-		Neuron[] neighbors = getNeighborhood(neuron, currentTopology, currentSelfModel, currentFNNBoundaryModel, currentFNNActivityModel);
+		// same sum as adding up getJValue(neuron, neighbor) * neighbor.getActivationLevel() over
+		// getNeighborhood(...), but without allocating the neighborhood
+		setHaloBoundaryModel(currentFNNBoundaryModel);
+		return getNeighborhoodKernel(currentTopology, currentSelfModel, currentFNNBoundaryModel, currentFNNActivityModel).sumActivations(neuron);
+
+	}
+
+
+	// the neighborhood kernel for the given models; only rebuilt if the models change
+	public NeighborhoodKernel getNeighborhoodKernel(FNN.Topology currentTopology, FNN.SelfModel currentSelfModel, 
+			FNN.FNN_BoundaryModel currentFNNBoundaryModel, FNN.FNN_ActivityModel currentFNNActivityModel) {
 
-		// sum the activations
-		double sumActivations = 0.0;
-		for (int n = 0 ; n < neighbors.length ; ++n) {
-			sumActivations += getJValue(neuron, neighbors[n]) * neighbors[n].getActivationLevel();
+		if (neighborhoodKernel == null || currentTopology != kernelTopology || currentSelfModel != kernelSelfModel
+				|| currentFNNBoundaryModel != kernelFNNBoundaryModel || currentFNNActivityModel != kernelFNNActivityModel) {
+			if (sparseGrid != null)
+				neighborhoodKernel = NeighborhoodKernel.create(sparseGrid, neuronList, activeSet, J, currentTopology, currentSelfModel, 
+						currentFNNBoundaryModel, currentFNNActivityModel);
+			else
+				neighborhoodKernel = NeighborhoodKernel.create(grid, stride, neuronList, activeSet, J, currentTopology, currentSelfModel, 
+						currentFNNBoundaryModel, currentFNNActivityModel);
+			kernelTopology = currentTopology;
+			kernelSelfModel = currentSelfModel;
+			kernelFNNBoundaryModel = currentFNNBoundaryModel;
+			kernelFNNActivityModel = currentFNNActivityModel;
 		}
-		
-		return sumActivations;
+		return neighborhoodKernel;
 
 	}
 
@@ -479,88 +804,29 @@ public class FluidNN {
 	//   on a lattice
 	//   including all neurons (including self)
 	//   
+	// thanks to the halo, the cell at any offset of -1, 0, or +1 is in the padded grid:  on a
+	// lattice, off-grid cells hold the wall (never a neighbor); on a torus, they are ghosts of
+	// the cells they wrap around to (a sparse grid gives the same; see SparseGrid)
 	public Neuron isNeighbor (Neuron neuron, int rDelta, int cDelta, FNN.SelfModel currentSelfModel, 
 			FNN.FNN_BoundaryModel currentFNNBoundaryModel, FNN.FNN_ActivityModel currentFNNActivityModel) {
 
-		int row = neuron.getRow();
-		int col = neuron.getCol();
-
-		Neuron neighbor = null;
-
-		if (currentSelfModel == FNN.SelfModel.INCLUDE_SELF) {
-
-			if (currentFNNBoundaryModel == FNN.FNN_BoundaryModel.TORUS) {
-
-				int neighRow = rowWrap(row + rDelta);
-				int neighCol = colWrap(col + cDelta);
-
-				if (currentFNNActivityModel == FNN.FNN_ActivityModel.ONLY_ACTIVE_NEURONS) {
-					if ((grid[neighRow][neighCol] != null) && grid[neighRow][neighCol].active())
-						neighbor = grid[neighRow][neighCol];
-				}
-
-				else if (currentFNNActivityModel == FNN.FNN_ActivityModel.ALL_NEURONS) {				
-					if ((grid[neighRow][neighCol] != null))
-						neighbor = grid[neighRow][neighCol];
-				}
-
-			}				
-
-			else if (currentFNNBoundaryModel == FNN.FNN_BoundaryModel.LATTICE) {
-
-				int neighRow = row + rDelta;
-				int neighCol = col + cDelta;
-
-				if (currentFNNActivityModel == FNN.FNN_ActivityModel.ONLY_ACTIVE_NEURONS) {
-					if (legalCell(neighRow, neighCol) && (grid[neighRow][neighCol] != null) && grid[neighRow][neighCol].active())
-						neighbor = grid[neighRow][neighCol];
-				}
-
-				else if (currentFNNActivityModel == FNN.FNN_ActivityModel.ALL_NEURONS) {				
-					if (legalCell(neighRow, neighCol) && (grid[neighRow][neighCol] != null))
-						neighbor = grid[neighRow][neighCol];
-				}
-
-			}
-
-		}
-
-		else if (currentSelfModel == FNN.SelfModel.NOT_INCLUDE_SELF) {
-
-			if (currentFNNBoundaryModel == FNN.FNN_BoundaryModel.TORUS) {
-
-				int neighRow = rowWrap(row + rDelta);
-				int neighCol = colWrap(col + cDelta);
-
-				if (currentFNNActivityModel == FNN.FNN_ActivityModel.ONLY_ACTIVE_NEURONS) {
-					if ((neighRow != row || neighCol != col) && (grid[neighRow][neighCol] != null) && grid[neighRow][neighCol].active())
-						neighbor = grid[neighRow][neighCol];
-				}
-
-				else if (currentFNNActivityModel == FNN.FNN_ActivityModel.ALL_NEURONS) {				
-					if ((neighRow != row || neighCol != col) && (grid[neighRow][neighCol] != null))
-						neighbor = grid[neighRow][neighCol];
-				}
-
-			}
-			else if (currentFNNBoundaryModel == FNN.FNN_BoundaryModel.LATTICE) {
-
-				int neighRow = row + rDelta;
-				int neighCol = col + cDelta;
+		setHaloBoundaryModel(currentFNNBoundaryModel);
 
-				if (currentFNNActivityModel == FNN.FNN_ActivityModel.ONLY_ACTIVE_NEURONS) {
-					if ((neighRow != row || neighCol != col) && legalCell(neighRow, neighCol) && (grid[neighRow][neighCol] != null) && grid[neighRow][neighCol].active())
-						neighbor = grid[neighRow][neighCol];
-				}
+		Neuron neighbor;
+		if (sparseGrid != null)
+			neighbor = sparseGrid.getNeighbor(neuron.getRow(), neuron.getCol(), rDelta, cDelta);
+		else
+			neighbor = grid[cellIndex(neuron.getRow(), neuron.getCol()) + rDelta * stride + cDelta];
 
-				else if (currentFNNActivityModel == FNN.FNN_ActivityModel.ALL_NEURONS) {				
-					if ((neighRow != row || neighCol != col) && legalCell(neighRow, neighCol) && (grid[neighRow][neighCol] != null))
-						neighbor = grid[neighRow][neighCol];
-				}
+		if (neighbor == wall)
+			return null;
 
-			}
+		// on a torus, the cell can be the neuron's own cell after wrapping around
+		if (currentSelfModel == FNN.SelfModel.NOT_INCLUDE_SELF && neighbor == neuron)
+			return null;
 
-		}
+		if (currentFNNActivityModel == FNN.FNN_ActivityModel.ONLY_ACTIVE_NEURONS && neighbor != null && !neighbor.active())
+			return null;
 
 		// could be null
 		return neighbor;
@@ -609,19 +875,18 @@ public class FluidNN {
 	// also collect some data about activity and movement
 	public void moveAllMoore(FNN.FNN_BoundaryModel currentFNNBoundaryModel) {
 
-		
-		
-		for (int i = 0 ; i < neuronList.length ; ++i) {
-			++FNN.numMoveOpportunities;
-			Neuron n = neuronList[i];
-			if (n.active()) {
-				++FNN.numTimesActive;
-				boolean moved = moveMoore(n, currentFNNBoundaryModel);
-				if (moved) {
-					++FNN.numActualMoves;
-				}
+		// only the active neurons move, so only they are looked at (in the order of the
+		// neuron list; moving doesn't change anyone's status); the counts are added to the 
+		// context's metrics once per sweep
+		int numTimesActive = activeSet.size();
+		int numActualMoves = 0;
+		for (int i = activeSet.next(0) ; i >= 0 ; i = activeSet.next(i + 1)) {
+			boolean moved = moveMoore(neuronList[i], currentFNNBoundaryModel);
+			if (moved) {
+				++numActualMoves;
 			}
 		}
+		context.getMetrics().addMoveCounts(neuronList.length, numTimesActive, numActualMoves);
 
 	}
 
@@ -633,58 +898,33 @@ public class FluidNN {
 	// returns true if move was made
 	public boolean moveMoore(Neuron neuron, FNN.FNN_BoundaryModel currentFNNBoundaryModel) {
 
-		int row = neuron.getRow();
-		int col = neuron.getCol();
+		if (sparseGrid != null)
+			return moveMooreSparse(neuron, currentFNNBoundaryModel);
+
+		int index = cellIndex(neuron.getRow(), neuron.getCol());
 
 		if (noMovePossible(neuron, currentFNNBoundaryModel)) {
 			return false;
 		}
 
-		// get random changes in row and column (-1, 0, or +1 in both cases)
-		int newRow = 0;
-		int newCol = 0;
-
-
-		// at this point, always using this
-		if (currentFNNBoundaryModel == FNN.FNN_BoundaryModel.LATTICE) {
-			int rowChange = FNN.rand.nextInt(3) - 1;
-			int colChange = FNN.rand.nextInt(3) - 1;
-			newRow = row + rowChange;
-			newCol = col + colChange;
-			// must:
-			//   1) not be the same location it is in already
-			//   2) not an illegal location (no wrap-around)
-			//   3) not already occupied
-			// we know a move is possible, since we checked that at the beginning
-			while ((rowChange == 0 && colChange == 0) || 
-					!legalCell(newRow, newCol) || 
-					(legalCell(newRow, newCol) && grid[newRow][newCol] != null)) {
-				rowChange = FNN.rand.nextInt(3) - 1;
-				colChange = FNN.rand.nextInt(3) - 1;
-				newRow = row + rowChange;
-				newCol = col + colChange;
-			}
-		}
-
-		// never used yet
-		else if (currentFNNBoundaryModel == FNN.FNN_BoundaryModel.TORUS) {
-			int rowChange = FNN.rand.nextInt(3) - 1;
-			int colChange = FNN.rand.nextInt(3) - 1;
-			newRow = rowWrap(row + rowChange);
-			newCol = colWrap(col + colChange);
-			// must:
-			//   1) not be the same location it is in already
-			//   2) not already occupied
-			// we know a move is possible, since we checked that at the beginning
-			while ((rowChange == 0 && colChange == 0) || grid[newRow][newCol] != null) {
-				rowChange = FNN.rand.nextInt(3) - 1;
-				colChange = FNN.rand.nextInt(3) - 1;
-				newRow = rowWrap(row + rowChange);
-				newCol = colWrap(col + colChange);
-
-			}
-
+		// get random changes in row and column (-1, 0, or +1 in both cases);
+		// the new location must:
+		//   1) not be the same location it is in already
+		//   2) not already be occupied
+		// on a lattice, the halo is occupied by the wall, which also rules out illegal 
+		// locations (no wrap-around); on a torus, the halo cells are ghosts, so they are 
+		// occupied exactly when the cells they wrap around to are
+		// we know a move is possible, since we checked that at the beginning
+		int rowChange = context.getRand().nextInt(3) - 1;
+		int colChange = context.getRand().nextInt(3) - 1;
+		int numAttempts = 1;
+		while ((rowChange == 0 && colChange == 0) || grid[index + rowChange * stride + colChange] != null) {
+			rowChange = context.getRand().nextInt(3) - 1;
+			colChange = context.getRand().nextInt(3) - 1;
+			++numAttempts;
 		}
+		context.getMetrics().recordMoveAttempts(numAttempts);
+		int newIndex = wrappedIndex[index + rowChange * stride + colChange];
 
 		// In an earlier paper (Miramontes, Sol, and Goodwin, "Collective behavior of random-activated mobile cellular automata," 1993)
 		//  a neuron is allowed 6 attempts to move, i.e. pick a neighboring space and move to it if unoccupied; the latter paper (1995) I am using
@@ -693,8 +933,8 @@ public class FluidNN {
 		//						int newRow = 0;
 		//						int newCol = 0;
 		//						for (int i = 1 ; i <= 6 && !foundSpace; ++i) {
-		//							int rowChange = FNN.rand.nextInt(3) - 1;
-		//							int colChange = FNN.rand.nextInt(3) - 1;
+		//							int rowChange = context.getRand().nextInt(3) - 1;
+		//							int colChange = context.getRand().nextInt(3) - 1;
 		//							newRow = row + rowChange;
 		//							newCol = col + colChange;
 		//							// must:
@@ -703,8 +943,8 @@ public class FluidNN {
 		//							//   3) not already occupied
 		//							while ((rowChange == 0 && colChange == 0) || 
 		//									!legalCell(newRow, newCol)) {
-		//								rowChange = FNN.rand.nextInt(3) - 1;
-		//								colChange = FNN.rand.nextInt(3) - 1;
+		//								rowChange = context.getRand().nextInt(3) - 1;
+		//								colChange = context.getRand().nextInt(3) - 1;
 		//								newRow = row + rowChange;
 		//								newCol = col + colChange;
 		//							}
@@ -719,13 +959,46 @@ public class FluidNN {
 
 		
 		// reset the neuron's row and column
-		neuron.setRow(newRow);
-		neuron.setCol(newCol);
+		neuron.setRow(newIndex / stride - 1);
+		neuron.setCol(newIndex % stride - 1);
 
 		// move the neuron to its new location
-		grid[newRow][newCol] = neuron;
+		setCell(newIndex, neuron);
 		// be sure to set the old location to null
-		grid[row][col] = null;
+		setCell(index, null);
+
+		return true;
+
+	}
+
+
+	// moveMoore on a sparse grid:  the same random numbers are drawn, and the neuron
+	// ends up in the same cell
+	private boolean moveMooreSparse(Neuron neuron, FNN.FNN_BoundaryModel currentFNNBoundaryModel) {
+
+		if (noMovePossible(neuron, currentFNNBoundaryModel)) {
+			return false;
+		}
+
+		// off a lattice, getNeighbor gives the wall, so those cells look occupied
+		int row = neuron.getRow();
+		int col = neuron.getCol();
+		int rowChange = context.getRand().nextInt(3) - 1;
+		int colChange = context.getRand().nextInt(3) - 1;
+		int numAttempts = 1;
+		while ((rowChange == 0 && colChange == 0) || sparseGrid.getNeighbor(row, col, rowChange, colChange) != null) {
+			rowChange = context.getRand().nextInt(3) - 1;
+			colChange = context.getRand().nextInt(3) - 1;
+			++numAttempts;
+		}
+		context.getMetrics().recordMoveAttempts(numAttempts);
+		int newRow = sparseGrid.wrapRow(row + rowChange);
+		int newCol = sparseGrid.wrapCol(col + colChange);
+
+		neuron.setRow(newRow);
+		neuron.setCol(newCol);
+		sparseGrid.put(newRow, newCol, neuron);
+		sparseGrid.put(row, col, null);
 
 		return true;
 
@@ -740,41 +1013,26 @@ public class FluidNN {
 	}
 
 
-	// if one of the 8 Moore neighbor cells is empty, return true; otherwise false.
-	// assume that automata cannot wrap around when moving
+	// if one of the 8 Moore neighbor cells is empty, return false; otherwise true.
+	// (the halo takes care of the boundary; see moveMoore)
 	public boolean noMovePossible(Neuron neuron, FNN.FNN_BoundaryModel boundaryCondition) {
 		
-		int row = neuron.getRow();
-		int col = neuron.getCol();
-		
-		int newRow;
-		int newCol;
+		setHaloBoundaryModel(boundaryCondition);
 
-		// at this point, always using this
-		if (boundaryCondition == FNN.FNN_BoundaryModel.LATTICE) {
+		if (sparseGrid != null) {
 			for (int rDelta = -1 ; rDelta <= 1 ; ++rDelta) {
 				for (int cDelta = -1 ; cDelta <= 1 ; ++cDelta) {
-					newRow = row + rDelta;
-					newCol = col + cDelta;
-					// ignore the neuron at [row][col], since that's the neuron trying to move
-					if ((newRow != row || newCol != col) && legalCell(newRow, newCol) && grid[newRow][newCol] == null)
+					if ((rDelta != 0 || cDelta != 0) && sparseGrid.getNeighbor(neuron.getRow(), neuron.getCol(), rDelta, cDelta) == null)
 						return false;
 				}
 			}
+			return true;
 		}
 
-		// never used yet
-		else if (boundaryCondition == FNN.FNN_BoundaryModel.TORUS) {
-			for (int rDelta = -1 ; rDelta <= 1 ; ++rDelta) {
-				for (int cDelta = -1 ; cDelta <= 1 ; ++cDelta) {
-					newRow = rowWrap(row + rDelta);
-					newCol = colWrap(col + cDelta);
-					// ignore the neuron at [row][col], since that's the neuron trying to move
-					// since we're using a torus, the new row and col will always be a legal cell
-					if ((newRow != row || newCol != col) && grid[newRow][newCol] == null)
-						return false;
-				}
-			}
+		int index = cellIndex(neuron.getRow(), neuron.getCol());
+		for (int i = 0 ; i < mooreOffsets.length ; ++i) {
+			if (grid[index + mooreOffsets[i]] == null)
+				return false;
 		}
 
 		return true;
@@ -785,37 +1043,28 @@ public class FluidNN {
 	// find out if the neuron has neighbors; used to determine whether a neuron can spontaneously activate
 	public boolean hasNeighbors(Neuron neuron, FNN.FNN_BoundaryModel boundaryCondition) {
 		
-		int row = neuron.getRow();
-		int col = neuron.getCol();
-		
-		int newRow;
-		int newCol;
+		setHaloBoundaryModel(boundaryCondition);
 
-		// at this point, always using this
-		if (boundaryCondition == FNN.FNN_BoundaryModel.LATTICE) {
+		if (sparseGrid != null) {
 			for (int rDelta = -1 ; rDelta <= 1 ; ++rDelta) {
 				for (int cDelta = -1 ; cDelta <= 1 ; ++cDelta) {
-					newRow = row + rDelta;
-					newCol = col + cDelta;
-					// ignore the neuron at [row][col]
-					if ((newRow != row || newCol != col) && legalCell(newRow, newCol) && grid[newRow][newCol] != null)
+					if (rDelta == 0 && cDelta == 0)
+						continue;
+					Neuron neighbor = sparseGrid.getNeighbor(neuron.getRow(), neuron.getCol(), rDelta, cDelta);
+					if (neighbor != null && neighbor != wall && neighbor != neuron)
 						return true;
 				}
 			}
+			return false;
 		}
 
-		// never used yet
-		else if (boundaryCondition == FNN.FNN_BoundaryModel.TORUS) {
-			for (int rDelta = -1 ; rDelta <= 1 ; ++rDelta) {
-				for (int cDelta = -1 ; cDelta <= 1 ; ++cDelta) {
-					newRow = rowWrap(row + rDelta);
-					newCol = colWrap(col + cDelta);
-					// ignore the neuron at [row][col], since that's the neuron trying to move
-					// since we're using a torus, the new row and col will always be a legal cell
-					if ((newRow != row || newCol != col) && grid[newRow][newCol] != null)
-						return true;
-				}
-			}
+		int index = cellIndex(neuron.getRow(), neuron.getCol());
+		for (int i = 0 ; i < mooreOffsets.length ; ++i) {
+			Neuron neighbor = grid[index + mooreOffsets[i]];
+			// ignore the wall, and the neuron itself (on a torus, a neighbor cell can wrap 
+			// around to its own cell)
+			if (neighbor != null && neighbor != wall && neighbor != neuron)
+				return true;
 		}
 
 		return false;
@@ -826,25 +1075,23 @@ public class FluidNN {
 	// grid full?
 	public boolean gridFull() {
 
-		boolean isFull = true;
-
-		for (int r = 0 ; r < grid.length ; ++r) {
-			for (int c = 0 ; c < grid[r].length ; ++c) {
-				if (grid[r][c] == null)
-					return false;
-			}
-		}
-
-		return true;
+		return numOccupied == (long) numRows * numCols;
 
 	}
 
 	
-	// get the number of active neurons; note that we are not checking whether
+	// get the number of active neurons; it is kept up to date as neurons are
+	// updated, so this doesn't look at them (see countActiveNeurons)
+	public int numActiveNeurons() {
+		return activeSet.size();
+	}
+
+
+	// count the active neurons, one by one; note that we are not checking whether
 	// the activation level is > 0.0, because a neuron could have a non-zero
 	// activation level, but still be inactive (I think -- this is a question
 	// I have for Sol)
-	public int numActiveNeurons() {
+	public int countActiveNeurons() {
 
 		int numActiveNeurons = 0;
 		for (int i = 0 ; i < neuronList.length ; ++i) {
@@ -859,7 +1106,7 @@ public class FluidNN {
 	
 	public Neuron getRandomNeuron () {
 
-		return neuronList[FNN.rand.nextInt(neuronList.length)];
+		return neuronList[context.getRand().nextInt(neuronList.length)];
 
 	}
 
@@ -893,10 +1140,11 @@ public class FluidNN {
 	// print activation levels
 	public void printActivationLevels() {
 
-		for (int r = 0 ; r < grid.length ; ++r) {
-			for (int c = 0 ; c < grid[r].length ; ++c) {
-				if (grid[r][c] != null) {
-					System.out.printf("%8.4f   ", grid[r][c].getActivationLevel());
+		for (int r = 0 ; r < numRows ; ++r) {
+			for (int c = 0 ; c < numCols ; ++c) {
+				Neuron n = getNeuronAt(r, c);
+				if (n != null) {
+					System.out.printf("%8.4f   ", n.getActivationLevel());
 				}
 				else {
 					System.out.printf(" _________ ");					
@@ -914,10 +1162,11 @@ public class FluidNN {
 	// print active status
 	public void printActiveStatus() {
 
-		for (int r = 0 ; r < grid.length ; ++r) {
-			for (int c = 0 ; c < grid[r].length ; ++c) {
-				if (grid[r][c] != null) {
-					if (grid[r][c].active()) {
+		for (int r = 0 ; r < numRows ; ++r) {
+			for (int c = 0 ; c < numCols ; ++c) {
+				Neuron n = getNeuronAt(r, c);
+				if (n != null) {
+					if (n.active()) {
 						System.out.printf("1  ");
 					}
 					else {
@@ -940,9 +1189,9 @@ public class FluidNN {
 	// print active status
 	public void printActiveStatusWithIDs() {
 
-		for (int r = 0 ; r < grid.length ; ++r) {
-			for (int c = 0 ; c < grid[r].length ; ++c) {
-				Neuron n = grid[r][c];
+		for (int r = 0 ; r < numRows ; ++r) {
+			for (int c = 0 ; c < numCols ; ++c) {
+				Neuron n = getNeuronAt(r, c);
 				if (n != null) {
 					if (n.active()) {
 						System.out.printf(" %2d ", n.getID());
@@ -969,45 +1218,30 @@ public class FluidNN {
 	public Neuron[] getNeuronList() {
 		return neuronList;
 	}
-	
-	public static double getGain() {
-		return gain;
-	}
-
-	public static void setGain(double gain) {
-		FluidNN.gain = gain;
-	}
-
-	public static double getSumNeighborActivationsThreshold() {
-		return sumNeighborActivationsThreshold;
-	}
-
-	public static void setSumNeighborActivationsThreshold(double sumNeighborActivationsThreshold) {
-		FluidNN.sumNeighborActivationsThreshold = sumNeighborActivationsThreshold;
-	}
-
-	public static double getActivationThreshold() {
-		return activationThreshold;
-	}
 
-	public static void setActivationThreshold(double activationThreshold) {
-		FluidNN.activationThreshold = activationThreshold;
+	// the activity histories of the neurons, in the order of the neuron list
+	public ActiveInactiveHistory[] getActiveInactiveHistories() {
+		ActiveInactiveHistory[] histories = new ActiveInactiveHistory[neuronList.length];
+		for (int n = 0 ; n < neuronList.length ; ++n) {
+			histories[n] = neuronList[n].getActiveInactiveHistory();
+		}
+		return histories;
 	}
-
-	public static double getSpontaneousActivationLevel() {
-		return spontaneousActivationLevel;
+	
+	public SimulationContext getContext() {
+		return context;
 	}
 
-	public static void setSpontaneousActivationLevel(double spontaneousActivationLevel) {
-		FluidNN.spontaneousActivationLevel = spontaneousActivationLevel;
+	public int getNumRows() {
+		return numRows;
 	}
 
-	public static double getSpontaneousActivationProbability() {
-		return spontaneousActivationProbability;
+	public int getNumCols() {
+		return numCols;
 	}
 
-	public static void setSpontaneousActivationProbability(double spontaneousActivationProbability) {
-		FluidNN.spontaneousActivationProbability = spontaneousActivationProbability;
+	public GridModel getGridModel() {
+		return sparseGrid != null ? GridModel.SPARSE : GridModel.DENSE;
 	}
 
 
@@ -1,4 +1,5 @@
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 
 
@@ -7,6 +8,12 @@ public class History {
 	private ArrayList<HistoryKey> keys;
 	
 	private int size;
+
+	// for exact matching (see setExactMatchRadius):  the number of keys equal to each
+	// distinct key, and the number of keys of each shape (HistoryKey.getSize())
+	private double exactMatchRadius;
+	private KeyCounts exactCounts;
+	private HashMap<Integer, Integer> shapeCounts;
 	
 	public History() {
 		keys = new ArrayList<HistoryKey>();
@@ -14,10 +21,15 @@ public class History {
 	}
 
 	public Integer get(HistoryKey key, double neighborhoodSize) {
+		if (exactQuery(neighborhoodSize)) {
+			// keys of another shape are -1 "apart", so they are always in the neighborhood
+			Integer sameShape = shapeCounts.get(key.getSize());
+			return countExact(key) + size - (sameShape == null ? 0 : sameShape);
+		}
 		int res = 0;
 		double tempDistance = 0;
 		for (HistoryKey k : keys) {
-			tempDistance = k.distanceFrom(key);
+			tempDistance = k.boundedDistanceFrom(key, neighborhoodSize);
 			if (tempDistance < neighborhoodSize)  {
 				res ++;
 			}
@@ -29,6 +41,50 @@ public class History {
 	public void put(HistoryKey key) {
 		keys.add(key);
 		size ++;
+		if (exactCounts != null) {
+			countKey(key);
+		}
+	}
+	
+	
+	// neighborhoods no bigger than radius (and bigger than 0) hold nothing but keys equal to
+	// the query (and keys of another shape), e.g., 1 if the values of the keys are whole 
+	// numbers; get() then counts those in O(1), from a hash table of the distinct keys, 
+	// instead of comparing the query with every key
+	public void setExactMatchRadius(double radius) {
+		exactMatchRadius = radius;
+		if (exactCounts == null) {
+			exactCounts = new KeyCounts();
+			shapeCounts = new HashMap<Integer, Integer>();
+			for (HistoryKey k : keys) {
+				countKey(k);
+			}
+		}
+	}
+	
+	private void countKey(HistoryKey key) {
+		exactCounts.increment(key);
+		Integer sameShape = shapeCounts.get(key.getSize());
+		shapeCounts.put(key.getSize(), sameShape == null ? 1 : sameShape + 1);
+	}
+	
+	// whether get() with this neighborhood size can count exact matches
+	protected boolean exactQuery(double neighborhoodSize) {
+		return exactCounts != null && neighborhoodSize > 0 && neighborhoodSize <= exactMatchRadius;
+	}
+	
+	// number of keys equal to the given key
+	public int countExact(HistoryKey key) {
+		if (exactCounts != null) {
+			return exactCounts.get(key);
+		}
+		int res = 0;
+		for (HistoryKey k : keys) {
+			if (k.is(key)) {
+				res ++;
+			}
+		}
+		return res;
 	}
 	
 	public int getSize() {
@@ -40,4 +96,61 @@ public class History {
 			System.out.println(" " + k.printKey());
 		}
 	}
+	
+	
+	// counts of distinct keys, by the keys' own 64-bit hashes, with open addressing and
+	// linear probing; keys are only compared in full when their hashes are the same
+	private static class KeyCounts {
+		
+		long[] hashes = new long[1024];
+		HistoryKey[] distinctKeys = new HistoryKey[1024];
+		int[] counts = new int[1024];
+		int numDistinct;
+		
+		private int slot(HistoryKey key) {
+			int mask = distinctKeys.length - 1;
+			int slot = (int) key.getHash() & mask;
+			while (distinctKeys[slot] != null && !(hashes[slot] == key.getHash() && distinctKeys[slot].equals(key))) {
+				slot = (slot + 1) & mask;
+			}
+			return slot;
+		}
+		
+		int get(HistoryKey key) {
+			int slot = slot(key);
+			return distinctKeys[slot] == null ? 0 : counts[slot];
+		}
+		
+		void increment(HistoryKey key) {
+			int slot = slot(key);
+			if (distinctKeys[slot] == null) {
+				// kept at most half full
+				if (2 * (numDistinct + 1) > distinctKeys.length) {
+					grow();
+					slot = slot(key);
+				}
+				hashes[slot] = key.getHash();
+				distinctKeys[slot] = key;
+				++numDistinct;
+			}
+			++counts[slot];
+		}
+		
+		private void grow() {
+			long[] oldHashes = hashes;
+			HistoryKey[] oldKeys = distinctKeys;
+			int[] oldCounts = counts;
+			hashes = new long[2 * oldKeys.length];
+			distinctKeys = new HistoryKey[2 * oldKeys.length];
+			counts = new int[2 * oldKeys.length];
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldKeys[i] != null) {
+					int slot = slot(oldKeys[i]);
+					hashes[slot] = oldHashes[i];
+					distinctKeys[slot] = oldKeys[i];
+					counts[slot] = oldCounts[i];
+				}
+			}
+		}
+	}
 }
@@ -1,23 +1,71 @@
 
 public class HistoryKey {
 
+	// how many elements boundedDistanceFrom adds up between checks against the bound
+	private static final int BOUND_CHECK_INTERVAL = 64;
+
 	private double[] listKey;
 	private double doubleKey;
 	
 	private int size;
+
+	// 64-bit hash of the contents, worked out once, since the key doesn't change (the list
+	// must not be changed after it is made a key); keys that are equal have the same hash
+	private long hash;
 	
 	public HistoryKey (double[] list) {
 		listKey = list;
 		size = list.length;
+		hash = size;
+		for (int i = 0; i < size; i++) {
+			hash = mix(hash + valueBits(list[i]));
+		}
 	}
 	
 	public HistoryKey (double k) {
 		doubleKey = k;
 		size = -1;
+		hash = mix(-1L + valueBits(k));
+	}
+
+	// bits of a value, with -0.0 the same as 0.0 (they are 0 apart)
+	private static long valueBits(double value) {
+		return Double.doubleToLongBits(value + 0.0);
+	}
+
+	// the SplitMix64 finalizer
+	private static long mix(long h) {
+		h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+		h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+		return h ^ (h >>> 31);
 	}
 	
 	public boolean is(HistoryKey k ) {
-		return distanceFrom(k) == 0;
+		// different hashes can't be 0 apart, so only a match has to be compared in full
+		return hash == k.hash && distanceFrom(k) == 0;
+	}
+
+	// same shape and same values
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (!(o instanceof HistoryKey)) return false;
+		HistoryKey k = (HistoryKey) o;
+		if (hash != k.hash || size != k.size) return false;
+		if (size == -1) return doubleKey == k.doubleKey;
+		for (int i = 0; i < size; i++) {
+			if (listKey[i] != k.listKey[i]) return false;
+		}
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		return (int) (hash ^ (hash >>> 32));
+	}
+
+	public long getHash() {
+		return hash;
 	}
 	
 	public int getSize() {
@@ -44,15 +92,35 @@ public class HistoryKey {
 		} 
 		return -1;
 	}
+
+	// same as distanceFrom if that is less than bound; if not, some value >= bound, since the 
+	// adding up stops once the sum gets to bound (most keys are far from any given one, so 
+	// that's usually a few hundred elements in).  The elements are added in the same order
+	// as in distanceFrom, so the sum is exactly the same up to where it stops, and 
+	// boundedDistanceFrom(k, r) < r exactly when distanceFrom(k) < r.
+	public double boundedDistanceFrom(HistoryKey k, double bound) {
+		if (size == -1 || size != k.getSize()) return distanceFrom(k);
+		double res = 0;
+		double[] targetList = k.getListContent();
+		for (int start = 0; start < size; start += BOUND_CHECK_INTERVAL) {
+			int end = Math.min(size, start + BOUND_CHECK_INTERVAL);
+			for (int i = start; i < end; i++) {
+				if (targetList[i] != listKey[i]) res += Math.abs(targetList[i] - listKey[i]);
+			}
+			// the terms are never negative, so the sum can only go up from here
+			if (res >= bound) return res;
+		}
+		return res;
+	}
 	
 	public String printKey() {
 		if (size == -1) return Double.valueOf(doubleKey).toString();
 		else {
-			String res = "";
+			StringBuilder res = new StringBuilder();
 			for (int i = 0; i < size; i++) {
-				res += Double.valueOf(listKey[i]).toString();
+				res.append(listKey[i]);
 			}
-			return res;
+			return res.toString();
 		}
 	}
 	
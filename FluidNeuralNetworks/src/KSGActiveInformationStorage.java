@@ -0,0 +1,182 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+
+/**
+ * Active information storage estimated with the Kraskov-Stogbauer-Grassberger (KSG)
+ * k-nearest-neighbor estimator (algorithm 1 in Kraskov et al., "Estimating mutual
+ * information", Phys. Rev. E 69 (2004) 066138).
+ *
+ * AIS is the mutual information between the past k activation levels of a neuron (its
+ * time-delay embedding) and its next activation level, so instead of treating a whole
+ * activation level history as one point, every time step of every series that is added
+ * contributes one (k + 1)-dimensional point.  Neighbor searches use max-norm k-d trees
+ * (plain binary search for the one-dimensional next value).
+ *
+ * Results are in bits, like everything else in FNN.
+ */
+public class KSGActiveInformationStorage {
+
+	// length k of the time-delay embedding
+	private int historyLength;
+	// number of nearest neighbors used by the estimator (4 is the usual choice)
+	private int numNeighbors;
+
+	// activation levels take a few exact values very often (e.g., the spontaneous
+	// activation level), and ties break the estimator, so a tiny amount of noise is
+	// added to every value
+	private double noiseLevel = 1e-8;
+	// deliberately NOT FNN.rand, so that estimating AIS does not change the simulation
+	private Random rand = new Random(0);
+
+	// point i is points[i * (historyLength + 1) ... (i + 1) * (historyLength + 1) - 1]:
+	// the k past values followed by the next value
+	private double[] points;
+	private int numPoints;
+
+
+	public KSGActiveInformationStorage(int historyLength, int numNeighbors) {
+		this.historyLength = historyLength;
+		this.numNeighbors = numNeighbors;
+		points = new double[1024 * (historyLength + 1)];
+		numPoints = 0;
+	}
+
+
+	// add all the embedding points of a series (e.g., a neuron's activation level history)
+	public void addSeries(double[] series) {
+		addSeries(series, series.length);
+	}
+
+
+	// same, for a neuron's activation level history in whatever encoding
+	public void addSeries(ActivationLevelHistory series) {
+		addSeries(series.toArray(), series.length());
+	}
+
+
+	// add the embedding points of the first length values of a series
+	public void addSeries(double[] series, int length) {
+		if (length <= historyLength) {
+			return;
+		}
+
+		double[] noisy = new double[length];
+		for (int t = 0; t < length; t++) {
+			noisy[t] = series[t] + noiseLevel * rand.nextGaussian();
+		}
+
+		int dim = historyLength + 1;
+		int newPoints = length - historyLength;
+		if ((numPoints + newPoints) * dim > points.length) {
+			points = Arrays.copyOf(points, Math.max(2 * points.length, (numPoints + newPoints) * dim));
+		}
+		for (int t = historyLength; t < length; t++) {
+			System.arraycopy(noisy, t - historyLength, points, numPoints * dim, dim);
+			++numPoints;
+		}
+	}
+
+
+	// local AIS of every point, in the order the points were added; the points are
+	// independent of one another once the trees are built, so they are split among
+	// as many threads as there are processors
+	public double[] localAIS() {
+		final int dim = historyLength + 1;
+		final double[] local = new double[numPoints];
+		if (numPoints <= numNeighbors) {
+			return local;
+		}
+
+		final MaxNormKDTree joint = new MaxNormKDTree(points, dim, 0, dim, numPoints);
+		final MaxNormKDTree past = new MaxNormKDTree(points, dim, 0, historyLength, numPoints);
+		final MaxNormKDTree next = new MaxNormKDTree(points, dim, historyLength, 1, numPoints);
+		final double constant = digamma(numNeighbors) + digamma(numPoints);
+
+		int numThreads = Runtime.getRuntime().availableProcessors();
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		int chunkSize = (numPoints + numThreads - 1) / numThreads;
+		for (int start = 0; start < numPoints; start += chunkSize) {
+			final int from = start;
+			final int to = Math.min(numPoints, start + chunkSize);
+			futures.add(executor.submit(new Runnable() {
+				public void run() {
+					for (int i = from; i < to; i++) {
+						int base = i * dim;
+						double eps = joint.kthNeighborDistance(points, base, numNeighbors, i);
+						// the point itself is always within eps of itself, so don't count it
+						int numPast = past.countWithin(points, base, eps) - 1;
+						int numNext = next.countWithin(points, base + historyLength, eps) - 1;
+						local[i] = (constant - digamma(numPast + 1) - digamma(numNext + 1)) / Math.log(2.0);
+					}
+				}
+			}));
+		}
+
+		try {
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+		catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+		finally {
+			executor.shutdown();
+		}
+		return local;
+	}
+
+
+	// average AIS over all the points
+	public double averageAIS() {
+		double[] local = localAIS();
+		if (local.length == 0) {
+			return 0;
+		}
+		double sum = 0;
+		for (int i = 0; i < local.length; i++) {
+			sum += local[i];
+		}
+		return sum / local.length;
+	}
+
+
+	public int getNumPoints() {
+		return numPoints;
+	}
+
+	public double getNoiseLevel() {
+		return noiseLevel;
+	}
+
+	public void setNoiseLevel(double noiseLevel) {
+		this.noiseLevel = noiseLevel;
+	}
+
+
+	// digamma function, for x > 0:  shift x up with psi(x) = psi(x + 1) - 1/x, then use
+	// the asymptotic expansion
+	public static double digamma(double x) {
+		double res = 0;
+		while (x < 6) {
+			res -= 1 / x;
+			x += 1;
+		}
+		double f = 1 / (x * x);
+		return res + Math.log(x) - 0.5 / x
+				- f * (1.0/12 - f * (1.0/120 - f * (1.0/252 - f * (1.0/240 - f * (1.0/132)))));
+	}
+
+}
@@ -0,0 +1,373 @@
+import java.util.Arrays;
+
+
+/**
+ * A k-d tree over points stored in a flat array, for the max-norm (Chebyshev distance)
+ * neighbor searches the KSG estimator needs:  the distance to a point's k-th nearest
+ * neighbor, and the number of points strictly within a given distance of a point.
+ */
+public class MaxNormKDTree {
+
+	// subtrees this small are just scanned
+	private static final int LEAF_SIZE = 8;
+
+	// point i is data[i * dim + offset], ..., data[i * dim + offset + numDims - 1], so a
+	// tree can be built over a subset of each point's coordinates
+	private double[] data;
+	private int dim;
+	private int offset;
+	private int numDims;
+	private int numPoints;
+
+	// point indices, reordered so that every subtree is a contiguous range
+	private int[] index;
+	// the coordinates of the points, in that same order, so that scanning a leaf
+	// walks through memory sequentially
+	private double[] coords;
+	// for a one-dimensional tree, the coordinates in sorted order, so that counting is
+	// just two binary searches
+	private double[] sorted;
+
+	// the nodes, in flat arrays:  node n covers index[nodeLo[n], nodeHi[n]), has children
+	// nodeLeft[n] and nodeRight[n] (-1 for a leaf), and the bounding box of its points is
+	// boxMin/boxMax[n * numDims ... (n + 1) * numDims - 1]; the root is node 0
+	private int numNodes;
+	private int[] nodeLo;
+	private int[] nodeHi;
+	private int[] nodeLeft;
+	private int[] nodeRight;
+	private double[] boxMin;
+	private double[] boxMax;
+
+
+	public MaxNormKDTree(double[] data, int dim, int offset, int numDims, int numPoints) {
+		this.data = data;
+		this.dim = dim;
+		this.offset = offset;
+		this.numDims = numDims;
+		this.numPoints = numPoints;
+
+		index = new int[numPoints];
+		for (int i = 0; i < numPoints; i++) {
+			index[i] = i;
+		}
+
+		int capacity = Math.max(1, 4 * numPoints / LEAF_SIZE);
+		nodeLo = new int[capacity];
+		nodeHi = new int[capacity];
+		nodeLeft = new int[capacity];
+		nodeRight = new int[capacity];
+		boxMin = new double[capacity * numDims];
+		boxMax = new double[capacity * numDims];
+		numNodes = 0;
+		build(0, numPoints);
+
+		coords = new double[numPoints * numDims];
+		for (int i = 0; i < numPoints; i++) {
+			System.arraycopy(data, index[i] * dim + offset, coords, i * numDims, numDims);
+		}
+		if (numDims == 1) {
+			sorted = coords.clone();
+			Arrays.sort(sorted);
+		}
+	}
+
+
+	// build the subtree over index[lo, hi) and return its node
+	private int build(int lo, int hi) {
+		int node = newNode();
+		nodeLo[node] = lo;
+		nodeHi[node] = hi;
+		nodeLeft[node] = -1;
+		nodeRight[node] = -1;
+
+		int box = node * numDims;
+		for (int d = 0; d < numDims; d++) {
+			boxMin[box + d] = Double.POSITIVE_INFINITY;
+			boxMax[box + d] = Double.NEGATIVE_INFINITY;
+		}
+		for (int i = lo; i < hi; i++) {
+			int base = index[i] * dim + offset;
+			for (int d = 0; d < numDims; d++) {
+				double v = data[base + d];
+				if (v < boxMin[box + d]) boxMin[box + d] = v;
+				if (v > boxMax[box + d]) boxMax[box + d] = v;
+			}
+		}
+
+		if (hi - lo <= LEAF_SIZE) {
+			return node;
+		}
+
+		// split on the widest dimension at the middle of the bounding box, rather than
+		// at the median:  activation levels pile up in tight clusters (e.g., around 0.0),
+		// and a midpoint split cuts a cluster off into its own subtree right away, so a
+		// search with a large radius can count it in one step instead of many
+		int splitDim = 0;
+		for (int d = 1; d < numDims; d++) {
+			if (boxMax[box + d] - boxMin[box + d] > boxMax[box + splitDim] - boxMin[box + splitDim]) {
+				splitDim = d;
+			}
+		}
+		double low = boxMin[box + splitDim];
+		double high = boxMax[box + splitDim];
+		if (high == low) {
+			// all the points are identical
+			return node;
+		}
+		int mid = partition(lo, hi, splitDim, low + (high - low) / 2);
+		if (mid == lo || mid == hi) {
+			// can't happen unless rounding puts the midpoint on the max; fall back to the median
+			mid = (lo + hi) >>> 1;
+			select(lo, hi - 1, mid, splitDim);
+		}
+
+		int left = build(lo, mid);
+		int right = build(mid, hi);
+		nodeLeft[node] = left;
+		nodeRight[node] = right;
+		return node;
+	}
+
+
+	private int newNode() {
+		if (numNodes == nodeLo.length) {
+			int capacity = 2 * numNodes;
+			nodeLo = Arrays.copyOf(nodeLo, capacity);
+			nodeHi = Arrays.copyOf(nodeHi, capacity);
+			nodeLeft = Arrays.copyOf(nodeLeft, capacity);
+			nodeRight = Arrays.copyOf(nodeRight, capacity);
+			boxMin = Arrays.copyOf(boxMin, capacity * numDims);
+			boxMax = Arrays.copyOf(boxMax, capacity * numDims);
+		}
+		return numNodes++;
+	}
+
+
+	// max-norm distance from the given point (not necessarily in the tree) to its k-th
+	// nearest point in the tree, not counting the point with index "exclude" (-1 for none)
+	public double kthNeighborDistance(double[] query, int queryOffset, int k, int exclude) {
+		// max-heap of the k smallest distances found so far
+		double[] heap = new double[k];
+		for (int i = 0; i < k; i++) {
+			heap[i] = Double.POSITIVE_INFINITY;
+		}
+		search(0, boxDistance(0, query, queryOffset), query, queryOffset, heap, exclude);
+		return heap[0];
+	}
+
+
+	private void search(int node, double nodeDistance, double[] query, int queryOffset, double[] heap, int exclude) {
+		if (nodeDistance >= heap[0]) {
+			return;
+		}
+
+		int left = nodeLeft[node];
+		if (left == -1) {
+			for (int i = nodeLo[node]; i < nodeHi[node]; i++) {
+				double dist = distance(i, query, queryOffset);
+				if (dist < heap[0] && index[i] != exclude) {
+					heap[0] = dist;
+					siftDown(heap);
+				}
+			}
+			return;
+		}
+
+		// closer child first, so the far one is more likely to be pruned
+		int right = nodeRight[node];
+		double leftDistance = boxDistance(left, query, queryOffset);
+		double rightDistance = boxDistance(right, query, queryOffset);
+		if (leftDistance <= rightDistance) {
+			search(left, leftDistance, query, queryOffset, heap, exclude);
+			search(right, rightDistance, query, queryOffset, heap, exclude);
+		}
+		else {
+			search(right, rightDistance, query, queryOffset, heap, exclude);
+			search(left, leftDistance, query, queryOffset, heap, exclude);
+		}
+	}
+
+
+	// number of points in the tree at max-norm distance strictly less than radius from the given point
+	public int countWithin(double[] query, int queryOffset, double radius) {
+		if (sorted != null) {
+			return countWithinSorted(query[queryOffset], radius);
+		}
+		return count(0, query, queryOffset, radius);
+	}
+
+
+	// same as count, for a one-dimensional tree; the comparisons are written exactly as in
+	// distance() so the two always agree, even when rounding is involved
+	private int countWithinSorted(double v, double radius) {
+		// first coordinate that is within the radius (everything before it is below v and too far)
+		int lo = 0;
+		int hi = sorted.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (sorted[mid] < v && Math.abs(sorted[mid] - v) >= radius) {
+				lo = mid + 1;
+			}
+			else {
+				hi = mid;
+			}
+		}
+		int first = lo;
+
+		// first coordinate past the ones within the radius
+		hi = sorted.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (sorted[mid] < v || Math.abs(sorted[mid] - v) < radius) {
+				lo = mid + 1;
+			}
+			else {
+				hi = mid;
+			}
+		}
+		return lo - first;
+	}
+
+
+	private int count(int node, double[] query, int queryOffset, double radius) {
+		// nearest and farthest distance from the point to the node's bounding box
+		int box = node * numDims;
+		double near = 0;
+		double far = 0;
+		for (int d = 0; d < numDims; d++) {
+			double v = query[queryOffset + d];
+			double toMin = Math.abs(v - boxMin[box + d]);
+			double toMax = Math.abs(v - boxMax[box + d]);
+			if (v < boxMin[box + d]) {
+				if (toMin > near) near = toMin;
+			}
+			else if (v > boxMax[box + d]) {
+				if (toMax > near) near = toMax;
+			}
+			if (toMin > far) far = toMin;
+			if (toMax > far) far = toMax;
+		}
+		if (near >= radius) {
+			return 0;
+		}
+		if (far < radius) {
+			return nodeHi[node] - nodeLo[node];
+		}
+
+		int left = nodeLeft[node];
+		if (left == -1) {
+			int res = 0;
+			for (int i = nodeLo[node]; i < nodeHi[node]; i++) {
+				if (distance(i, query, queryOffset) < radius) {
+					res ++;
+				}
+			}
+			return res;
+		}
+		return count(left, query, queryOffset, radius) + count(nodeRight[node], query, queryOffset, radius);
+	}
+
+
+	public int getNumPoints() {
+		return numPoints;
+	}
+
+
+	// distance from the point to the i-th point in tree order
+	private double distance(int i, double[] query, int queryOffset) {
+		int base = i * numDims;
+		double res = 0;
+		for (int d = 0; d < numDims; d++) {
+			double diff = Math.abs(coords[base + d] - query[queryOffset + d]);
+			if (diff > res) res = diff;
+		}
+		return res;
+	}
+
+
+	// distance from the point to the nearest point of the node's bounding box
+	private double boxDistance(int node, double[] query, int queryOffset) {
+		int box = node * numDims;
+		double res = 0;
+		for (int d = 0; d < numDims; d++) {
+			double v = query[queryOffset + d];
+			double diff = 0;
+			if (v < boxMin[box + d]) diff = boxMin[box + d] - v;
+			else if (v > boxMax[box + d]) diff = v - boxMax[box + d];
+			if (diff > res) res = diff;
+		}
+		return res;
+	}
+
+
+	private void siftDown(double[] heap) {
+		int i = 0;
+		while (true) {
+			int largest = i;
+			int left = 2 * i + 1;
+			int right = left + 1;
+			if (left < heap.length && heap[left] > heap[largest]) largest = left;
+			if (right < heap.length && heap[right] > heap[largest]) largest = right;
+			if (largest == i) return;
+			double temp = heap[i];
+			heap[i] = heap[largest];
+			heap[largest] = temp;
+			i = largest;
+		}
+	}
+
+
+	// rearrange index[lo, hi) so that the points with coordinate splitDim below the split
+	// value come first; returns where the others start
+	private int partition(int lo, int hi, int splitDim, double split) {
+		int coord = offset + splitDim;
+		int i = lo;
+		int j = hi - 1;
+		while (i <= j) {
+			if (data[index[i] * dim + coord] < split) {
+				i++;
+			}
+			else {
+				int temp = index[i];
+				index[i] = index[j];
+				index[j] = temp;
+				j--;
+			}
+		}
+		return i;
+	}
+
+
+	// quickselect on coordinate splitDim:  rearrange index[lo..hi] so that position k holds
+	// the point that would be there if they were sorted on that coordinate
+	private void select(int lo, int hi, int k, int splitDim) {
+		int coord = offset + splitDim;
+		while (lo < hi) {
+			double pivot = data[index[(lo + hi) >>> 1] * dim + coord];
+			int i = lo;
+			int j = hi;
+			while (i <= j) {
+				while (data[index[i] * dim + coord] < pivot) i++;
+				while (data[index[j] * dim + coord] > pivot) j--;
+				if (i <= j) {
+					int temp = index[i];
+					index[i] = index[j];
+					index[j] = temp;
+					i++;
+					j--;
+				}
+			}
+			if (k <= j) {
+				hi = j;
+			}
+			else if (k >= i) {
+				lo = i;
+			}
+			else {
+				return;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,166 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * The metrics of any number of simulations, by name (e.g., the configuration and run), which
+ * can be written to a file, either once or every so often while they run:  in a long sweep,
+ * the file always shows where things stand, and where the time has been going.
+ *
+ * The file is written in full each time, to a temporary file that is then renamed over it,
+ * so whatever reads it never sees half of one.  Simulations can be registered and
+ * unregistered from any thread.
+ */
+public class MetricsRegistry {
+
+	public static enum Format {
+		// one "name.metric value" per line
+		TEXT,
+		// one object, with a member per simulation
+		JSON
+	}
+
+	private ConcurrentHashMap<String, SimulationMetrics> metrics = new ConcurrentHashMap<String, SimulationMetrics>();
+
+	private ScheduledExecutorService exporter;
+	private File exportFile;
+	private Format exportFormat;
+
+
+	public void register(String name, SimulationMetrics simulationMetrics) {
+		metrics.put(name, simulationMetrics);
+	}
+
+	public void unregister(String name) {
+		metrics.remove(name);
+	}
+
+	public SimulationMetrics get(String name) {
+		return metrics.get(name);
+	}
+
+
+	// the metrics of every simulation, in order of name
+	public String format(Format format) {
+		Map<String, SimulationMetrics> sorted = new TreeMap<String, SimulationMetrics>(metrics);
+		StringBuilder out = new StringBuilder();
+		if (format == Format.TEXT) {
+			for (Map.Entry<String, SimulationMetrics> entry : sorted.entrySet()) {
+				out.append(entry.getValue().toText(entry.getKey()));
+			}
+		}
+		else {
+			out.append("{\n");
+			boolean first = true;
+			for (Map.Entry<String, SimulationMetrics> entry : sorted.entrySet()) {
+				out.append(first ? "" : ",\n").append("  \"").append(jsonEscape(entry.getKey())).append("\": ");
+				out.append(entry.getValue().toJson());
+				first = false;
+			}
+			out.append("\n}\n");
+		}
+		return out.toString();
+	}
+
+
+	private static String jsonEscape(String s) {
+		StringBuilder escaped = new StringBuilder();
+		for (int i = 0 ; i < s.length() ; ++i) {
+			char c = s.charAt(i);
+			if (c == '"' || c == '\\') {
+				escaped.append('\\').append(c);
+			}
+			else if (c < 0x20) {
+				escaped.append(String.format("\\u%04x", (int) c));
+			}
+			else {
+				escaped.append(c);
+			}
+		}
+		return escaped.toString();
+	}
+
+
+	// write the metrics of every simulation to the file, replacing what's there
+	public void writeTo(File file, Format format) throws IOException {
+
+		File temp = new File(file.getPath() + ".tmp");
+		Writer out = new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8);
+		try {
+			out.write(format(format));
+		}
+		finally {
+			out.close();
+		}
+		if (!temp.renameTo(file)) {
+			// (on some platforms a rename can't replace a file)
+			file.delete();
+			if (!temp.renameTo(file)) {
+				throw new IOException("could not replace " + file);
+			}
+		}
+
+	}
+
+
+	// write the file every period, on a thread of its own, until stopExport
+	public synchronized void startExport(File file, long period, TimeUnit unit, Format format) {
+
+		stopExport();
+		exportFile = file;
+		exportFormat = format;
+		exporter = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "metrics export");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		exporter.scheduleAtFixedRate(new Runnable() {
+			public void run() {
+				try {
+					writeTo(exportFile, exportFormat);
+				}
+				catch (IOException e) {
+					// the simulations matter more than the metrics, so just say so and carry on
+					System.err.println("metrics export failed:  " + e);
+				}
+			}
+		}, period, period, unit);
+
+	}
+
+
+	// stop writing the file periodically, and write it one last time
+	public synchronized void stopExport() {
+
+		if (exporter == null) {
+			return;
+		}
+		exporter.shutdown();
+		try {
+			exporter.awaitTermination(1, TimeUnit.MINUTES);
+			writeTo(exportFile, exportFormat);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		catch (IOException e) {
+			System.err.println("metrics export failed:  " + e);
+		}
+		exporter = null;
+
+	}
+
+}
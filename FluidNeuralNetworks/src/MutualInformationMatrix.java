@@ -0,0 +1,286 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+
+/**
+ * The mutual information (the "info transfer" of FNN.calculateInfoTransfer) between the
+ * activity histories of every pair of neurons of a network, rather than of one random pair,
+ * along with the mean over all pairs, a histogram of the values and the pairs with the most.
+ *
+ * All that's needed for a pair is the number of iterations both were active:  the other
+ * three joint counts follow from it and the number of iterations each one was active, so a
+ * pair costs one Long.bitCount of the AND of the packed histories per 64 iterations.  The
+ * histories are copied into one array, and the pairs are worked through in square blocks,
+ * so that the histories of both blocks stay in the cache; each block row is a task, and the
+ * tasks are split among as many threads as there are processors.
+ *
+ * Values are in bits.  The matrix is symmetric, so only the pairs i < j are stored (get(i, i)
+ * is the entropy of neuron i, its mutual information with itself).  They are stored in one
+ * array, so there can be at most MAX_NEURONS neurons (and the histories have to fit in one
+ * array too).
+ */
+public class MutualInformationMatrix {
+
+	// neurons per block
+	private static final int BLOCK_SIZE = 64;
+
+	// the most neurons whose pairs fit in an array:  65536 * 65535 / 2 < 2^31
+	public static final int MAX_NEURONS = 65536;
+
+	private int numNeurons;
+	// number of iterations in the histories
+	private int length;
+
+	// history of neuron n is words[n * numWords ... (n + 1) * numWords - 1]
+	private long[] words;
+	private int numWords;
+	// number of iterations each neuron was active
+	private int[] numActive;
+
+	// p lg p for p = count / length, for every count
+	private double[] plgp;
+
+	// mutual information of pair (i, j), i < j, at pairIndex(i, j)
+	private double[] mutualInformation;
+
+
+	// all the pairs of the given histories, which are all the same length
+	public MutualInformationMatrix(ActiveInactiveHistory[] histories) {
+
+		numNeurons = histories.length;
+		if (numNeurons > MAX_NEURONS) {
+			throw new IllegalArgumentException("too many neurons for a mutual information matrix:  " + numNeurons 
+					+ " (at most " + MAX_NEURONS + ")");
+		}
+		length = numNeurons == 0 ? 0 : histories[0].length();
+		numWords = (length + 63) >>> 6;
+		if ((long) numNeurons * numWords > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("histories too long for a mutual information matrix:  " + numNeurons 
+					+ " neurons x " + length + " iterations");
+		}
+
+		words = new long[numNeurons * numWords];
+		numActive = new int[numNeurons];
+		for (int n = 0 ; n < numNeurons ; ++n) {
+			System.arraycopy(histories[n].getWords(), 0, words, n * numWords, numWords);
+			numActive[n] = histories[n].count(1);
+		}
+
+		plgp = new double[length + 1];
+		for (int count = 1 ; count <= length ; ++count) {
+			double p = (double) count / length;
+			plgp[count] = p * FNN.lg(p);
+		}
+
+		mutualInformation = new double[(int) ((long) numNeurons * (numNeurons - 1) / 2)];
+		computeAllPairs();
+
+	}
+
+
+	// all the pairs of a network's neurons
+	public MutualInformationMatrix(FluidNN fnn) {
+		this(fnn.getActiveInactiveHistories());
+	}
+
+
+	private int pairIndex(int i, int j) {
+		return (int) ((long) i * numNeurons - (long) i * (i + 1) / 2 + (j - i - 1));
+	}
+
+
+	private void computeAllPairs() {
+
+		int numBlocks = (numNeurons + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		int numThreads = Runtime.getRuntime().availableProcessors();
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for (int block = 0 ; block < numBlocks ; ++block) {
+			final int iBlock = block;
+			futures.add(executor.submit(new Runnable() {
+				public void run() {
+					computeBlockRow(iBlock);
+				}
+			}));
+		}
+
+		try {
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+		catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+		finally {
+			executor.shutdown();
+		}
+
+	}
+
+
+	// the pairs (i, j), i < j, with i in block iBlock
+	private void computeBlockRow(int iBlock) {
+
+		int iStart = iBlock * BLOCK_SIZE;
+		int iEnd = Math.min(numNeurons, iStart + BLOCK_SIZE);
+		for (int jStart = iStart ; jStart < numNeurons ; jStart += BLOCK_SIZE) {
+			int jEnd = Math.min(numNeurons, jStart + BLOCK_SIZE);
+			for (int i = iStart ; i < iEnd ; ++i) {
+				int iWords = i * numWords;
+				for (int j = Math.max(i + 1, jStart) ; j < jEnd ; ++j) {
+					int jWords = j * numWords;
+					int numBothActive = 0;
+					for (int w = 0 ; w < numWords ; ++w) {
+						numBothActive += Long.bitCount(words[iWords + w] & words[jWords + w]);
+					}
+					mutualInformation[pairIndex(i, j)] = mutualInformation(numActive[i], numActive[j], numBothActive);
+				}
+			}
+		}
+
+	}
+
+
+	// H(i) + H(j) - H(i, j), from the number of iterations each one was active and the number
+	// both were
+	private double mutualInformation(int numActive1, int numActive2, int numBothActive) {
+		int num10 = numActive1 - numBothActive;
+		int num01 = numActive2 - numBothActive;
+		int num00 = length - numActive1 - numActive2 + numBothActive;
+		return plgp[num00] + plgp[num01] + plgp[num10] + plgp[numBothActive]
+				- plgp[numActive1] - plgp[length - numActive1] - plgp[numActive2] - plgp[length - numActive2];
+	}
+
+
+	// mutual information between neurons i and j
+	public double get(int i, int j) {
+		if (i == j) {
+			return -plgp[numActive[i]] - plgp[length - numActive[i]];
+		}
+		return i < j ? mutualInformation[pairIndex(i, j)] : mutualInformation[pairIndex(j, i)];
+	}
+
+
+	// mean over all pairs of different neurons
+	public double mean() {
+		double sum = 0.0;
+		for (int p = 0 ; p < mutualInformation.length ; ++p) {
+			sum += mutualInformation[p];
+		}
+		return mutualInformation.length == 0 ? 0.0 : sum / mutualInformation.length;
+	}
+
+
+	// number of pairs in each of numBins equal bins between 0 and max (a value of max or
+	// more is in the last bin)
+	public int[] histogram(int numBins, double max) {
+		int[] histogram = new int[numBins];
+		for (int p = 0 ; p < mutualInformation.length ; ++p) {
+			int bin = (int) (mutualInformation[p] / max * numBins);
+			histogram[Math.max(0, Math.min(numBins - 1, bin))]++;
+		}
+		return histogram;
+	}
+
+
+	// the k pairs with the most mutual information, most first:  pair m is neurons
+	// topPairs[m][0] and topPairs[m][1]
+	public int[][] topPairs(int k) {
+
+		k = Math.min(k, mutualInformation.length);
+		// a min-heap of the k largest so far, by index into mutualInformation
+		int[] heap = new int[k];
+		int heapSize = 0;
+		for (int p = 0 ; p < mutualInformation.length ; ++p) {
+			if (heapSize < k) {
+				heap[heapSize] = p;
+				siftUp(heap, heapSize++);
+			}
+			else if (k > 0 && mutualInformation[p] > mutualInformation[heap[0]]) {
+				heap[0] = p;
+				siftDown(heap, heapSize, 0);
+			}
+		}
+
+		// take the smallest off the heap until it is empty, filling in from the end
+		int[][] topPairs = new int[k][];
+		for (int m = k - 1 ; m >= 0 ; --m) {
+			topPairs[m] = pair(heap[0]);
+			heap[0] = heap[--heapSize];
+			siftDown(heap, heapSize, 0);
+		}
+		return topPairs;
+
+	}
+
+
+	// the neurons of the pair at the given index
+	private int[] pair(int pairIndex) {
+		int i = 0;
+		int rowLength = numNeurons - 1;
+		while (pairIndex >= rowLength) {
+			pairIndex -= rowLength;
+			++i;
+			--rowLength;
+		}
+		return new int[] { i, i + 1 + pairIndex };
+	}
+
+
+	private void siftUp(int[] heap, int child) {
+		while (child > 0) {
+			int parent = (child - 1) >>> 1;
+			if (mutualInformation[heap[parent]] <= mutualInformation[heap[child]]) {
+				return;
+			}
+			int temp = heap[parent];
+			heap[parent] = heap[child];
+			heap[child] = temp;
+			child = parent;
+		}
+	}
+
+	private void siftDown(int[] heap, int heapSize, int parent) {
+		while (true) {
+			int smallest = parent;
+			int left = 2 * parent + 1;
+			if (left < heapSize && mutualInformation[heap[left]] < mutualInformation[heap[smallest]]) {
+				smallest = left;
+			}
+			if (left + 1 < heapSize && mutualInformation[heap[left + 1]] < mutualInformation[heap[smallest]]) {
+				smallest = left + 1;
+			}
+			if (smallest == parent) {
+				return;
+			}
+			int temp = heap[parent];
+			heap[parent] = heap[smallest];
+			heap[smallest] = temp;
+			parent = smallest;
+		}
+	}
+
+
+	// getters
+	public int getNumNeurons() {
+		return numNeurons;
+	}
+
+	public int getNumPairs() {
+		return mutualInformation.length;
+	}
+
+	public int getLength() {
+		return length;
+	}
+
+}
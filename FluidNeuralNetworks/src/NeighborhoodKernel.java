@@ -0,0 +1,245 @@
+/**
+ * Sums J * activation level over the neighborhood of a neuron without building the
+ * neighborhood:  FluidNN.getNeighborhood allocates two arrays and goes through isNeighbor
+ * (which branches on every model) for every candidate cell of every neuron, every iteration.
+ *
+ * A kernel is specialized for one combination of models when it is created:  the topology
+ * and the self model become a table of offsets into FluidNN's padded grid (in the same
+ * order getNeighborhood visits the cells, so the sums come out identical), and the activity
+ * model picks the subclass.  The boundary model is taken care of by the grid's halo (see
+ * FluidNN), so there are no bounds checks or wrap-arounds in here at all.  FluidNN creates
+ * a kernel when the models change (i.e., once per run).
+ *
+ * A FluidNN with a sparse grid (see SparseGrid) has no padded grid; its kernels look the
+ * same cells up, in the same order, in the SparseGrid instead.
+ */
+public abstract class NeighborhoodKernel {
+
+	// the network's padded grid (the array itself never changes, only its contents),
+	// and the length of one of its rows
+	protected Neuron[] grid;
+	protected int stride;
+
+	// the coupling matrix:  J[0][*] if the neuron is active, J[1][*] if not;
+	// J[*][0] if the neighbor is active, J[*][1] if not
+	protected double[][] J;
+
+	// cells of the neighborhood, as offsets from the neuron's cell
+	protected int[] offsets;
+
+	// on a torus with fewer than 3 rows or columns, wrapping around can land on the neuron
+	// itself, so if it is not included, neighbors have to be checked against it
+	protected boolean includeSelf;
+
+
+	protected NeighborhoodKernel(Neuron[] grid, int stride, double[][] J, int[] offsets, boolean includeSelf) {
+		this.grid = grid;
+		this.stride = stride;
+		this.J = J;
+		this.offsets = offsets;
+		this.includeSelf = includeSelf;
+	}
+
+
+	// sum of J * activation level over the neighborhood of the neuron
+	public abstract double sumActivations(Neuron neuron);
+
+
+	// the kernel for the given combination of models; the halo of the grid must be set
+	// up for the boundary model whenever the kernel is used
+	public static NeighborhoodKernel create(Neuron[] grid, int stride, Neuron[] neuronList, ActiveSet activeSet, double[][] J, FNN.Topology currentTopology,
+			FNN.SelfModel currentSelfModel, FNN.FNN_BoundaryModel currentFNNBoundaryModel, FNN.FNN_ActivityModel currentFNNActivityModel) {
+
+		boolean includeSelf = currentSelfModel == FNN.SelfModel.INCLUDE_SELF;
+		boolean onlyActive = currentFNNActivityModel == FNN.FNN_ActivityModel.ONLY_ACTIVE_NEURONS;
+
+		if (currentTopology == FNN.Topology.FNN_GBEST) {
+			return new GbestKernel(grid, stride, neuronList, activeSet, J, includeSelf, onlyActive);
+		}
+
+		int[][] cells = neighborhoodCells(currentTopology);
+		int[] offsets = new int[includeSelf ? cells.length : cells.length - 1];
+		int k = 0;
+		for (int i = 0 ; i < cells.length ; ++i) {
+			if (!includeSelf && cells[i][0] == 0 && cells[i][1] == 0)
+				continue;
+			offsets[k++] = cells[i][0] * stride + cells[i][1];
+		}
+
+		if (onlyActive)
+			return new ActiveNeuronsKernel(grid, stride, J, offsets, includeSelf);
+		return new AllNeuronsKernel(grid, stride, J, offsets, includeSelf);
+
+	}
+
+
+	// the kernel for the given combination of models, on a sparse grid; the grid must be set
+	// up for the boundary model whenever the kernel is used
+	public static NeighborhoodKernel create(SparseGrid sparseGrid, Neuron[] neuronList, ActiveSet activeSet, double[][] J, FNN.Topology currentTopology,
+			FNN.SelfModel currentSelfModel, FNN.FNN_BoundaryModel currentFNNBoundaryModel, FNN.FNN_ActivityModel currentFNNActivityModel) {
+
+		boolean includeSelf = currentSelfModel == FNN.SelfModel.INCLUDE_SELF;
+		boolean onlyActive = currentFNNActivityModel == FNN.FNN_ActivityModel.ONLY_ACTIVE_NEURONS;
+
+		if (currentTopology == FNN.Topology.FNN_GBEST) {
+			return new GbestKernel(null, 0, neuronList, activeSet, J, includeSelf, onlyActive);
+		}
+
+		int[][] cells = neighborhoodCells(currentTopology);
+		int[][] deltas = new int[includeSelf ? cells.length : cells.length - 1][];
+		int k = 0;
+		for (int i = 0 ; i < cells.length ; ++i) {
+			if (!includeSelf && cells[i][0] == 0 && cells[i][1] == 0)
+				continue;
+			deltas[k++] = cells[i];
+		}
+
+		return new SparseKernel(sparseGrid, J, deltas, includeSelf, onlyActive);
+
+	}
+
+
+	// (row, column) offsets in the order FluidNN.getXXXNeighborhood considers the cells
+	private static int[][] neighborhoodCells(FNN.Topology currentTopology) {
+
+		int[][] cells = null;
+		if (currentTopology == FNN.Topology.FNN_MOORE) {
+			cells = new int[][] { { -1, -1 }, { -1, 0 }, { -1, 1 }, { 0, -1 }, { 0, 0 }, { 0, 1 }, { 1, -1 }, { 1, 0 }, { 1, 1 } };
+		}
+		else if (currentTopology == FNN.Topology.FNN_vonNEUMANN) {
+			// center, north, east, south, west
+			cells = new int[][] { { 0, 0 }, { -1, 0 }, { 0, 1 }, { 1, 0 }, { 0, -1 } };
+		}
+		else if (currentTopology == FNN.Topology.FNN_RING) {
+			// center, right, left
+			cells = new int[][] { { 0, 0 }, { 0, 1 }, { 0, -1 } };
+		}
+		else {
+			System.out.println("error:  unknown topology in NeighborhoodKernel.create");
+			System.exit(-1);
+		}
+		return cells;
+
+	}
+
+
+	// all neurons; the wall in the halo of a lattice has activation level 0.0, so it can be
+	// added in like any other neuron without changing the sum
+	private static class AllNeuronsKernel extends NeighborhoodKernel {
+
+		AllNeuronsKernel(Neuron[] grid, int stride, double[][] J, int[] offsets, boolean includeSelf) {
+			super(grid, stride, J, offsets, includeSelf);
+		}
+
+		public double sumActivations(Neuron neuron) {
+			double[] JRow = J[neuron.active() ? 0 : 1];
+			int index = (neuron.getRow() + 1) * stride + neuron.getCol() + 1;
+			double sumActivations = 0.0;
+			for (int i = 0 ; i < offsets.length ; ++i) {
+				Neuron neighbor = grid[index + offsets[i]];
+				if (neighbor != null && (includeSelf || neighbor != neuron))
+					sumActivations += JRow[neighbor.active() ? 0 : 1] * neighbor.getActivationLevel();
+			}
+			return sumActivations;
+		}
+
+	}
+
+
+	// only active neurons (the wall is never active)
+	private static class ActiveNeuronsKernel extends NeighborhoodKernel {
+
+		ActiveNeuronsKernel(Neuron[] grid, int stride, double[][] J, int[] offsets, boolean includeSelf) {
+			super(grid, stride, J, offsets, includeSelf);
+		}
+
+		public double sumActivations(Neuron neuron) {
+			double JValue = J[neuron.active() ? 0 : 1][0];
+			int index = (neuron.getRow() + 1) * stride + neuron.getCol() + 1;
+			double sumActivations = 0.0;
+			for (int i = 0 ; i < offsets.length ; ++i) {
+				Neuron neighbor = grid[index + offsets[i]];
+				if (neighbor != null && neighbor.active() && (includeSelf || neighbor != neuron))
+					sumActivations += JValue * neighbor.getActivationLevel();
+			}
+			return sumActivations;
+		}
+
+	}
+
+
+	// all neurons, or only active ones, on a sparse grid; as with the padded grid, the wall
+	// (off a lattice) has activation level 0.0 and is never active
+	private static class SparseKernel extends NeighborhoodKernel {
+
+		private SparseGrid sparseGrid;
+		// (row, column) offsets of the cells of the neighborhood
+		private int[][] deltas;
+		private boolean onlyActive;
+
+		SparseKernel(SparseGrid sparseGrid, double[][] J, int[][] deltas, boolean includeSelf, boolean onlyActive) {
+			super(null, 0, J, new int[0], includeSelf);
+			this.sparseGrid = sparseGrid;
+			this.deltas = deltas;
+			this.onlyActive = onlyActive;
+		}
+
+		public double sumActivations(Neuron neuron) {
+			double[] JRow = J[neuron.active() ? 0 : 1];
+			int row = neuron.getRow();
+			int col = neuron.getCol();
+			double sumActivations = 0.0;
+			for (int i = 0 ; i < deltas.length ; ++i) {
+				Neuron neighbor = sparseGrid.getNeighbor(row, col, deltas[i][0], deltas[i][1]);
+				if (neighbor == null || (!includeSelf && neighbor == neuron))
+					continue;
+				if (onlyActive && !neighbor.active())
+					continue;
+				sumActivations += JRow[neighbor.active() ? 0 : 1] * neighbor.getActivationLevel();
+			}
+			return sumActivations;
+		}
+
+	}
+
+
+	// every neuron is in every neuron's neighborhood (boundary model doesn't matter); with
+	// only active neurons, the network's active set says which they are
+	private static class GbestKernel extends NeighborhoodKernel {
+
+		private Neuron[] neuronList;
+		private ActiveSet activeSet;
+		private boolean onlyActive;
+
+		GbestKernel(Neuron[] grid, int stride, Neuron[] neuronList, ActiveSet activeSet, double[][] J, boolean includeSelf, boolean onlyActive) {
+			super(grid, stride, J, new int[0], includeSelf);
+			this.neuronList = neuronList;
+			this.activeSet = activeSet;
+			this.onlyActive = onlyActive;
+		}
+
+		public double sumActivations(Neuron neuron) {
+			double[] JRow = J[neuron.active() ? 0 : 1];
+			double sumActivations = 0.0;
+			if (onlyActive) {
+				// the same neurons, in the same order, without looking at the inactive ones
+				double JValue = JRow[0];
+				for (int n = activeSet.next(0) ; n >= 0 ; n = activeSet.next(n + 1)) {
+					Neuron neighbor = neuronList[n];
+					if (includeSelf || neighbor != neuron)
+						sumActivations += JValue * neighbor.getActivationLevel();
+				}
+				return sumActivations;
+			}
+			for (int n = 0 ; n < neuronList.length ; ++n) {
+				Neuron neighbor = neuronList[n];
+				if (!includeSelf && neighbor == neuron)
+					continue;
+				sumActivations += JRow[neighbor.active() ? 0 : 1] * neighbor.getActivationLevel();
+			}
+			return sumActivations;
+		}
+
+	}
+
+}
@@ -8,6 +8,10 @@
  *
  */
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 
 public class Neuron {
 
@@ -29,14 +33,18 @@ public class Neuron {
 
 
 	// keep track of history of actual activation *levels*
-	private double[] activationLevelHistory = new double[FNN.numIterationsDataCollection];
-	// keep track of history of activation *status* (active or not)
-	private int[] activeInactiveHistory = new int[FNN.numIterationsDataCollection];
+	// (one value per iteration of data collection; a neuron that isn't part of a
+	// network just keeps its initial state)
+	private ActivationLevelHistory activationLevelHistory;
+	// keep track of history of activation *status* (active or not), one bit per iteration
+	private ActiveInactiveHistory activeInactiveHistory;
 	private int iteration;
 
 	
 	// need this to be able to check if the neuron has neighbors
 	private FluidNN fnn;
+	// and this for the parameters, random numbers and current iteration of the simulation
+	private SimulationContext context;
 	
 	
 	// basic constructor
@@ -44,9 +52,11 @@ public class Neuron {
 
 		iteration = 0;
 
+		activationLevelHistory = ActivationLevelHistory.create(ActivationLevelHistory.Encoding.DOUBLE, 1);
+		activeInactiveHistory = new ActiveInactiveHistory(1);
+
 		activationLevel = 0.0;
-		activationLevelHistory[0] = 0.0;
-		activeInactiveHistory[0] = 0;
+		activationLevelHistory.set(0, 0.0);
 		active = false;
 
 		row = 0;
@@ -61,9 +71,11 @@ public class Neuron {
 		this.ID = ID;
 		iteration = 0;
 
+		activationLevelHistory = ActivationLevelHistory.create(ActivationLevelHistory.Encoding.DOUBLE, 1);
+		activeInactiveHistory = new ActiveInactiveHistory(1);
+
 		activationLevel = 0.0;
-				activationLevelHistory[0] = 0.0;
-				activeInactiveHistory[0] = 0;
+				activationLevelHistory.set(0, 0.0);
 		active = false;
 
 		this.row = row;
@@ -80,21 +92,23 @@ public class Neuron {
 		this.ID = ID;
 		iteration = 0;
 
+		this.fnn = fnn;
+		context = fnn.getContext();
+		activationLevelHistory = ActivationLevelHistory.create(context.getHistoryEncoding(), context.getNumIterationsDataCollection());
+		activeInactiveHistory = new ActiveInactiveHistory(context.getNumIterationsDataCollection());
+
 		this.activationLevel = activationLevel;
-				activationLevelHistory[0] = activationLevel;
-		if (activationLevel > FluidNN.getActivationThreshold()) {
+				activationLevelHistory.set(0, activationLevel);
+		if (activationLevel > context.getActivationThreshold()) {
 			active = true;
-						activeInactiveHistory[0] = 1;
 		}
 		else {
 			active = false;
-						activeInactiveHistory[0] = 0;			
 		}		
+		activeInactiveHistory.set(0, active);
 
 		this.row = row;
 		this.col = col;
-		
-		this.fnn = fnn;
 
 	}
 
@@ -104,7 +118,7 @@ public class Neuron {
 	// if it exceeds the activation level threshold, it becomes active
 	//    else, it can become active spontaneously 
 	//
-	// All of the default values that govern this are in FluidNN.java:
+	// All of the default values that govern this are in SimulationContext.java:
 	//   	private static double activationThreshold = 1e-16;
 	//      private static double spontaneousActivationLevel = 0.1;
 	//      private static double spontaneousActivationProbability = 0.1; 
@@ -116,26 +130,21 @@ public class Neuron {
 		active = false;
 		
 		// exceeds threshold
-		if (activationLevel > FluidNN.getActivationThreshold()) {
+		if (activationLevel > context.getActivationThreshold()) {
 			this.activationLevel = activationLevel;
 			active = true;
 		}
 		// else may become active spontaneously with a fixed activation level
-		else if (FNN.rand.nextDouble() < FluidNN.getSpontaneousActivationProbability()) {
-			this.activationLevel = FluidNN.getSpontaneousActivationLevel();
+		else if (context.getRand().nextDouble() < context.getSpontaneousActivationProbability()) {
+			this.activationLevel = context.getSpontaneousActivationLevel();
 			active = true;
 		}	
 
 		// history data
-		if (FNN.iteration >= FNN.firstIterationDataCollection) {
-			activationLevelHistory[iteration] = this.activationLevel;
-
-			if (active) {
-				activeInactiveHistory[iteration] = 1;
-			}
-			else {
-				activeInactiveHistory[iteration] = 0;			
-			}		
+		if (context.collectingData()) {
+			activationLevelHistory.set(iteration, this.activationLevel);
+
+			activeInactiveHistory.set(iteration, active);
 			
 			++iteration;
 		}
@@ -146,6 +155,14 @@ public class Neuron {
 
 	
 	public void updateActivationStatusNew (double activationLevel, FNN.FNN_BoundaryModel currentFNNBoundaryModel) {
+		updateActivationStatusNew(activationLevel, currentFNNBoundaryModel, context.getRand());
+	}
+
+
+	// same, but with the random numbers for spontaneous activation coming from the given 
+	// stream rather than the simulation's (when neurons are updated in parallel, each one 
+	// has its own)
+	public void updateActivationStatusNew (double activationLevel, FNN.FNN_BoundaryModel currentFNNBoundaryModel, RandomStream rand) {
 
 		// even if it doesn't become active, its level should be updated
 		this.activationLevel = activationLevel;
@@ -153,7 +170,7 @@ public class Neuron {
 		active = false;
 		
 		// does current activation level suffice to  activate it?
-		if (activationLevel > FluidNN.getActivationThreshold()) {
+		if (activationLevel > context.getActivationThreshold()) {
 			this.activationLevel = activationLevel;
 			active = true;
 		}
@@ -161,23 +178,18 @@ public class Neuron {
 		
 		// if current activation level not high enough to activate it and it's isolated, can spontaneously activate
 		else if (!fnn.hasNeighbors(this, currentFNNBoundaryModel)) {
-			if (FNN.rand.nextDouble() < FluidNN.getSpontaneousActivationProbability()) {
-				this.activationLevel = FluidNN.getSpontaneousActivationLevel();
+			if (rand.nextDouble() < context.getSpontaneousActivationProbability()) {
+				this.activationLevel = context.getSpontaneousActivationLevel();
 				active = true;
 			}	
 		}
 
 		
 		// history data
-		if (FNN.iteration >= FNN.firstIterationDataCollection) {
-			activationLevelHistory[iteration] = this.activationLevel;
-
-			if (active) {
-				activeInactiveHistory[iteration] = 1;
-			}
-			else {
-				activeInactiveHistory[iteration] = 0;			
-			}		
+		if (context.collectingData()) {
+			activationLevelHistory.set(iteration, this.activationLevel);
+
+			activeInactiveHistory.set(iteration, active);
 			
 			++iteration;
 		}
@@ -190,14 +202,16 @@ public class Neuron {
 	// can't remember why I made this static....  doesn't seem necessary
 	public static double probabilityState(Neuron n, int state) {
 
-		int[] activeInactiveHistory = n.getActiveInactiveHistory();
+		return probabilityState(n.getActiveInactiveHistory(), state);
 
-		double numItersInState = 0.0;
-		for (int i = 0 ; i < activeInactiveHistory.length ; ++i) {
-			if (activeInactiveHistory[i] == state)
-				++numItersInState;
-		}
-		return numItersInState / activeInactiveHistory.length;
+	}
+
+
+	// same, given the activity history
+	public static double probabilityState(ActiveInactiveHistory activeInactiveHistory, int state) {
+
+		double numItersInState = activeInactiveHistory.count(state);
+		return numItersInState / activeInactiveHistory.length();
 
 
 	}
@@ -208,15 +222,54 @@ public class Neuron {
 	// can't remember why I made this static....  doesn't seem necessary
 	public static double probabilityStatesJoint(Neuron n1, int state1, Neuron n2, int state2) {
 
-		int[] activeInactiveHistory1 = n1.getActiveInactiveHistory();
-		int[] activeInactiveHistory2 = n2.getActiveInactiveHistory();
+		return probabilityStatesJoint(n1.getActiveInactiveHistory(), state1, n2.getActiveInactiveHistory(), state2);
 
-		double numItersInJointStates = 0.0;
-		for (int i = 0 ; i < activeInactiveHistory1.length ; ++i) {
-			if (activeInactiveHistory1[i] == state1 && activeInactiveHistory2[i] == state2)
-				++numItersInJointStates;
-		}
-		return numItersInJointStates / activeInactiveHistory1.length;		
+	}
+
+
+	// same, given the activity histories
+	public static double probabilityStatesJoint(ActiveInactiveHistory activeInactiveHistory1, int state1, ActiveInactiveHistory activeInactiveHistory2, int state2) {
+
+		double numItersInJointStates = ActiveInactiveHistory.countJoint(activeInactiveHistory1, state1, activeInactiveHistory2, state2);
+		return numItersInJointStates / activeInactiveHistory1.length();		
+
+	}
+
+
+	// save the state of the neuron, with the part of its histories recorded so far (see 
+	// Checkpoint)
+	public void write(DataOutput out) throws IOException {
+
+		out.writeInt(ID);
+		out.writeInt(row);
+		out.writeInt(col);
+		out.writeDouble(activationLevel);
+		out.writeBoolean(active);
+		out.writeInt(iteration);
+
+		// the next entry too, which has the initial state if nothing has been recorded yet
+		int count = Math.min(iteration + 1, activeInactiveHistory.length());
+		activationLevelHistory.write(out, count);
+		activeInactiveHistory.write(out, count);
+
+	}
+
+
+	// a neuron saved with write, belonging to the given network
+	public static Neuron read(DataInput in, FluidNN fnn) throws IOException {
+
+		Neuron neuron = new Neuron();
+		neuron.ID = in.readInt();
+		neuron.row = in.readInt();
+		neuron.col = in.readInt();
+		neuron.activationLevel = in.readDouble();
+		neuron.active = in.readBoolean();
+		neuron.iteration = in.readInt();
+		neuron.activationLevelHistory = ActivationLevelHistory.read(in);
+		neuron.activeInactiveHistory = ActiveInactiveHistory.read(in);
+		neuron.fnn = fnn;
+		neuron.context = fnn.getContext();
+		return neuron;
 
 	}
 
@@ -262,12 +315,12 @@ public class Neuron {
 		this.active = active;
 	}
 
-	public int[] getActiveInactiveHistory() {
+	public ActiveInactiveHistory getActiveInactiveHistory() {
 		return activeInactiveHistory;
 //		return null;
 	}
 	
-	public double[] getActivationLevelHistory() {
+	public ActivationLevelHistory getActivationLevelHistory() {
 		return activationLevelHistory;
 	}
 
@@ -0,0 +1,161 @@
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+
+/**
+ * Runs FNN.runExperiment for every combination of lattice size, density, gain, spontaneous
+ * activation level and spontaneous activation probability.  Every configuration is an
+ * independent job (all of its runs, one row of output), and the jobs are handed to a
+ * work-stealing pool, most expensive first, so that the big lattices don't end up running
+ * alone at the end.  Rows are printed as soon as they are done, so they come out in no
+ * particular order, but each one starts with its configuration.
+ *
+ * Configuration i (in the order of the nested loops:  lattice size outermost, spontaneous
+ * activation probability innermost) is seeded with seed + i * numRuns, so the results do
+ * not depend on the number of threads or the order the jobs finish in.
+ */
+public class ParameterSweep {
+
+	private int[] latticeSizes;
+	private double[] densities;
+	private double[] gains;
+	private double[] spontActLevels;
+	private double[] spontActProbs;
+
+	// how many runs to average over
+	private int numRuns;
+
+	private double activationThreshold;
+	private double sumNeighborActivationsThreshold;
+
+	private long seed;
+
+
+	public ParameterSweep(int[] latticeSizes, double[] densities, double[] gains, double[] spontActLevels,
+			double[] spontActProbs, int numRuns, double activationThreshold, double sumNeighborActivationsThreshold,
+			long seed) {
+
+		this.latticeSizes = latticeSizes;
+		this.densities = densities;
+		this.gains = gains;
+		this.spontActLevels = spontActLevels;
+		this.spontActProbs = spontActProbs;
+		this.numRuns = numRuns;
+		this.activationThreshold = activationThreshold;
+		this.sumNeighborActivationsThreshold = sumNeighborActivationsThreshold;
+		this.seed = seed;
+
+	}
+
+
+	// one configuration
+	private class Job implements Runnable {
+
+		private int latticeSize;
+		private double density;
+		private int numNeurons;
+		private double gain;
+		private double spontActLevel;
+		private double spontActProb;
+		private long jobSeed;
+		private PrintStream out;
+
+		Job(int latticeSize, double density, double gain, double spontActLevel, double spontActProb, long jobSeed,
+				PrintStream out) {
+			this.latticeSize = latticeSize;
+			this.density = density;
+			this.numNeurons = (int) ((latticeSize * latticeSize) * density);
+			this.gain = gain;
+			this.spontActLevel = spontActLevel;
+			this.spontActProb = spontActProb;
+			this.jobSeed = jobSeed;
+			this.out = out;
+		}
+
+		// every iteration updates and moves every neuron, and all configurations are run for
+		// the same number of iterations
+		long cost() {
+			return numNeurons;
+		}
+
+		public void run() {
+			String row = FNN.runExperiment(numRuns, latticeSize, density, numNeurons, gain, spontActLevel,
+					spontActProb, activationThreshold, sumNeighborActivationsThreshold, jobSeed);
+			// one row at a time
+			synchronized (out) {
+				out.println(row);
+			}
+		}
+
+	}
+
+
+	// all the configurations, in the order of the nested loops
+	private List<Job> createJobs(PrintStream out) {
+
+		List<Job> jobs = new ArrayList<Job>();
+		long jobSeed = seed;
+
+		for (int latticeSizeIndex = 0 ; latticeSizeIndex < latticeSizes.length ; ++latticeSizeIndex ) {
+			for (int densityIndex = 0 ; densityIndex < densities.length ; ++densityIndex) {
+				for (int gainIndex = 0 ; gainIndex < gains.length ; ++gainIndex ) {
+					for (int spontActLevelIndex = 0 ; spontActLevelIndex < spontActLevels.length ; ++spontActLevelIndex ) {
+						for (int spontActProbIndex = 0 ; spontActProbIndex < spontActProbs.length ; ++spontActProbIndex ) {
+							jobs.add(new Job(latticeSizes[latticeSizeIndex], densities[densityIndex], gains[gainIndex],
+									spontActLevels[spontActLevelIndex], spontActProbs[spontActProbIndex], jobSeed, out));
+							jobSeed += numRuns;
+						}
+					}
+				}
+			}
+		}
+
+		return jobs;
+
+	}
+
+
+	// run every configuration on a pool of the given number of threads, printing each row to
+	// out as it is finished; returns when they are all done
+	public void run(int numThreads, PrintStream out) {
+
+		List<Job> jobs = createJobs(out);
+
+		// most expensive first (the sort is stable, so ties stay in loop order); tasks submitted
+		// from outside the pool are taken in the order they were submitted
+		Collections.sort(jobs, new Comparator<Job>() {
+			public int compare(Job job1, Job job2) {
+				return Long.compare(job2.cost(), job1.cost());
+			}
+		});
+
+		ForkJoinPool pool = new ForkJoinPool(numThreads);
+		List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+		try {
+			for (Job job : jobs) {
+				tasks.add(pool.submit(job));
+			}
+			for (ForkJoinTask<?> task : tasks) {
+				task.get();
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+		catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+		finally {
+			pool.shutdown();
+		}
+
+	}
+
+}
@@ -0,0 +1,370 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+
+/**
+ * A stream of random numbers for one simulation (see SimulationContext), with a choice of
+ * generator behind it:
+ *
+ *   JAVA_RANDOM        the same numbers as java.util.Random, which FNN has always used (so
+ *                      with the same seed, the same trajectories as before)
+ *   SPLITTABLE_RANDOM  the same numbers as java.util.SplittableRandom:  faster, and no
+ *                      atomic update of the state on every call
+ *   PHILOX             Philox4x32-10 (Salmon et al., "Parallel random numbers:  as easy as
+ *                      1, 2, 3", SC 2011), a counter-based generator:  the i-th block of
+ *                      numbers of a stream is a function of the seed, the stream and i
+ *
+ * A stream knows the seed it was created with, so any run can be reproduced from the seed
+ * recorded for it.  substream(id) gives an independent stream that depends only on the seed
+ * and id (not on how many numbers have been drawn), e.g., one per neuron, so that work can
+ * be split among threads without changing the results.
+ *
+ * The first two are implemented here rather than wrapping the java.util classes (whose
+ * state can't be read), so that the state of any stream can be saved with write and picked
+ * up again with read (see Checkpoint).
+ */
+public abstract class RandomStream {
+
+	public static enum Generator {
+		JAVA_RANDOM, SPLITTABLE_RANDOM, PHILOX
+	}
+
+	// the seed the stream was created with, and which substream of it this is (0 for the stream itself)
+	protected long seed;
+	protected long streamID;
+
+
+	protected RandomStream(long seed, long streamID) {
+		this.seed = seed;
+		this.streamID = streamID;
+	}
+
+
+	// a stream from the given generator
+	public static RandomStream create(Generator generator, long seed) {
+
+		if (generator == Generator.JAVA_RANDOM) {
+			return new JavaRandomStream(seed, 0, seed);
+		}
+		else if (generator == Generator.SPLITTABLE_RANDOM) {
+			return new SplittableRandomStream(seed, 0, seed);
+		}
+		else if (generator == Generator.PHILOX) {
+			return new PhiloxStream(seed, 0);
+		}
+
+		System.out.println("error:  unknown generator in RandomStream.create");
+		System.exit(-1);
+		return null;
+
+	}
+
+
+	// a uniformly distributed int in [0, bound)
+	public abstract int nextInt(int bound);
+
+	// a uniformly distributed double in [0.0, 1.0)
+	public abstract double nextDouble();
+
+	// an independent stream, determined by this stream's seed and the given id (>= 0)
+	public abstract RandomStream substream(long id);
+
+	public abstract Generator getGenerator();
+
+	// the state of the generator (everything but the seed and stream ID)
+	protected abstract void writeState(DataOutput out) throws IOException;
+
+	protected abstract void readState(DataInput in) throws IOException;
+
+
+	// save the stream, as it is now
+	public void write(DataOutput out) throws IOException {
+		out.writeInt(getGenerator().ordinal());
+		out.writeLong(seed);
+		out.writeLong(streamID);
+		writeState(out);
+	}
+
+
+	// a stream saved with write, which carries on where the saved one was
+	public static RandomStream read(DataInput in) throws IOException {
+
+		Generator generator = Generator.values()[in.readInt()];
+		long seed = in.readLong();
+		long streamID = in.readLong();
+
+		RandomStream stream;
+		if (generator == Generator.JAVA_RANDOM) {
+			stream = new JavaRandomStream(seed, streamID, 0);
+		}
+		else if (generator == Generator.SPLITTABLE_RANDOM) {
+			stream = new SplittableRandomStream(seed, streamID, 0);
+		}
+		else {
+			stream = new PhiloxStream(seed, streamID);
+		}
+		stream.readState(in);
+		return stream;
+
+	}
+
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public long getStreamID() {
+		return streamID;
+	}
+
+
+	// scramble a seed (the SplitMix64 finalizer):  generators seeded with consecutive
+	// numbers start out with correlated values
+	public static long mix(long seed) {
+		long z = seed * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+
+	// seed of substream id of the stream with the given seed
+	private static long substreamSeed(long seed, long id) {
+		return mix(seed + mix(id + 1));
+	}
+
+
+	// the 48-bit linear congruential generator of java.util.Random (as specified in its
+	// documentation)
+	private static class JavaRandomStream extends RandomStream {
+
+		private static final long MULTIPLIER = 0x5DEECE66DL;
+		private static final long ADDEND = 0xBL;
+		private static final long MASK = (1L << 48) - 1;
+
+		private long state;
+
+		JavaRandomStream(long seed, long streamID, long initialSeed) {
+			super(seed, streamID);
+			state = (initialSeed ^ MULTIPLIER) & MASK;
+		}
+
+		private int next(int bits) {
+			state = (state * MULTIPLIER + ADDEND) & MASK;
+			return (int) (state >>> (48 - bits));
+		}
+
+		public int nextInt(int bound) {
+			if (bound <= 0) {
+				throw new IllegalArgumentException("bound must be positive");
+			}
+			int r = next(31);
+			int m = bound - 1;
+			if ((bound & m) == 0) {
+				return (int) ((bound * (long) r) >> 31);
+			}
+			int u = r;
+			while (u - (r = u % bound) + m < 0) {
+				u = next(31);
+			}
+			return r;
+		}
+
+		public double nextDouble() {
+			return (((long) next(26) << 27) + next(27)) * 0x1.0p-53;
+		}
+
+		public RandomStream substream(long id) {
+			return new JavaRandomStream(seed, id + 1, substreamSeed(seed, id));
+		}
+
+		public Generator getGenerator() {
+			return Generator.JAVA_RANDOM;
+		}
+
+		protected void writeState(DataOutput out) throws IOException {
+			out.writeLong(state);
+		}
+
+		protected void readState(DataInput in) throws IOException {
+			state = in.readLong();
+		}
+
+	}
+
+
+	// SplitMix64, as in java.util.SplittableRandom
+	private static class SplittableRandomStream extends RandomStream {
+
+		private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+		private long state;
+
+		SplittableRandomStream(long seed, long streamID, long initialSeed) {
+			super(seed, streamID);
+			state = initialSeed;
+		}
+
+		private long nextLong() {
+			state += GOLDEN_GAMMA;
+			long z = state;
+			z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+			z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+			return z ^ (z >>> 31);
+		}
+
+		private int next32() {
+			state += GOLDEN_GAMMA;
+			long z = state;
+			z = (z ^ (z >>> 33)) * 0x62A9D9ED799705F5L;
+			return (int) (((z ^ (z >>> 28)) * 0xCB24D0A5C88C35B3L) >>> 32);
+		}
+
+		public int nextInt(int bound) {
+			if (bound <= 0) {
+				throw new IllegalArgumentException("bound must be positive");
+			}
+			int r = next32();
+			int m = bound - 1;
+			if ((bound & m) == 0) {
+				return r & m;
+			}
+			int u = r >>> 1;
+			while (u + m - (r = u % bound) < 0) {
+				u = next32() >>> 1;
+			}
+			return r;
+		}
+
+		public double nextDouble() {
+			return (nextLong() >>> 11) * 0x1.0p-53;
+		}
+
+		public RandomStream substream(long id) {
+			return new SplittableRandomStream(seed, id + 1, substreamSeed(seed, id));
+		}
+
+		public Generator getGenerator() {
+			return Generator.SPLITTABLE_RANDOM;
+		}
+
+		protected void writeState(DataOutput out) throws IOException {
+			out.writeLong(state);
+		}
+
+		protected void readState(DataInput in) throws IOException {
+			state = in.readLong();
+		}
+
+	}
+
+
+	// Philox4x32-10:  the key is the seed, and the 128-bit counter is the number of the block
+	// (low 64 bits) and the stream (high 64 bits); each block is four 32-bit numbers
+	private static class PhiloxStream extends RandomStream {
+
+		private static final int M0 = 0xD2511F53;
+		private static final int M1 = 0xCD9E8D57;
+		private static final int W0 = 0x9E3779B9;
+		private static final int W1 = 0xBB67AE85;
+
+		private int key0;
+		private int key1;
+		private long block;
+		// the current block, and how many of its numbers have been used
+		private int[] output = new int[4];
+		private int used;
+
+		PhiloxStream(long seed, long streamID) {
+			super(seed, streamID);
+			key0 = (int) seed;
+			key1 = (int) (seed >>> 32);
+			block = 0;
+			used = 4;
+		}
+
+		private int next32() {
+			if (used == 4) {
+				generateBlock();
+				used = 0;
+			}
+			return output[used++];
+		}
+
+		private void generateBlock() {
+			int c0 = (int) block;
+			int c1 = (int) (block >>> 32);
+			int c2 = (int) streamID;
+			int c3 = (int) (streamID >>> 32);
+			int k0 = key0;
+			int k1 = key1;
+			for (int round = 0 ; round < 10 ; ++round) {
+				long product0 = (M0 & 0xFFFFFFFFL) * (c0 & 0xFFFFFFFFL);
+				long product1 = (M1 & 0xFFFFFFFFL) * (c2 & 0xFFFFFFFFL);
+				int newC0 = (int) (product1 >>> 32) ^ c1 ^ k0;
+				int newC2 = (int) (product0 >>> 32) ^ c3 ^ k1;
+				c1 = (int) product1;
+				c3 = (int) product0;
+				c0 = newC0;
+				c2 = newC2;
+				k0 += W0;
+				k1 += W1;
+			}
+			output[0] = c0;
+			output[1] = c1;
+			output[2] = c2;
+			output[3] = c3;
+			++block;
+		}
+
+		// the same reduction as java.util.Random.nextInt(bound), from 31 random bits
+		public int nextInt(int bound) {
+			if (bound <= 0) {
+				throw new IllegalArgumentException("bound must be positive");
+			}
+			int r = next32() >>> 1;
+			int m = bound - 1;
+			if ((bound & m) == 0) {
+				return (int) ((bound * (long) r) >> 31);
+			}
+			int u = r;
+			while (u - (r = u % bound) + m < 0) {
+				u = next32() >>> 1;
+			}
+			return r;
+		}
+
+		// 53 random bits, as in java.util.Random.nextDouble()
+		public double nextDouble() {
+			long high = (next32() >>> 6) & 0x3FFFFFFL;
+			long low = (next32() >>> 5) & 0x7FFFFFFL;
+			return ((high << 27) + low) * 0x1.0p-53;
+		}
+
+		public RandomStream substream(long id) {
+			return new PhiloxStream(seed, id + 1);
+		}
+
+		public Generator getGenerator() {
+			return Generator.PHILOX;
+		}
+
+		// the current block can be generated again from its number
+		protected void writeState(DataOutput out) throws IOException {
+			out.writeLong(block);
+			out.writeInt(used);
+		}
+
+		protected void readState(DataInput in) throws IOException {
+			block = in.readLong();
+			used = in.readInt();
+			if (used < 4) {
+				--block;
+				generateBlock();
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,274 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+
+/**
+ * Everything that belongs to one simulation rather than to the program:  its random
+ * number stream, the current iteration, how many iterations are run and which of them
+ * data is collected for, its metrics (the counters that track how often neurons move, and
+ * more; see SimulationMetrics), and the parameters of the activation rule.
+ *
+ * These used to be static fields of FNN and FluidNN, which meant only one simulation
+ * could run at a time.  Every FluidNN (and CompactFluidNN) now gets a context of its own,
+ * so independent simulations can run side by side, e.g., on different threads (see
+ * ParameterSweep).
+ *
+ * The random numbers come from a RandomStream, which records the seed it was created with,
+ * so each run can be reproduced from its seed alone.
+ */
+public class SimulationContext {
+
+	// for random numbers in all classes (of this simulation)
+	private RandomStream rand;
+
+	private int iteration;
+	private int numIterations;
+	// a certain number of iterations are discarded before data is collected
+	// to give the FNN time to settle into its behavior
+	private int numIterationsDiscarded;
+	// how many iterations will we actually collect data for?
+	private int numIterationsDataCollection;
+	private int firstIterationDataCollection;
+
+	// how many times neurons could move, were active (and could have moved) and actually
+	// moved, along with phase timings and histograms
+	private SimulationMetrics metrics = new SimulationMetrics();
+
+	// how activation level histories are stored
+	private ActivationLevelHistory.Encoding historyEncoding = ActivationLevelHistory.Encoding.DOUBLE;
+
+
+	// this is factor that dials the activation level up and down;
+	// it is applied to the activation sum before the "squashing
+	//  function" (tanh, in this case) is applied
+	private double gain = 0.2;
+
+
+	// there appear to be two thresholds in the Sole & Miramontes paper:
+	//   1) one that is used in the sum of neighbor activations calculation
+	//		(but is set to 0.0 in the paper)
+	private double sumNeighborActivationsThreshold = 0.0;
+
+
+	// a neuron can become active in one of two ways:
+	//   1) its activation level exceeds a threshold:
+	//      (in Sole & Miramontes this is 1e-16)
+	private double activationThreshold = 1e-16;
+	//   2) it is inactive and becomes active spontaneously
+	//		at a specified level with a specified probability
+	//      In the Sole & Miramontes paper, the level is given
+	//		as 0.1; the probability is not given, but in the
+	//		Delgado and Sole paper (see FluidNN), they experiment
+	//		with values in the range of 0.00003 to 0.3, with
+	// 		0.1 appearing to be the "default"
+	private double spontaneousActivationLevel = 0.1;
+	private double spontaneousActivationProbability = 0.1;
+
+
+	// a simulation of numIterations iterations, the first numIterationsDiscarded of which are
+	// not part of the data, with the default parameters
+	public SimulationContext(RandomStream rand, int numIterations, int numIterationsDiscarded) {
+
+		this.rand = rand;
+		this.numIterations = numIterations;
+		this.numIterationsDiscarded = numIterationsDiscarded;
+		numIterationsDataCollection = numIterations - numIterationsDiscarded;
+		firstIterationDataCollection = numIterationsDiscarded + 1;
+		iteration = 0;
+
+	}
+
+
+	// same, with specified values for the parameters
+	public SimulationContext(RandomStream rand, int numIterations, int numIterationsDiscarded, double gain,
+			double sumNeighborActivationsThreshold, double activationThreshold,
+			double spontaneousActivationLevel, double spontaneousActivationProbability) {
+
+		this(rand, numIterations, numIterationsDiscarded);
+		this.gain = gain;
+		this.sumNeighborActivationsThreshold = sumNeighborActivationsThreshold;
+		this.activationThreshold = activationThreshold;
+		this.spontaneousActivationLevel = spontaneousActivationLevel;
+		this.spontaneousActivationProbability = spontaneousActivationProbability;
+
+	}
+
+
+	// is data collected in the current iteration?
+	public boolean collectingData() {
+		return iteration >= firstIterationDataCollection;
+	}
+
+
+	// the move counters (see FluidNN.moveAllMoore)
+	public void countMoveOpportunity() {
+		metrics.countMoveOpportunity();
+	}
+
+	public void countTimeActive() {
+		metrics.countTimeActive();
+	}
+
+	public void countActualMove() {
+		metrics.countActualMove();
+	}
+
+	public void resetMoveCounters() {
+		metrics.resetMoveCounters();
+	}
+
+
+	// save the whole context, including the state of its random number stream (see Checkpoint)
+	public void write(DataOutput out) throws IOException {
+
+		rand.write(out);
+		out.writeInt(iteration);
+		out.writeInt(numIterations);
+		out.writeInt(numIterationsDiscarded);
+		out.writeInt(numIterationsDataCollection);
+		out.writeInt(firstIterationDataCollection);
+		// (the timers and histograms are not saved)
+		out.writeLong(metrics.getNumMoveOpportunities());
+		out.writeLong(metrics.getNumTimesActive());
+		out.writeLong(metrics.getNumActualMoves());
+		out.writeInt(historyEncoding.ordinal());
+		out.writeDouble(gain);
+		out.writeDouble(sumNeighborActivationsThreshold);
+		out.writeDouble(activationThreshold);
+		out.writeDouble(spontaneousActivationLevel);
+		out.writeDouble(spontaneousActivationProbability);
+
+	}
+
+
+	// a context saved with write
+	public static SimulationContext read(DataInput in) throws IOException {
+
+		RandomStream rand = RandomStream.read(in);
+		int iteration = in.readInt();
+		int numIterations = in.readInt();
+		int numIterationsDiscarded = in.readInt();
+
+		SimulationContext context = new SimulationContext(rand, numIterations, numIterationsDiscarded);
+		context.iteration = iteration;
+		context.numIterationsDataCollection = in.readInt();
+		context.firstIterationDataCollection = in.readInt();
+		context.metrics.addMoveCounts(in.readLong(), in.readLong(), in.readLong());
+		context.historyEncoding = ActivationLevelHistory.Encoding.values()[in.readInt()];
+		context.gain = in.readDouble();
+		context.sumNeighborActivationsThreshold = in.readDouble();
+		context.activationThreshold = in.readDouble();
+		context.spontaneousActivationLevel = in.readDouble();
+		context.spontaneousActivationProbability = in.readDouble();
+		return context;
+
+	}
+
+
+	// getters and setters
+	public RandomStream getRand() {
+		return rand;
+	}
+
+	public void setRand(RandomStream rand) {
+		this.rand = rand;
+	}
+
+	public int getIteration() {
+		return iteration;
+	}
+
+	public void setIteration(int iteration) {
+		this.iteration = iteration;
+	}
+
+	public int getNumIterations() {
+		return numIterations;
+	}
+
+	public int getNumIterationsDiscarded() {
+		return numIterationsDiscarded;
+	}
+
+	public int getNumIterationsDataCollection() {
+		return numIterationsDataCollection;
+	}
+
+	public void setNumIterationsDataCollection(int numIterationsDataCollection) {
+		this.numIterationsDataCollection = numIterationsDataCollection;
+	}
+
+	public int getFirstIterationDataCollection() {
+		return firstIterationDataCollection;
+	}
+
+	public void setFirstIterationDataCollection(int firstIterationDataCollection) {
+		this.firstIterationDataCollection = firstIterationDataCollection;
+	}
+
+	public long getNumMoveOpportunities() {
+		return metrics.getNumMoveOpportunities();
+	}
+
+	public long getNumTimesActive() {
+		return metrics.getNumTimesActive();
+	}
+
+	public long getNumActualMoves() {
+		return metrics.getNumActualMoves();
+	}
+
+	public SimulationMetrics getMetrics() {
+		return metrics;
+	}
+
+	public ActivationLevelHistory.Encoding getHistoryEncoding() {
+		return historyEncoding;
+	}
+
+	public void setHistoryEncoding(ActivationLevelHistory.Encoding historyEncoding) {
+		this.historyEncoding = historyEncoding;
+	}
+
+	public double getGain() {
+		return gain;
+	}
+
+	public void setGain(double gain) {
+		this.gain = gain;
+	}
+
+	public double getSumNeighborActivationsThreshold() {
+		return sumNeighborActivationsThreshold;
+	}
+
+	public void setSumNeighborActivationsThreshold(double sumNeighborActivationsThreshold) {
+		this.sumNeighborActivationsThreshold = sumNeighborActivationsThreshold;
+	}
+
+	public double getActivationThreshold() {
+		return activationThreshold;
+	}
+
+	public void setActivationThreshold(double activationThreshold) {
+		this.activationThreshold = activationThreshold;
+	}
+
+	public double getSpontaneousActivationLevel() {
+		return spontaneousActivationLevel;
+	}
+
+	public void setSpontaneousActivationLevel(double spontaneousActivationLevel) {
+		this.spontaneousActivationLevel = spontaneousActivationLevel;
+	}
+
+	public double getSpontaneousActivationProbability() {
+		return spontaneousActivationProbability;
+	}
+
+	public void setSpontaneousActivationProbability(double spontaneousActivationProbability) {
+		this.spontaneousActivationProbability = spontaneousActivationProbability;
+	}
+
+}
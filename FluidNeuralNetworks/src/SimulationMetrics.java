@@ -0,0 +1,295 @@
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * What a simulation has been doing, for seeing where the time of a long run or sweep goes
+ * without a profiler:
+ *   - the move counters (how often neurons could have moved, were active, and did move;
+ *     see FluidNN.moveAllMoore)
+ *   - the time spent in the two phases of an iteration, updating activation levels and
+ *     moving, in nanoseconds
+ *   - a histogram of the number of active neurons after each update, and one of the number
+ *     of cells a neuron tried before it found an empty one to move to
+ *
+ * Every SimulationContext has one.  The counters and timers are LongAdders, so they can be
+ * added to from any thread (e.g., blocks of a parallel update) and read from another (see
+ * MetricsRegistry) at any time.  The histograms are only recorded by the thread running the
+ * simulation; read from another thread while it runs, they may be an iteration or so behind.
+ */
+public class SimulationMetrics {
+
+	private LongAdder numMoveOpportunities = new LongAdder();
+	private LongAdder numTimesActive = new LongAdder();
+	private LongAdder numActualMoves = new LongAdder();
+
+	private LongAdder activationNanos = new LongAdder();
+	private LongAdder numActivationPhases = new LongAdder();
+	private LongAdder movementNanos = new LongAdder();
+	private LongAdder numMovementPhases = new LongAdder();
+
+	private Histogram numActiveHistogram = new Histogram();
+	private Histogram moveAttemptsHistogram = new Histogram();
+
+
+	// the move counters, one event at a time
+	public void countMoveOpportunity() {
+		numMoveOpportunities.increment();
+	}
+
+	public void countTimeActive() {
+		numTimesActive.increment();
+	}
+
+	public void countActualMove() {
+		numActualMoves.increment();
+	}
+
+	// or a whole sweep's worth at once
+	public void addMoveCounts(long moveOpportunities, long timesActive, long actualMoves) {
+		numMoveOpportunities.add(moveOpportunities);
+		numTimesActive.add(timesActive);
+		numActualMoves.add(actualMoves);
+	}
+
+
+	// time spent in one activation (or movement) phase
+	public void addActivationPhase(long nanos) {
+		activationNanos.add(nanos);
+		numActivationPhases.increment();
+	}
+
+	public void addMovementPhase(long nanos) {
+		movementNanos.add(nanos);
+		numMovementPhases.increment();
+	}
+
+
+	public void recordNumActive(int numActive) {
+		numActiveHistogram.record(numActive);
+	}
+
+	public void recordMoveAttempts(int numAttempts) {
+		moveAttemptsHistogram.record(numAttempts);
+	}
+
+
+	// add another simulation's metrics to these (e.g., a finished run's to those of its
+	// configuration; see FNN.runExperiment)
+	public void add(SimulationMetrics other) {
+		addMoveCounts(other.getNumMoveOpportunities(), other.getNumTimesActive(), other.getNumActualMoves());
+		activationNanos.add(other.getActivationNanos());
+		numActivationPhases.add(other.getNumActivationPhases());
+		movementNanos.add(other.getMovementNanos());
+		numMovementPhases.add(other.getNumMovementPhases());
+		numActiveHistogram.add(other.numActiveHistogram);
+		moveAttemptsHistogram.add(other.moveAttemptsHistogram);
+	}
+
+
+	// the move counters back to 0 (the timers and histograms are left alone)
+	public void resetMoveCounters() {
+		numMoveOpportunities.reset();
+		numTimesActive.reset();
+		numActualMoves.reset();
+	}
+
+	// everything back to 0
+	public void reset() {
+		resetMoveCounters();
+		activationNanos.reset();
+		numActivationPhases.reset();
+		movementNanos.reset();
+		numMovementPhases.reset();
+		numActiveHistogram = new Histogram();
+		moveAttemptsHistogram = new Histogram();
+	}
+
+
+	// one line per metric:  name, then value(s)
+	public String toText(String name) {
+		StringBuilder text = new StringBuilder();
+		text.append(name).append(".moveOpportunities ").append(getNumMoveOpportunities()).append('\n');
+		text.append(name).append(".timesActive ").append(getNumTimesActive()).append('\n');
+		text.append(name).append(".actualMoves ").append(getNumActualMoves()).append('\n');
+		text.append(name).append(".activationPhase.count ").append(getNumActivationPhases()).append('\n');
+		text.append(name).append(".activationPhase.nanos ").append(getActivationNanos()).append('\n');
+		text.append(name).append(".movementPhase.count ").append(getNumMovementPhases()).append('\n');
+		text.append(name).append(".movementPhase.nanos ").append(getMovementNanos()).append('\n');
+		numActiveHistogram.appendText(text, name + ".numActive");
+		moveAttemptsHistogram.appendText(text, name + ".moveAttempts");
+		return text.toString();
+	}
+
+
+	// a JSON object
+	public String toJson() {
+		StringBuilder json = new StringBuilder();
+		json.append("{\"moveOpportunities\": ").append(getNumMoveOpportunities());
+		json.append(", \"timesActive\": ").append(getNumTimesActive());
+		json.append(", \"actualMoves\": ").append(getNumActualMoves());
+		json.append(", \"activationPhase\": {\"count\": ").append(getNumActivationPhases());
+		json.append(", \"nanos\": ").append(getActivationNanos()).append('}');
+		json.append(", \"movementPhase\": {\"count\": ").append(getNumMovementPhases());
+		json.append(", \"nanos\": ").append(getMovementNanos()).append('}');
+		json.append(", \"numActive\": ");
+		numActiveHistogram.appendJson(json);
+		json.append(", \"moveAttempts\": ");
+		moveAttemptsHistogram.appendJson(json);
+		json.append('}');
+		return json.toString();
+	}
+
+
+	// getters
+	public long getNumMoveOpportunities() {
+		return numMoveOpportunities.sum();
+	}
+
+	public long getNumTimesActive() {
+		return numTimesActive.sum();
+	}
+
+	public long getNumActualMoves() {
+		return numActualMoves.sum();
+	}
+
+	public long getActivationNanos() {
+		return activationNanos.sum();
+	}
+
+	public long getNumActivationPhases() {
+		return numActivationPhases.sum();
+	}
+
+	public long getMovementNanos() {
+		return movementNanos.sum();
+	}
+
+	public long getNumMovementPhases() {
+		return numMovementPhases.sum();
+	}
+
+	public Histogram getNumActiveHistogram() {
+		return numActiveHistogram;
+	}
+
+	public Histogram getMoveAttemptsHistogram() {
+		return moveAttemptsHistogram;
+	}
+
+
+	/**
+	 * Counts of small non-negative whole numbers, one bin per value; the bins grow to fit the
+	 * largest value recorded.
+	 */
+	public static class Histogram {
+
+		private long[] counts = new long[16];
+		private long total;
+
+
+		public void record(int value) {
+			if (value >= counts.length) {
+				counts = Arrays.copyOf(counts, Math.max(value + 1, 2 * counts.length));
+			}
+			++counts[value];
+			++total;
+		}
+
+
+		// add the counts of another histogram to these
+		public void add(Histogram other) {
+			long[] otherCounts = other.counts;
+			if (otherCounts.length > counts.length) {
+				counts = Arrays.copyOf(counts, otherCounts.length);
+			}
+			for (int value = 0 ; value < otherCounts.length ; ++value) {
+				counts[value] += otherCounts[value];
+			}
+			total += other.total;
+		}
+
+
+		// number of times the value was recorded
+		public long getCount(int value) {
+			long[] counts = this.counts;
+			return value < counts.length ? counts[value] : 0;
+		}
+
+		public long getTotal() {
+			return total;
+		}
+
+		public double mean() {
+			long[] counts = this.counts;
+			double sum = 0.0;
+			long n = 0;
+			for (int value = 0 ; value < counts.length ; ++value) {
+				sum += (double) value * counts[value];
+				n += counts[value];
+			}
+			return n == 0 ? 0.0 : sum / n;
+		}
+
+		// the largest value recorded (-1 if none)
+		public int max() {
+			long[] counts = this.counts;
+			for (int value = counts.length - 1 ; value >= 0 ; --value) {
+				if (counts[value] > 0) {
+					return value;
+				}
+			}
+			return -1;
+		}
+
+		// the smallest value with at least the fraction q (0 to 1) of the counts at or below it
+		public int quantile(double q) {
+			long[] counts = this.counts;
+			long n = 0;
+			for (int value = 0 ; value < counts.length ; ++value) {
+				n += counts[value];
+			}
+			long target = (long) Math.ceil(q * n);
+			long cumulative = 0;
+			for (int value = 0 ; value < counts.length ; ++value) {
+				cumulative += counts[value];
+				if (cumulative >= Math.max(1, target)) {
+					return value;
+				}
+			}
+			return -1;
+		}
+
+
+		private void appendText(StringBuilder text, String name) {
+			text.append(name).append(".count ").append(total).append('\n');
+			text.append(name).append(".mean ").append(String.format(Locale.ROOT, "%.4f", mean())).append('\n');
+			text.append(name).append(".p50 ").append(quantile(0.5)).append('\n');
+			text.append(name).append(".p99 ").append(quantile(0.99)).append('\n');
+			text.append(name).append(".max ").append(max()).append('\n');
+		}
+
+		// summary statistics, then the nonzero bins as [value, count] pairs
+		private void appendJson(StringBuilder json) {
+			long[] counts = this.counts;
+			json.append("{\"count\": ").append(total);
+			json.append(", \"mean\": ").append(String.format(Locale.ROOT, "%.4f", mean()));
+			json.append(", \"p50\": ").append(quantile(0.5));
+			json.append(", \"p99\": ").append(quantile(0.99));
+			json.append(", \"max\": ").append(max());
+			json.append(", \"bins\": [");
+			boolean first = true;
+			for (int value = 0 ; value < counts.length ; ++value) {
+				if (counts[value] > 0) {
+					json.append(first ? "" : ", ").append('[').append(value).append(", ").append(counts[value]).append(']');
+					first = false;
+				}
+			}
+			json.append("]}");
+		}
+
+	}
+
+}
@@ -0,0 +1,110 @@
+/**
+ * The Shannon-Kolmogorov entropy (see FNN.calculateSKE) of the number of active neurons
+ * over the last windowSize iterations, kept up to date one iteration at a time, so that it
+ * can be watched while a run goes on rather than worked out from the histogram at the end.
+ *
+ * The window is a ring buffer of the counts; alongside it are the histogram of the counts
+ * in the window and S, the sum over the histogram of h lg h.  The entropy of the window is
+ *   H = lg n - S / n
+ * where n is the number of iterations in it, and adding an iteration (and dropping the
+ * oldest, once the window is full) changes two bins of the histogram, and so two terms of
+ * S, by table lookups.  Adding an iteration and getting the entropy are O(1) whatever the
+ * size of the network and of the window.
+ */
+public class SlidingWindowSKE {
+
+	private int windowSize;
+	// the counts in the window, oldest at next once the window is full
+	private int[] window;
+	private int next;
+	// number of iterations in the window (windowSize once it is full)
+	private int size;
+
+	// histogram[c] is the number of iterations in the window with c active neurons
+	private int[] histogram;
+	// h lg h for every h, 0 to windowSize
+	private double[] hlgh;
+	// sum of hlgh[histogram[c]] over c
+	private double sum;
+
+
+	// the number of active neurons will be from 0 to maxCount (e.g., the number of neurons)
+	public SlidingWindowSKE(int maxCount, int windowSize) {
+
+		this.windowSize = windowSize;
+		window = new int[windowSize];
+		histogram = new int[maxCount + 1];
+
+		hlgh = new double[windowSize + 1];
+		for (int h = 1 ; h <= windowSize ; ++h) {
+			hlgh[h] = h * FNN.lg(h);
+		}
+
+	}
+
+
+	// the number of active neurons in the latest iteration
+	public void add(int numActive) {
+
+		if (size == windowSize) {
+			remove(window[next]);
+		}
+		else {
+			++size;
+		}
+		window[next] = numActive;
+		next = next + 1 == windowSize ? 0 : next + 1;
+
+		int h = histogram[numActive]++;
+		sum += hlgh[h + 1] - hlgh[h];
+
+	}
+
+
+	private void remove(int numActive) {
+		int h = histogram[numActive]--;
+		sum += hlgh[h - 1] - hlgh[h];
+	}
+
+
+	// the entropy of the number of active neurons over the iterations in the window
+	public double entropy() {
+		if (size == 0) {
+			return 0.0;
+		}
+		// S is kept by adding and subtracting, so it can be off by a rounding error or so
+		return Math.max(0.0, FNN.lg(size) - sum / size);
+	}
+
+
+	// start over with an empty window
+	public void clear() {
+		size = 0;
+		next = 0;
+		sum = 0.0;
+		for (int c = 0 ; c < histogram.length ; ++c) {
+			histogram[c] = 0;
+		}
+	}
+
+
+	// the histogram of the window, as FNN.calculateSKE takes it
+	public double[] getHistogram() {
+		double[] histogramCopy = new double[histogram.length];
+		for (int c = 0 ; c < histogram.length ; ++c) {
+			histogramCopy[c] = histogram[c];
+		}
+		return histogramCopy;
+	}
+
+
+	// getters
+	public int getWindowSize() {
+		return windowSize;
+	}
+
+	public int size() {
+		return size;
+	}
+
+}
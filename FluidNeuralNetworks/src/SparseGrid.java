@@ -0,0 +1,170 @@
+/**
+ * The occupied cells of a FluidNN's lattice, in a hash table keyed on the cell (open
+ * addressing, linear probing), for FluidNN.GridModel.SPARSE:  the padded grid of a dense
+ * FluidNN takes memory in proportion to the area of the lattice, most of it null at low
+ * densities, whereas this takes memory in proportion to the number of neurons.
+ *
+ * getNeighbor stands in for the halo of the padded grid (see FluidNN):  off the lattice, it
+ * gives the wall on a LATTICE, and the cell it wraps around to on a TORUS, so a neighbor
+ * looked up here is the same neuron, or null, or the wall, as in the padded grid.
+ */
+public class SparseGrid {
+
+	// size of the lattice
+	private int numRows;
+	private int numCols;
+	// what getNeighbor gives for a cell off a LATTICE
+	private Neuron wall;
+	private boolean torus;
+
+	// cells (row * numCols + col) and the neurons in them; a slot is empty when its neuron is null
+	private long[] cells;
+	private Neuron[] neurons;
+	private int size;
+	// 64 - log2 of the number of slots
+	private int shift;
+
+
+	// an empty grid, with room for expectedSize neurons before it has to grow
+	public SparseGrid(int numRows, int numCols, int expectedSize, Neuron wall) {
+
+		this.numRows = numRows;
+		this.numCols = numCols;
+		this.wall = wall;
+		int capacity = 16;
+		// kept at most half full
+		while (capacity < 2 * expectedSize) {
+			capacity *= 2;
+		}
+		cells = new long[capacity];
+		neurons = new Neuron[capacity];
+		shift = 64 - Integer.numberOfTrailingZeros(capacity);
+
+	}
+
+
+	// where the cell is, or would go
+	private int slot(long cell) {
+		// neighboring cells are consecutive numbers, so spread them out (Fibonacci hashing:
+		// the top bits of the product)
+		int mask = cells.length - 1;
+		int slot = (int) ((cell * 0x9E3779B97F4A7C15L) >>> shift);
+		while (neurons[slot] != null && cells[slot] != cell) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+
+	// the neuron in the cell at the given row and column of the lattice (null if empty)
+	public Neuron get(int row, int col) {
+		return neurons[slot((long) row * numCols + col)];
+	}
+
+
+	// put the neuron (or null, to empty it) in the cell at the given row and column
+	public void put(int row, int col, Neuron neuron) {
+
+		long cell = (long) row * numCols + col;
+		int slot = slot(cell);
+		if (neuron == null) {
+			if (neurons[slot] != null)
+				remove(slot);
+			return;
+		}
+
+		if (neurons[slot] == null) {
+			if (2 * (size + 1) > cells.length) {
+				grow();
+				slot = slot(cell);
+			}
+			cells[slot] = cell;
+			++size;
+		}
+		neurons[slot] = neuron;
+
+	}
+
+
+	// empty the slot, then move back any of the cells after it that would no longer be
+	// found (there are no "deleted" markers, so neurons moving around don't fill the table up)
+	private void remove(int slot) {
+
+		int mask = cells.length - 1;
+		neurons[slot] = null;
+		--size;
+		int next = slot;
+		while (true) {
+			next = (next + 1) & mask;
+			if (neurons[next] == null)
+				return;
+			// looking the cell up stops at the emptied slot if that comes first on the way
+			// from where the cell hashes to, in which case the cell has to move back into it
+			if (slot(cells[next]) == next)
+				continue;
+			cells[slot] = cells[next];
+			neurons[slot] = neurons[next];
+			neurons[next] = null;
+			slot = next;
+		}
+
+	}
+
+
+	private void grow() {
+
+		long[] oldCells = cells;
+		Neuron[] oldNeurons = neurons;
+		cells = new long[2 * oldCells.length];
+		neurons = new Neuron[2 * oldCells.length];
+		--shift;
+		for (int i = 0 ; i < oldCells.length ; ++i) {
+			if (oldNeurons[i] != null) {
+				int slot = slot(oldCells[i]);
+				cells[slot] = oldCells[i];
+				neurons[slot] = oldNeurons[i];
+			}
+		}
+
+	}
+
+
+	// what is in the cell at the given offset (-1, 0, or +1) from the cell at the given row
+	// and column:  a neuron, null if the cell is empty, or the wall if it is off a LATTICE
+	public Neuron getNeighbor(int row, int col, int rDelta, int cDelta) {
+
+		int r = row + rDelta;
+		int c = col + cDelta;
+		if (r < 0 || r == numRows || c < 0 || c == numCols) {
+			if (!torus)
+				return wall;
+			r = wrapRow(r);
+			c = wrapCol(c);
+		}
+		return get(r, c);
+
+	}
+
+
+	// row and column wrap-around (as in FluidNN)
+	public int wrapRow(int row) {
+		return row < 0 ? numRows - 1 : row == numRows ? 0 : row;
+	}
+
+	public int wrapCol(int col) {
+		return col < 0 ? numCols - 1 : col == numCols ? 0 : col;
+	}
+
+
+	// what the cells off the lattice are
+	public void setBoundaryModel(FNN.FNN_BoundaryModel boundaryModel) {
+		torus = boundaryModel == FNN.FNN_BoundaryModel.TORUS;
+	}
+
+
+	// number of occupied cells
+	public int size() {
+		return size;
+	}
+
+}
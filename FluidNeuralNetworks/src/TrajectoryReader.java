@@ -0,0 +1,245 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+
+/**
+ * Reads a trajectory written by TrajectoryWriter.  The file is memory-mapped, so any step
+ * can be read directly, in any order, and only the parts that are read are loaded.  A
+ * mapping can't be bigger than 2GB, so a big file is mapped in segments of whole records.
+ *
+ * Besides the state of any neuron in any step, a reader gives the activation level history
+ * and the active/inactive history of a neuron over a range of steps, in the same form as a
+ * Neuron keeps them, so the analyses in FNN (info transfer, AIS, ...) can be run again on a
+ * stored trajectory with different settings, without running the simulation again.
+ */
+public class TrajectoryReader implements Closeable {
+
+	private FileChannel channel;
+	private MappedByteBuffer[] segments;
+	private int stepsPerSegment;
+	private int recordSize;
+	private int numSteps;
+
+	private int numRows;
+	private int numCols;
+	private int numNeurons;
+	private RandomStream.Generator generator;
+	private long seed;
+	private int numIterations;
+	private int numIterationsDiscarded;
+	private double gain;
+	private double sumNeighborActivationsThreshold;
+	private double activationThreshold;
+	private double spontaneousActivationLevel;
+	private double spontaneousActivationProbability;
+
+	// record layout
+	private int colsOffset;
+	private int levelsOffset;
+	private int activeOffset;
+
+
+	public TrajectoryReader(File file) throws IOException {
+
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		channel = raf.getChannel();
+
+		ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, TrajectoryWriter.HEADER_SIZE);
+		if (header.getInt() != TrajectoryWriter.MAGIC) {
+			channel.close();
+			throw new IOException(file + " is not a trajectory file");
+		}
+		int version = header.getInt();
+		if (version != TrajectoryWriter.VERSION) {
+			channel.close();
+			throw new IOException(file + ":  unknown trajectory file version " + version);
+		}
+		numRows = header.getInt();
+		numCols = header.getInt();
+		numNeurons = header.getInt();
+		generator = RandomStream.Generator.values()[header.getInt()];
+		seed = header.getLong();
+		numIterations = header.getInt();
+		numIterationsDiscarded = header.getInt();
+		gain = header.getDouble();
+		sumNeighborActivationsThreshold = header.getDouble();
+		activationThreshold = header.getDouble();
+		spontaneousActivationLevel = header.getDouble();
+		spontaneousActivationProbability = header.getDouble();
+
+		colsOffset = TrajectoryWriter.colsOffset(numNeurons);
+		levelsOffset = TrajectoryWriter.levelsOffset(numNeurons);
+		activeOffset = TrajectoryWriter.activeOffset(numNeurons);
+		recordSize = (int) TrajectoryWriter.recordSize(numNeurons);
+
+		// a partly written last record (from a run that was cut short) is left out
+		numSteps = (int) ((channel.size() - TrajectoryWriter.HEADER_SIZE) / recordSize);
+		stepsPerSegment = Math.max(1, Integer.MAX_VALUE / recordSize);
+		int numSegments = (numSteps + stepsPerSegment - 1) / stepsPerSegment;
+		segments = new MappedByteBuffer[numSegments];
+		for (int s = 0 ; s < numSegments ; ++s) {
+			int steps = Math.min(stepsPerSegment, numSteps - s * stepsPerSegment);
+			segments[s] = channel.map(FileChannel.MapMode.READ_ONLY,
+					TrajectoryWriter.HEADER_SIZE + (long) s * stepsPerSegment * recordSize, (long) steps * recordSize);
+		}
+
+	}
+
+
+	// the segment a step is in, and where its record starts in the segment
+	private ByteBuffer segment(int step) {
+		if (step < 0 || step >= numSteps) {
+			throw new IndexOutOfBoundsException("step " + step + " of " + numSteps);
+		}
+		return segments[step / stepsPerSegment];
+	}
+
+	private int recordStart(int step) {
+		return (step % stepsPerSegment) * recordSize;
+	}
+
+
+	// the iteration that step was recorded in
+	public int getIteration(int step) {
+		return segment(step).getInt(recordStart(step));
+	}
+
+	public int getRow(int step, int n) {
+		return segment(step).getChar(recordStart(step) + TrajectoryWriter.ROWS_OFFSET + 2 * n);
+	}
+
+	public int getCol(int step, int n) {
+		return segment(step).getChar(recordStart(step) + colsOffset + 2 * n);
+	}
+
+	public double getActivationLevel(int step, int n) {
+		return segment(step).getDouble(recordStart(step) + levelsOffset + 8 * n);
+	}
+
+	public boolean active(int step, int n) {
+		long word = segment(step).getLong(recordStart(step) + activeOffset + 8 * (n >>> 6));
+		return (word & (1L << n)) != 0;
+	}
+
+
+	// the activation levels of all of the neurons in a step
+	public void getActivationLevels(int step, double[] levels) {
+		ByteBuffer segment = segment(step);
+		int start = recordStart(step) + levelsOffset;
+		for (int n = 0 ; n < numNeurons ; ++n) {
+			levels[n] = segment.getDouble(start + 8 * n);
+		}
+	}
+
+
+	// the activation levels of neuron n in steps from (inclusive) to to (exclusive), in the
+	// given encoding
+	public ActivationLevelHistory getActivationLevelHistory(int n, int from, int to, ActivationLevelHistory.Encoding encoding) {
+		ActivationLevelHistory history = ActivationLevelHistory.create(encoding, to - from);
+		for (int step = from ; step < to ; ++step) {
+			history.set(step - from, getActivationLevel(step, n));
+		}
+		return history;
+	}
+
+	// all of them, exactly
+	public ActivationLevelHistory getActivationLevelHistory(int n) {
+		return getActivationLevelHistory(n, 0, numSteps, ActivationLevelHistory.Encoding.DOUBLE);
+	}
+
+
+	// the active/inactive status of neuron n in steps from (inclusive) to to (exclusive)
+	public ActiveInactiveHistory getActiveInactiveHistory(int n, int from, int to) {
+		ActiveInactiveHistory history = new ActiveInactiveHistory(to - from);
+		for (int step = from ; step < to ; ++step) {
+			history.set(step - from, active(step, n));
+		}
+		return history;
+	}
+
+	public ActiveInactiveHistory getActiveInactiveHistory(int n) {
+		return getActiveInactiveHistory(n, 0, numSteps);
+	}
+
+
+	// the first step recorded in or after the given iteration (numSteps if there is none)
+	public int findStep(int iteration) {
+		int low = 0;
+		int high = numSteps;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (getIteration(middle) < iteration) {
+				low = middle + 1;
+			}
+			else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+
+	public void close() throws IOException {
+		channel.close();
+	}
+
+
+	// getters
+	public int getNumSteps() {
+		return numSteps;
+	}
+
+	public int getNumRows() {
+		return numRows;
+	}
+
+	public int getNumCols() {
+		return numCols;
+	}
+
+	public int getNumNeurons() {
+		return numNeurons;
+	}
+
+	public RandomStream.Generator getGenerator() {
+		return generator;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public int getNumIterations() {
+		return numIterations;
+	}
+
+	public int getNumIterationsDiscarded() {
+		return numIterationsDiscarded;
+	}
+
+	public double getGain() {
+		return gain;
+	}
+
+	public double getSumNeighborActivationsThreshold() {
+		return sumNeighborActivationsThreshold;
+	}
+
+	public double getActivationThreshold() {
+		return activationThreshold;
+	}
+
+	public double getSpontaneousActivationLevel() {
+		return spontaneousActivationLevel;
+	}
+
+	public double getSpontaneousActivationProbability() {
+		return spontaneousActivationProbability;
+	}
+
+}
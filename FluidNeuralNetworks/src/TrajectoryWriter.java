@@ -0,0 +1,189 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+
+/**
+ * Writes the trajectory of a simulation (a FluidNN or CompactFluidNN) to a binary file, one
+ * fixed-size record per step, so that it can be analyzed again later (see TrajectoryReader)
+ * without running the simulation again.
+ *
+ * The file is a header followed by the records.  The header (HEADER_SIZE bytes) has the
+ * size of the lattice, the number of neurons and everything in the SimulationContext that
+ * determines the run (the seed and generator of its random numbers and the parameters).
+ * Within a record the data is stored by column:  the iteration, then the row of every
+ * neuron, the column of every neuron (both as unsigned 16-bit numbers), the activation
+ * level of every neuron (doubles, starting at a multiple of 8 bytes) and finally the
+ * active/inactive status of every neuron, packed as in ActiveInactiveHistory.  Neuron n is
+ * the n-th neuron of the network's neuron list.
+ *
+ * A record is written every time append is called, which is usually once per iteration,
+ * after the neurons have been moved and updated.  The number of steps is not stored; the
+ * reader works it out from the size of the file, so a run that was cut short can still be
+ * read.
+ */
+public class TrajectoryWriter implements Closeable {
+
+	static final int MAGIC = 0x464E4E54;
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 128;
+	// the iteration is the first 4 bytes of a record (and the next 4 are unused)
+	static final int ROWS_OFFSET = 8;
+
+	private FileChannel channel;
+	private int numNeurons;
+	// the next record is written here
+	private long position;
+	private ByteBuffer record;
+	private long[] activeWords;
+
+
+	// a trajectory of the given network (whose context has to have a RandomStream, for the seed)
+	public TrajectoryWriter(File file, FluidNN fnn) throws IOException {
+		this(file, fnn.getNumRows(), fnn.getNumCols(), fnn.getNeuronList().length, fnn.getContext());
+	}
+
+	public TrajectoryWriter(File file, CompactFluidNN fnn) throws IOException {
+		this(file, fnn.getNumRows(), fnn.getNumCols(), fnn.getNumNeurons(), fnn.getContext());
+	}
+
+
+	private TrajectoryWriter(File file, int numRows, int numCols, int numNeurons, SimulationContext context)
+			throws IOException {
+
+		if (numRows > 0xFFFF || numCols > 0xFFFF) {
+			throw new IllegalArgumentException("lattice too big for a trajectory file:  " + numRows + " x " + numCols);
+		}
+
+		this.numNeurons = numNeurons;
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.setLength(0);
+		channel = raf.getChannel();
+
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putInt(MAGIC);
+		header.putInt(VERSION);
+		header.putInt(numRows);
+		header.putInt(numCols);
+		header.putInt(numNeurons);
+		header.putInt(context.getRand().getGenerator().ordinal());
+		header.putLong(context.getRand().getSeed());
+		header.putInt(context.getNumIterations());
+		header.putInt(context.getNumIterationsDiscarded());
+		header.putDouble(context.getGain());
+		header.putDouble(context.getSumNeighborActivationsThreshold());
+		header.putDouble(context.getActivationThreshold());
+		header.putDouble(context.getSpontaneousActivationLevel());
+		header.putDouble(context.getSpontaneousActivationProbability());
+		header.clear();
+		write(header, 0);
+		position = HEADER_SIZE;
+
+		record = ByteBuffer.allocateDirect((int) recordSize(numNeurons));
+		activeWords = new long[numActiveWords(numNeurons)];
+
+	}
+
+
+	// add the current state of the network
+	public void append(FluidNN fnn) throws IOException {
+
+		Neuron[] neurons = fnn.getNeuronList();
+		record.clear();
+		record.putInt(0, fnn.getContext().getIteration());
+		for (int w = 0 ; w < activeWords.length ; ++w) {
+			activeWords[w] = 0L;
+		}
+
+		int colsOffset = colsOffset(numNeurons);
+		int levelsOffset = levelsOffset(numNeurons);
+		for (int n = 0 ; n < numNeurons ; ++n) {
+			Neuron neuron = neurons[n];
+			record.putChar(ROWS_OFFSET + 2 * n, (char) neuron.getRow());
+			record.putChar(colsOffset + 2 * n, (char) neuron.getCol());
+			record.putDouble(levelsOffset + 8 * n, neuron.getActivationLevel());
+			if (neuron.active()) {
+				activeWords[n >>> 6] |= 1L << n;
+			}
+		}
+
+		appendRecord();
+
+	}
+
+
+	public void append(CompactFluidNN fnn) throws IOException {
+
+		record.clear();
+		record.putInt(0, fnn.getContext().getIteration());
+		for (int w = 0 ; w < activeWords.length ; ++w) {
+			activeWords[w] = 0L;
+		}
+
+		int colsOffset = colsOffset(numNeurons);
+		int levelsOffset = levelsOffset(numNeurons);
+		for (int n = 0 ; n < numNeurons ; ++n) {
+			record.putChar(ROWS_OFFSET + 2 * n, (char) fnn.getRow(n));
+			record.putChar(colsOffset + 2 * n, (char) fnn.getCol(n));
+			record.putDouble(levelsOffset + 8 * n, fnn.getActivationLevel(n));
+			if (fnn.active(n)) {
+				activeWords[n >>> 6] |= 1L << n;
+			}
+		}
+
+		appendRecord();
+
+	}
+
+
+	private void appendRecord() throws IOException {
+
+		int activeOffset = activeOffset(numNeurons);
+		for (int w = 0 ; w < activeWords.length ; ++w) {
+			record.putLong(activeOffset + 8 * w, activeWords[w]);
+		}
+		record.clear();
+		write(record, position);
+		position += record.capacity();
+
+	}
+
+
+	private void write(ByteBuffer buffer, long at) throws IOException {
+		while (buffer.hasRemaining()) {
+			at += channel.write(buffer, at);
+		}
+	}
+
+
+	public void close() throws IOException {
+		channel.close();
+	}
+
+
+	// the layout of a record for the given number of neurons (offsets are from the start
+	// of the record)
+	static int colsOffset(int numNeurons) {
+		return ROWS_OFFSET + 2 * numNeurons;
+	}
+
+	static int levelsOffset(int numNeurons) {
+		return (colsOffset(numNeurons) + 2 * numNeurons + 7) & ~7;
+	}
+
+	static int activeOffset(int numNeurons) {
+		return levelsOffset(numNeurons) + 8 * numNeurons;
+	}
+
+	static int numActiveWords(int numNeurons) {
+		return (numNeurons + 63) >>> 6;
+	}
+
+	static long recordSize(int numNeurons) {
+		return activeOffset(numNeurons) + 8L * numActiveWords(numNeurons);
+	}
+
+}
@@ -0,0 +1,247 @@
+/**
+ * Transfer entropy from one neuron (the source) to another (the target), on their activity
+ * histories:  how much knowing the last l states of the source tells about the next state
+ * of the target, on top of what the last k states of the target itself tell (Schreiber,
+ * "Measuring information transfer", Phys. Rev. Lett. 85 (2000) 461).  Unlike the "info
+ * transfer" of FNN.calculateInfoTransfer (the mutual information of the two states at the
+ * same time), it has a direction.
+ *
+ * The past states of each neuron are coded as integers (the last k, or l, states as the
+ * bits of a number, oldest first), which are worked out once for every neuron, in one pass
+ * over its history, with a rolling code:  shift in the newest state, mask off the oldest.
+ * Counting a pair is then one pass over the time steps, adding 1 to a flat long[] table
+ * indexed by (target past, source past, target next).
+ *
+ * The estimate can be for a single pair, for all ordered pairs (a matrix), or pooled:  the
+ * counts of many pairs (e.g., all pairs of neighbors) added up in one table, which is the
+ * usual way to get a network-wide estimate out of short histories.  Results are in bits.
+ */
+public class TransferEntropy {
+
+	// history lengths of the target (k) and the source (l)
+	private int targetHistoryLength;
+	private int sourceHistoryLength;
+
+	private int numNeurons;
+	// number of iterations in the histories
+	private int length;
+	// the first time step with a full past for both (max(k, l))
+	private int firstStep;
+
+	// for neuron n and time step t >= firstStep, its past as a target and as a source
+	// (the states in steps t - k ... t - 1 and t - l ... t - 1), at index t - firstStep
+	private int[][] targetPast;
+	private int[][] sourcePast;
+	private ActiveInactiveHistory[] histories;
+
+	// the counts, indexed by (targetPast << (l + 1)) | (sourcePast << 1) | targetNext; long,
+	// since pooling all pairs of a few hundred neurons passes 2^31 counts in a cell
+	private long[] counts;
+
+
+	// transfer entropy among neurons with the given histories (all the same length), with
+	// target history length k and source history length l (k + l is at most 29)
+	public TransferEntropy(ActiveInactiveHistory[] histories, int targetHistoryLength, int sourceHistoryLength) {
+
+		// the table has 2^(k + l + 1) cells, indexed by an int
+		if (targetHistoryLength < 0 || sourceHistoryLength < 0 || targetHistoryLength + sourceHistoryLength > 29) {
+			throw new IllegalArgumentException("history lengths not supported by TransferEntropy:  k = " + targetHistoryLength
+					+ ", l = " + sourceHistoryLength + " (k and l at least 0, k + l at most 29)");
+		}
+
+		this.histories = histories;
+		this.targetHistoryLength = targetHistoryLength;
+		this.sourceHistoryLength = sourceHistoryLength;
+		numNeurons = histories.length;
+		length = numNeurons == 0 ? 0 : histories[0].length();
+		firstStep = Math.max(targetHistoryLength, sourceHistoryLength);
+
+		targetPast = new int[numNeurons][];
+		sourcePast = new int[numNeurons][];
+		for (int n = 0 ; n < numNeurons ; ++n) {
+			targetPast[n] = pastCodes(histories[n], targetHistoryLength);
+			sourcePast[n] = sourceHistoryLength == targetHistoryLength ? targetPast[n] : pastCodes(histories[n], sourceHistoryLength);
+		}
+
+		counts = new long[1 << (targetHistoryLength + sourceHistoryLength + 1)];
+
+	}
+
+
+	// transfer entropy among the neurons of a network
+	public TransferEntropy(FluidNN fnn, int targetHistoryLength, int sourceHistoryLength) {
+		this(fnn.getActiveInactiveHistories(), targetHistoryLength, sourceHistoryLength);
+	}
+
+
+	// the codes of the last historyLength states before every time step from firstStep on
+	private int[] pastCodes(ActiveInactiveHistory history, int historyLength) {
+
+		int[] codes = new int[Math.max(0, length - firstStep)];
+		int mask = (1 << historyLength) - 1;
+		int code = 0;
+		for (int t = 0 ; t < length - 1 ; ++t) {
+			code = ((code << 1) | history.get(t)) & mask;
+			if (t + 1 >= firstStep) {
+				codes[t + 1 - firstStep] = code;
+			}
+		}
+		return codes;
+
+	}
+
+
+	// add the counts of one ordered pair to the table
+	private void count(int source, int target) {
+
+		int[] targetCodes = targetPast[target];
+		int[] sourceCodes = sourcePast[source];
+		ActiveInactiveHistory targetHistory = histories[target];
+		int shift = sourceHistoryLength + 1;
+		for (int i = 0 ; i < targetCodes.length ; ++i) {
+			++counts[(targetCodes[i] << shift) | (sourceCodes[i] << 1) | targetHistory.get(firstStep + i)];
+		}
+
+	}
+
+
+	// transfer entropy from the counts in the table:
+	//   sum over (x, y, next) of p(x, y, next) lg [ p(next | x, y) / p(next | x) ]
+	// where x is the target past and y is the source past
+	private double transferEntropyOfCounts() {
+
+		int numSourcePasts = 1 << sourceHistoryLength;
+		int numTargetPasts = 1 << targetHistoryLength;
+		long total = 0;
+		for (int c = 0 ; c < counts.length ; ++c) {
+			total += counts[c];
+		}
+		if (total == 0) {
+			return 0.0;
+		}
+
+		double sum = 0.0;
+		for (int x = 0 ; x < numTargetPasts ; ++x) {
+			// count of (x, next) for next = 0 and 1, over all source pasts
+			long xNext0 = 0;
+			long xNext1 = 0;
+			for (int y = 0 ; y < numSourcePasts ; ++y) {
+				int index = (x * numSourcePasts + y) << 1;
+				xNext0 += counts[index];
+				xNext1 += counts[index + 1];
+			}
+			long xCount = xNext0 + xNext1;
+			for (int y = 0 ; y < numSourcePasts ; ++y) {
+				int index = (x * numSourcePasts + y) << 1;
+				long xyCount = counts[index] + counts[index + 1];
+				if (counts[index] > 0) {
+					sum += counts[index] * FNN.lg((double) counts[index] * xCount / ((double) xyCount * xNext0));
+				}
+				if (counts[index + 1] > 0) {
+					sum += counts[index + 1] * FNN.lg((double) counts[index + 1] * xCount / ((double) xyCount * xNext1));
+				}
+			}
+		}
+		return sum / total;
+
+	}
+
+
+	private void clearCounts() {
+		for (int c = 0 ; c < counts.length ; ++c) {
+			counts[c] = 0;
+		}
+	}
+
+
+	// transfer entropy from source to target
+	public double get(int source, int target) {
+		clearCounts();
+		count(source, target);
+		return transferEntropyOfCounts();
+	}
+
+
+	// transfer entropy for every ordered pair:  [source][target] (0.0 on the diagonal)
+	public double[][] allPairs() {
+		double[][] transferEntropy = new double[numNeurons][numNeurons];
+		for (int source = 0 ; source < numNeurons ; ++source) {
+			for (int target = 0 ; target < numNeurons ; ++target) {
+				if (source != target) {
+					transferEntropy[source][target] = get(source, target);
+				}
+			}
+		}
+		return transferEntropy;
+	}
+
+
+	// transfer entropy with the counts of the given ordered pairs (sources[i] to targets[i])
+	// pooled
+	public double pooled(int[] sources, int[] targets) {
+		clearCounts();
+		for (int i = 0 ; i < sources.length ; ++i) {
+			count(sources[i], targets[i]);
+		}
+		return transferEntropyOfCounts();
+	}
+
+
+	// same, over all ordered pairs
+	public double pooledAllPairs() {
+		clearCounts();
+		for (int source = 0 ; source < numNeurons ; ++source) {
+			for (int target = 0 ; target < numNeurons ; ++target) {
+				if (source != target) {
+					count(source, target);
+				}
+			}
+		}
+		return transferEntropyOfCounts();
+	}
+
+
+	// every ordered pair of neurons that are Moore neighbors where they are now (neurons
+	// move, so this is usually taken at the end of a run):  pairs[0] are the sources and
+	// pairs[1] the targets, as indices into the neuron list
+	public static int[][] neighborPairs(FluidNN fnn, FNN.FNN_BoundaryModel boundaryModel) {
+
+		Neuron[] neurons = fnn.getNeuronList();
+		int[] sources = new int[8 * neurons.length];
+		int[] targets = new int[8 * neurons.length];
+		int numPairs = 0;
+		for (int n = 0 ; n < neurons.length ; ++n) {
+			Neuron[] neighbors = fnn.getMooreNeighborhood(neurons[n], FNN.SelfModel.NOT_INCLUDE_SELF, boundaryModel,
+					FNN.FNN_ActivityModel.ALL_NEURONS);
+			for (int i = 0 ; i < neighbors.length ; ++i) {
+				// on a small torus the same neighbor can be in more than one direction
+				boolean seen = false;
+				for (int j = 0 ; j < i ; ++j) {
+					seen |= neighbors[j] == neighbors[i];
+				}
+				if (!seen) {
+					sources[numPairs] = neighbors[i].getID();
+					targets[numPairs] = n;
+					++numPairs;
+				}
+			}
+		}
+
+		int[][] pairs = new int[2][numPairs];
+		System.arraycopy(sources, 0, pairs[0], 0, numPairs);
+		System.arraycopy(targets, 0, pairs[1], 0, numPairs);
+		return pairs;
+
+	}
+
+
+	// getters
+	public int getTargetHistoryLength() {
+		return targetHistoryLength;
+	}
+
+	public int getSourceHistoryLength() {
+		return sourceHistoryLength;
+	}
+
+}
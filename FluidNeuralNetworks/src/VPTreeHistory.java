@@ -0,0 +1,257 @@
+import java.util.ArrayList;
+import java.util.Random;
+
+
+/**
+ * A History whose keys are indexed by vantage-point trees, so that get() can use the
+ * triangle inequality to skip (or count wholesale) entire subtrees instead of computing
+ * the distance to every stored key.  The counts are exactly the ones History.get returns.
+ *
+ * New keys go into a small unindexed buffer; when it fills up it becomes a tree, and trees
+ * of similar size are merged (like carries in a binary counter), so each key is re-indexed
+ * only O(log n) times even though keys keep arriving between queries.
+ *
+ * NOTE: distanceFrom is only a metric between keys of the same shape (same length, or all
+ * scalar), so if keys of different shapes are ever mixed, or a query has a different shape
+ * than the stored keys, we fall back to the linear scan in History.  Queries History can
+ * answer by exact matching (see History.setExactMatchRadius) go to History too.
+ */
+public class VPTreeHistory extends History {
+
+	// how many keys are collected before they are indexed
+	private static final int BUFFER_SIZE = 32;
+	// subtrees this small are just scanned
+	private static final int LEAF_SIZE = 16;
+	// distances are sums of thousands of doubles, so the bounds derived from them are
+	// widened by this (relative) amount before pruning; otherwise rounding could flip a
+	// key sitting right at the radius
+	private static final double TOLERANCE = 1e-9;
+
+	private ArrayList<VPTree> trees;
+	private ArrayList<HistoryKey> buffer;
+
+	// shape of the keys (HistoryKey.getSize()) and whether all keys so far have had it
+	private int keyShape;
+	private boolean uniformShape;
+
+	// for picking vantage points; deliberately NOT FNN.rand, so that indexing the
+	// history does not change the simulation
+	private Random rand = new Random(0);
+
+
+	public VPTreeHistory() {
+		super();
+		trees = new ArrayList<VPTree>();
+		buffer = new ArrayList<HistoryKey>();
+		uniformShape = true;
+	}
+
+
+	@Override
+	public Integer get(HistoryKey key, double neighborhoodSize) {
+		if (!uniformShape || getSize() == 0 || key.getSize() != keyShape || exactQuery(neighborhoodSize)) {
+			return super.get(key, neighborhoodSize);
+		}
+
+		int res = 0;
+		for (VPTree tree : trees) {
+			res += tree.count(key, neighborhoodSize);
+		}
+		for (HistoryKey k : buffer) {
+			if (k.boundedDistanceFrom(key, neighborhoodSize) < neighborhoodSize) {
+				res ++;
+			}
+		}
+		return res;
+	}
+
+
+	@Override
+	public void put(HistoryKey key) {
+		if (getSize() == 0) {
+			keyShape = key.getSize();
+		}
+		else if (key.getSize() != keyShape) {
+			uniformShape = false;
+		}
+		super.put(key);
+
+		if (!uniformShape) {
+			return;
+		}
+
+		buffer.add(key);
+		if (buffer.size() < BUFFER_SIZE) {
+			return;
+		}
+
+		// index the buffer, then merge with the previous trees as long as they are no bigger
+		ArrayList<HistoryKey> merged = new ArrayList<HistoryKey>(buffer);
+		buffer.clear();
+		while (!trees.isEmpty() && trees.get(trees.size() - 1).size() <= merged.size()) {
+			VPTree last = trees.remove(trees.size() - 1);
+			for (int i = 0; i < last.keys.length; i++) {
+				merged.add(last.keys[i]);
+			}
+		}
+		trees.add(new VPTree(merged.toArray(new HistoryKey[merged.size()]), rand));
+	}
+
+
+	// a static vantage-point tree over a fixed set of keys
+	private static class VPTree {
+
+		// the keys, reordered so that every subtree is a contiguous range
+		private HistoryKey[] keys;
+		private Node root;
+
+		// a subtree covers keys[lo, hi); for internal nodes keys[lo] is the vantage point,
+		// the inside child covers [lo + 1, mid) and the outside child covers [mid, hi)
+		private static class Node {
+			int lo;
+			int mid;
+			int hi;
+			// range of distances from the vantage point to the keys in each child
+			double innerMax;
+			double outerMin;
+			double outerMax;
+			Node inside;
+			Node outside;
+		}
+
+
+		VPTree(HistoryKey[] keys, Random rand) {
+			this.keys = keys;
+			double[] dist = new double[keys.length];
+			root = build(0, keys.length, dist, rand);
+		}
+
+
+		int size() {
+			return keys.length;
+		}
+
+
+		private Node build(int lo, int hi, double[] dist, Random rand) {
+			Node node = new Node();
+			node.lo = lo;
+			node.hi = hi;
+			if (hi - lo <= LEAF_SIZE) {
+				return node;
+			}
+
+			swap(lo, lo + rand.nextInt(hi - lo), dist);
+			HistoryKey vantage = keys[lo];
+			for (int i = lo + 1; i < hi; i++) {
+				dist[i] = vantage.distanceFrom(keys[i]);
+			}
+
+			// median split:  after this, everything in [lo + 1, mid) is no farther from the
+			// vantage point than anything in [mid, hi)
+			int mid = (lo + 1 + hi) / 2;
+			select(lo + 1, hi - 1, mid, dist);
+
+			node.mid = mid;
+			node.innerMax = 0;
+			for (int i = lo + 1; i < mid; i++) {
+				node.innerMax = Math.max(node.innerMax, dist[i]);
+			}
+			node.outerMin = Double.MAX_VALUE;
+			node.outerMax = 0;
+			for (int i = mid; i < hi; i++) {
+				node.outerMin = Math.min(node.outerMin, dist[i]);
+				node.outerMax = Math.max(node.outerMax, dist[i]);
+			}
+
+			node.inside = build(lo + 1, mid, dist, rand);
+			node.outside = build(mid, hi, dist, rand);
+			return node;
+		}
+
+
+		// number of keys at distance < radius from the given key
+		int count(HistoryKey key, double radius) {
+			return count(root, key, radius);
+		}
+
+
+		private int count(Node node, HistoryKey key, double radius) {
+			int res = 0;
+
+			if (node.inside == null) {
+				for (int i = node.lo; i < node.hi; i++) {
+					if (keys[i].boundedDistanceFrom(key, radius) < radius) {
+						res ++;
+					}
+				}
+				return res;
+			}
+
+			double d = keys[node.lo].distanceFrom(key);
+			if (d < radius) {
+				res ++;
+			}
+
+			// for a key p in a child, |d - dist(vantage, p)| <= dist(key, p) <= d + dist(vantage, p)
+			res += countChild(node.inside, key, radius, d, 0, node.innerMax);
+			res += countChild(node.outside, key, radius, d, node.outerMin, node.outerMax);
+			return res;
+		}
+
+
+		private int countChild(Node child, HistoryKey key, double radius, double d, double minDist, double maxDist) {
+			double slack = TOLERANCE * (d + maxDist);
+			double lowerBound = Math.max(d - maxDist, minDist - d);
+			double upperBound = d + maxDist;
+
+			if (lowerBound - slack >= radius) {
+				return 0;
+			}
+			if (upperBound + slack < radius) {
+				return child.hi - child.lo;
+			}
+			return count(child, key, radius);
+		}
+
+
+		// quickselect:  rearrange keys[lo..hi] (and their distances) so that position k
+		// holds the key that would be there if they were sorted by distance
+		private void select(int lo, int hi, int k, double[] dist) {
+			while (lo < hi) {
+				double pivot = dist[(lo + hi) >>> 1];
+				int i = lo;
+				int j = hi;
+				while (i <= j) {
+					while (dist[i] < pivot) i++;
+					while (dist[j] > pivot) j--;
+					if (i <= j) {
+						swap(i, j, dist);
+						i++;
+						j--;
+					}
+				}
+				if (k <= j) {
+					hi = j;
+				}
+				else if (k >= i) {
+					lo = i;
+				}
+				else {
+					return;
+				}
+			}
+		}
+
+
+		private void swap(int i, int j, double[] dist) {
+			HistoryKey tempKey = keys[i];
+			keys[i] = keys[j];
+			keys[j] = tempKey;
+			double tempDist = dist[i];
+			dist[i] = dist[j];
+			dist[j] = tempDist;
+		}
+
+	}
+
+}
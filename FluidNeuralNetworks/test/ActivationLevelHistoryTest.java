@@ -0,0 +1,257 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Test;
+
+
+/**
+ * Every encoding of ActivationLevelHistory gives back what was set to within its maxError,
+ * reading whole ranges as well as single values, and after being written and read.
+ */
+public class ActivationLevelHistoryTest {
+
+	// not a multiple of the DELTA block size, so the last block is partly full
+	private static final int LENGTH = 1000;
+
+
+	// levels in [-1, 1]:  the ends, 0 and values near it, big jumps (the longest DELTA
+	// differences) and runs of slowly changing levels, as in a simulation
+	private static double[] levels(long seed) {
+
+		Random random = new Random(seed);
+		double[] levels = new double[LENGTH];
+		double level = 0.0;
+		for (int i = 0 ; i < LENGTH ; ++i) {
+			int kind = random.nextInt(8);
+			if (kind == 0) {
+				level = random.nextBoolean() ? 1.0 : -1.0;
+			}
+			else if (kind == 1) {
+				level = -level;
+			}
+			else if (kind == 2) {
+				level = (random.nextDouble() - 0.5) * 1e-6;
+			}
+			else if (kind == 3) {
+				level = 2.0 * random.nextDouble() - 1.0;
+			}
+			else {
+				level = Math.max(-1.0, Math.min(1.0, level + 0.01 * (random.nextDouble() - 0.5)));
+			}
+			levels[i] = level;
+		}
+		levels[1] = 0.0;
+		levels[2] = -0.0;
+		return levels;
+
+	}
+
+
+	private static ActivationLevelHistory filled(ActivationLevelHistory.Encoding encoding, double[] levels, int count) {
+		ActivationLevelHistory history = ActivationLevelHistory.create(encoding, levels.length);
+		for (int i = 0 ; i < count ; ++i) {
+			history.set(i, levels[i]);
+		}
+		return history;
+	}
+
+
+	private static void assertLevels(ActivationLevelHistory history, double[] levels, int from, int to) {
+
+		double maxError = history.maxError();
+		for (int i = from ; i < to ; ++i) {
+			assertEquals(history.getEncoding() + " level " + i, levels[i], history.get(i), maxError);
+		}
+
+		double[] range = history.toArray(from, to);
+		assertEquals(to - from, range.length);
+		for (int i = from ; i < to ; ++i) {
+			// toArray decodes the same values as get
+			assertEquals(history.getEncoding() + " toArray " + i, history.get(i), range[i - from], 0.0);
+		}
+
+	}
+
+
+	@Test
+	public void everyEncodingGivesBackTheLevelsToWithinMaxError() {
+
+		double[] levels = levels(1);
+		for (ActivationLevelHistory.Encoding encoding : ActivationLevelHistory.Encoding.values()) {
+			ActivationLevelHistory history = filled(encoding, levels, LENGTH);
+			assertEquals(encoding, history.getEncoding());
+			assertEquals(LENGTH, history.length());
+			assertLevels(history, levels, 0, LENGTH);
+			// ranges starting and ending inside DELTA blocks, on block boundaries, and empty
+			assertLevels(history, levels, 130, 700);
+			assertLevels(history, levels, 64, 128);
+			assertLevels(history, levels, 999, 1000);
+			assertLevels(history, levels, 500, 500);
+		}
+
+	}
+
+
+	@Test
+	public void maxErrorIsTheDocumentedBound() {
+
+		assertEquals(0.0, ActivationLevelHistory.create(ActivationLevelHistory.Encoding.DOUBLE, 1).maxError(), 0.0);
+		assertEquals(0x1.0p-25, ActivationLevelHistory.create(ActivationLevelHistory.Encoding.FLOAT32, 1).maxError(), 0.0);
+		assertEquals(0x1.0p-12, ActivationLevelHistory.create(ActivationLevelHistory.Encoding.FLOAT16, 1).maxError(), 0.0);
+		assertEquals(0.5 / 32767, ActivationLevelHistory.create(ActivationLevelHistory.Encoding.QUANTIZED, 1).maxError(), 0.0);
+		assertEquals(0.5 / 32767, ActivationLevelHistory.create(ActivationLevelHistory.Encoding.DELTA, 1).maxError(), 0.0);
+
+	}
+
+
+	@Test
+	public void float16IsExactForHalfPrecisionValuesAndKeepsRelativePrecisionNearZero() {
+
+		ActivationLevelHistory history = ActivationLevelHistory.create(ActivationLevelHistory.Encoding.FLOAT16, 8);
+		// representable exactly:  powers of two, a fraction with 10 bits, the smallest subnormal
+		double[] exact = { 1.0, -1.0, 0.5, -0.25, 1.0 + 0x1.0p-10, 0x1.0p-24, -0x1.0p-14, 0.0 };
+		for (int i = 0 ; i < exact.length ; ++i) {
+			history.set(i, exact[i]);
+		}
+		for (int i = 0 ; i < exact.length ; ++i) {
+			assertEquals(exact[i], history.get(i), 0.0);
+		}
+
+		// a small level keeps its 11 significant bits
+		history.set(0, 1e-3);
+		assertEquals(1e-3, history.get(0), 1e-3 * 0x1.0p-11);
+
+	}
+
+
+	@Test
+	public void quantizedAndDeltaClampLevelsOutsideTheRangeOfTanh() {
+
+		for (ActivationLevelHistory.Encoding encoding : new ActivationLevelHistory.Encoding[] {
+				ActivationLevelHistory.Encoding.QUANTIZED, ActivationLevelHistory.Encoding.DELTA }) {
+			ActivationLevelHistory history = ActivationLevelHistory.create(encoding, 2);
+			history.set(0, 3.0);
+			history.set(1, -3.0);
+			assertEquals(1.0, history.get(0), 0.0);
+			assertEquals(-1.0, history.get(1), 0.0);
+		}
+
+	}
+
+
+	@Test
+	public void deltaOverwritesTheLastValue() {
+
+		double[] levels = levels(2);
+		ActivationLevelHistory history = ActivationLevelHistory.create(ActivationLevelHistory.Encoding.DELTA, LENGTH);
+		Random random = new Random(3);
+		for (int i = 0 ; i < LENGTH ; ++i) {
+			// a value or two that get overwritten first, at the start of blocks (where the
+			// block index is recorded) and elsewhere, sometimes with a long difference
+			if (i % 64 == 0 || random.nextInt(4) == 0) {
+				history.set(i, 2.0 * random.nextDouble() - 1.0);
+				if (random.nextBoolean()) {
+					history.set(i, random.nextBoolean() ? 1.0 : -1.0);
+				}
+			}
+			history.set(i, levels[i]);
+		}
+		assertLevels(history, levels, 0, LENGTH);
+		assertLevels(history, levels, 64, 200);
+		assertLevels(history, levels, 700, 1000);
+
+	}
+
+
+	@Test
+	public void deltaValuesNotSetYetAreZero() {
+
+		ActivationLevelHistory history = ActivationLevelHistory.create(ActivationLevelHistory.Encoding.DELTA, 200);
+		for (int i = 0 ; i < 70 ; ++i) {
+			history.set(i, 0.5);
+		}
+		assertEquals(0.0, history.get(70), 0.0);
+		assertEquals(0.0, history.get(199), 0.0);
+		double[] range = history.toArray(60, 80);
+		assertEquals(0.5, range[9], history.maxError());
+		assertEquals(0.0, range[10], 0.0);
+		assertEquals(0.0, history.toArray(100, 150)[0], 0.0);
+
+	}
+
+
+	@Test
+	public void deltaHasToBeSetInOrder() {
+
+		ActivationLevelHistory history = ActivationLevelHistory.create(ActivationLevelHistory.Encoding.DELTA, 10);
+		history.set(0, 0.1);
+		history.set(1, 0.2);
+		try {
+			history.set(3, 0.3);
+			fail("set past the end of a DELTA history");
+		}
+		catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			history.set(0, 0.3);
+			fail("set before the last value of a DELTA history");
+		}
+		catch (IllegalArgumentException e) {
+			// expected
+		}
+
+	}
+
+
+	@Test
+	public void writeAndReadKeepTheValuesSetSoFar() throws IOException {
+
+		double[] levels = levels(4);
+		int count = 700;
+		for (ActivationLevelHistory.Encoding encoding : ActivationLevelHistory.Encoding.values()) {
+
+			ActivationLevelHistory history = filled(encoding, levels, count);
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			history.write(new DataOutputStream(bytes), count);
+			ActivationLevelHistory read = ActivationLevelHistory.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+			assertEquals(encoding, read.getEncoding());
+			assertEquals(LENGTH, read.length());
+			for (int i = 0 ; i < LENGTH ; ++i) {
+				assertEquals(encoding + " level " + i, i < count ? history.get(i) : 0.0, read.get(i), 0.0);
+			}
+
+			// and it can carry on where it left off (for DELTA, from the saved last code and
+			// block index)
+			for (int i = count ; i < LENGTH ; ++i) {
+				read.set(i, levels[i]);
+			}
+			assertLevels(read, levels, 0, LENGTH);
+
+		}
+
+	}
+
+
+	@Test
+	public void smallerEncodingsTakeLessMemory() {
+
+		double[] levels = levels(5);
+		long doubleBytes = filled(ActivationLevelHistory.Encoding.DOUBLE, levels, LENGTH).numBytes();
+		assertEquals(8L * LENGTH, doubleBytes);
+		assertTrue(filled(ActivationLevelHistory.Encoding.FLOAT16, levels, LENGTH).numBytes() < doubleBytes);
+		assertTrue(filled(ActivationLevelHistory.Encoding.QUANTIZED, levels, LENGTH).numBytes() < doubleBytes);
+		assertTrue(filled(ActivationLevelHistory.Encoding.DELTA, levels, LENGTH).numBytes() < doubleBytes);
+
+	}
+
+}
@@ -0,0 +1,176 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+
+/**
+ * A network restored from a checkpoint (in memory or from a file) follows the same
+ * trajectory as the original from there on, and forks follow their own.
+ */
+public class CheckpointTest {
+
+	private static final int NUM_ITERATIONS = 400;
+	private static final int NUM_ITERATIONS_DISCARDED = 100;
+	// where the snapshot is taken (after the burn-in)
+	private static final int CUT = 150;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+
+	private static FluidNN network(RandomStream.Generator generator, ActivationLevelHistory.Encoding encoding) {
+		SimulationContext context = new SimulationContext(RandomStream.create(generator, 11), NUM_ITERATIONS,
+				NUM_ITERATIONS_DISCARDED, 0.2, 0.0, 1e-16, 0.2, 0.01);
+		context.setHistoryEncoding(encoding);
+		return new FluidNN(12, 12, 60, context);
+	}
+
+
+	private static void run(FluidNN fnn, int from, int to, FNN.FNN_BoundaryModel boundaryModel) {
+		for (int iteration = from ; iteration < to ; ++iteration) {
+			fnn.getContext().setIteration(iteration);
+			fnn.moveAndUpdateNeurons(FNN.Topology.FNN_MOORE, FNN.SelfModel.INCLUDE_SELF, boundaryModel,
+					FNN.FNN_ActivityModel.ALL_NEURONS);
+		}
+	}
+
+
+	// the same neurons in the same places with the same levels and histories, and the same counts
+	private static void assertSameState(FluidNN expected, FluidNN actual) {
+
+		Neuron[] expectedNeurons = expected.getNeuronList();
+		Neuron[] actualNeurons = actual.getNeuronList();
+		assertEquals(expectedNeurons.length, actualNeurons.length);
+		for (int n = 0 ; n < expectedNeurons.length ; ++n) {
+			Neuron e = expectedNeurons[n];
+			Neuron a = actualNeurons[n];
+			assertEquals("neuron " + n, e.getID(), a.getID());
+			assertEquals("neuron " + n, e.getRow(), a.getRow());
+			assertEquals("neuron " + n, e.getCol(), a.getCol());
+			assertSame("neuron " + n, a, actual.getNeuronAt(a.getRow(), a.getCol()));
+			assertEquals("neuron " + n, e.getActivationLevel(), a.getActivationLevel(), 0.0);
+			assertEquals("neuron " + n, e.active(), a.active());
+			assertArrayEquals("neuron " + n, e.getActivationLevelHistory().toArray(), a.getActivationLevelHistory().toArray(), 0.0);
+			assertArrayEquals("neuron " + n, e.getActiveInactiveHistory().getWords(), a.getActiveInactiveHistory().getWords());
+		}
+
+		SimulationContext expectedContext = expected.getContext();
+		SimulationContext actualContext = actual.getContext();
+		assertEquals(expectedContext.getIteration(), actualContext.getIteration());
+		assertEquals(expectedContext.getNumMoveOpportunities(), actualContext.getNumMoveOpportunities());
+		assertEquals(expectedContext.getNumTimesActive(), actualContext.getNumTimesActive());
+		assertEquals(expectedContext.getNumActualMoves(), actualContext.getNumActualMoves());
+
+	}
+
+
+	@Test
+	public void restoredNetworkCarriesOnAsTheOriginalWould() throws IOException {
+
+		for (RandomStream.Generator generator : RandomStream.Generator.values()) {
+			for (ActivationLevelHistory.Encoding encoding : ActivationLevelHistory.Encoding.values()) {
+				for (FNN.FNN_BoundaryModel boundaryModel : FNN.FNN_BoundaryModel.values()) {
+
+					FluidNN original = network(generator, encoding);
+					run(original, 0, CUT, boundaryModel);
+					byte[] snapshot = Checkpoint.toBytes(original);
+					run(original, CUT, NUM_ITERATIONS, boundaryModel);
+
+					FluidNN restored = Checkpoint.fromBytes(snapshot);
+					// nothing is lost or added by reading it
+					assertArrayEquals(generator + " " + encoding, snapshot, Checkpoint.toBytes(restored));
+					run(restored, CUT, NUM_ITERATIONS, boundaryModel);
+					assertSameState(original, restored);
+
+				}
+			}
+		}
+
+	}
+
+
+	@Test
+	public void restoredNetworkCarriesOnWithTheParallelUpdate() throws IOException {
+
+		ForkJoinPool pool = new ForkJoinPool(2);
+		try {
+			FluidNN original = network(RandomStream.Generator.PHILOX, ActivationLevelHistory.Encoding.DOUBLE);
+			original.setParallelUpdate(pool);
+			run(original, 0, CUT, FNN.FNN_BoundaryModel.TORUS);
+			byte[] snapshot = Checkpoint.toBytes(original);
+			run(original, CUT, NUM_ITERATIONS, FNN.FNN_BoundaryModel.TORUS);
+
+			FluidNN restored = Checkpoint.fromBytes(snapshot);
+			restored.setParallelUpdate(pool);
+			run(restored, CUT, NUM_ITERATIONS, FNN.FNN_BoundaryModel.TORUS);
+			assertSameState(original, restored);
+		}
+		finally {
+			pool.shutdown();
+		}
+
+	}
+
+
+	@Test
+	public void networkLoadedFromAFileCarriesOnAsTheOriginalWould() throws IOException {
+
+		FluidNN original = network(RandomStream.Generator.SPLITTABLE_RANDOM, ActivationLevelHistory.Encoding.DELTA);
+		run(original, 0, CUT, FNN.FNN_BoundaryModel.LATTICE);
+		File file = folder.newFile("checkpoint.bin");
+		Checkpoint.save(original, file);
+
+		FluidNN loaded = Checkpoint.load(file);
+		run(original, CUT, NUM_ITERATIONS, FNN.FNN_BoundaryModel.LATTICE);
+		run(loaded, CUT, NUM_ITERATIONS, FNN.FNN_BoundaryModel.LATTICE);
+		assertSameState(original, loaded);
+
+	}
+
+
+	@Test
+	public void forksWithTheSameSeedAgreeAndForksWithDifferentSeedsDiverge() throws IOException {
+
+		FluidNN original = network(RandomStream.Generator.JAVA_RANDOM, ActivationLevelHistory.Encoding.DOUBLE);
+		run(original, 0, CUT, FNN.FNN_BoundaryModel.LATTICE);
+		byte[] snapshot = Checkpoint.toBytes(original);
+
+		FluidNN fork1 = Checkpoint.fork(snapshot, 1);
+		FluidNN fork1Again = Checkpoint.fork(snapshot, 1);
+		FluidNN fork2 = Checkpoint.fork(snapshot, 2);
+		// each starts where the original was
+		assertSameState(original, fork1);
+		assertSameState(original, fork2);
+
+		run(fork1, CUT, NUM_ITERATIONS, FNN.FNN_BoundaryModel.LATTICE);
+		run(fork1Again, CUT, NUM_ITERATIONS, FNN.FNN_BoundaryModel.LATTICE);
+		run(fork2, CUT, NUM_ITERATIONS, FNN.FNN_BoundaryModel.LATTICE);
+		assertSameState(fork1, fork1Again);
+		assertFalse(Arrays.equals(Checkpoint.toBytes(fork1), Checkpoint.toBytes(fork2)));
+
+	}
+
+
+	@Test
+	public void somethingElseIsNotReadAsACheckpoint() {
+		try {
+			Checkpoint.fromBytes(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+			fail("read something that isn't a checkpoint");
+		}
+		catch (IOException e) {
+			// expected
+		}
+	}
+
+}
@@ -0,0 +1,185 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.Test;
+
+
+/**
+ * A FluidNN with the SPARSE grid model follows the same trajectory as one with the DENSE
+ * model, and SparseGrid keeps track of its cells as a map would.
+ */
+public class SparseGridTest {
+
+	private static final int NUM_ITERATIONS = 100;
+
+
+	private static FluidNN run(int numRows, int numCols, int numNeurons, long seed, FluidNN.GridModel gridModel,
+			FNN.Topology topology, FNN.SelfModel selfModel, FNN.FNN_BoundaryModel boundaryModel,
+			FNN.FNN_ActivityModel activityModel) {
+
+		SimulationContext context = new SimulationContext(RandomStream.create(RandomStream.Generator.JAVA_RANDOM, seed),
+				NUM_ITERATIONS, 10, 0.5, 0.0, 1e-16, 0.2, 0.05);
+		FluidNN fnn = new FluidNN(numRows, numCols, numNeurons, context, gridModel);
+		for (int iteration = 1 ; iteration <= NUM_ITERATIONS ; ++iteration) {
+			context.setIteration(iteration);
+			fnn.moveAndUpdateNeurons(topology, selfModel, boundaryModel, activityModel);
+		}
+		return fnn;
+
+	}
+
+
+	// every neuron is where the grid says it is, and there is nothing else in the grid
+	private static void assertGridHoldsTheNeurons(FluidNN fnn) {
+
+		for (Neuron neuron : fnn.getNeuronList()) {
+			assertSame(neuron, fnn.getNeuronAt(neuron.getRow(), neuron.getCol()));
+		}
+		int numOccupied = 0;
+		for (int row = 0 ; row < fnn.getNumRows() ; ++row) {
+			for (int col = 0 ; col < fnn.getNumCols() ; ++col) {
+				if (fnn.getNeuronAt(row, col) != null)
+					++numOccupied;
+			}
+		}
+		assertEquals(fnn.getNeuronList().length, numOccupied);
+
+	}
+
+
+	private static void assertSameRun(String name, FluidNN dense, FluidNN sparse) {
+
+		Neuron[] denseNeurons = dense.getNeuronList();
+		Neuron[] sparseNeurons = sparse.getNeuronList();
+		assertEquals(name, denseNeurons.length, sparseNeurons.length);
+		for (int n = 0 ; n < denseNeurons.length ; ++n) {
+			assertEquals(name, denseNeurons[n].getRow(), sparseNeurons[n].getRow());
+			assertEquals(name, denseNeurons[n].getCol(), sparseNeurons[n].getCol());
+			assertEquals(name, denseNeurons[n].getActivationLevel(), sparseNeurons[n].getActivationLevel(), 0.0);
+			assertEquals(name, denseNeurons[n].active(), sparseNeurons[n].active());
+			assertArrayEquals(name, denseNeurons[n].getActiveInactiveHistory().getWords(),
+					sparseNeurons[n].getActiveInactiveHistory().getWords());
+		}
+		assertEquals(name, dense.getContext().getNumActualMoves(), sparse.getContext().getNumActualMoves());
+		assertEquals(name, dense.getContext().getNumTimesActive(), sparse.getContext().getNumTimesActive());
+
+	}
+
+
+	@Test
+	public void sparseRunsAreTheSameAsDenseRuns() {
+
+		// including lattices a row or a column wide and tiny tori, where a neighbor can be
+		// the same cell from two sides, and full lattices, where no one can move
+		int[][] sizes = { { 1, 1 }, { 1, 5 }, { 2, 2 }, { 2, 3 }, { 3, 3 }, { 10, 10 }, { 7, 13 }, { 20, 20 } };
+		double[] densities = { 0.1, 0.5, 0.9, 1.0 };
+		long seed = 5;
+		for (int[] size : sizes) {
+			for (double density : densities) {
+				int numNeurons = Math.max(1, (int) Math.round(density * size[0] * size[1]));
+				for (FNN.Topology topology : FNN.Topology.values()) {
+					for (FNN.SelfModel selfModel : FNN.SelfModel.values()) {
+						for (FNN.FNN_BoundaryModel boundaryModel : FNN.FNN_BoundaryModel.values()) {
+							for (FNN.FNN_ActivityModel activityModel : FNN.FNN_ActivityModel.values()) {
+
+								String name = size[0] + "x" + size[1] + " " + density + " " + topology + " " + selfModel
+										+ " " + boundaryModel + " " + activityModel;
+								FluidNN dense = run(size[0], size[1], numNeurons, seed, FluidNN.GridModel.DENSE,
+										topology, selfModel, boundaryModel, activityModel);
+								FluidNN sparse = run(size[0], size[1], numNeurons, seed, FluidNN.GridModel.SPARSE,
+										topology, selfModel, boundaryModel, activityModel);
+								assertEquals(FluidNN.GridModel.SPARSE, sparse.getGridModel());
+								assertGridHoldsTheNeurons(sparse);
+								assertSameRun(name, dense, sparse);
+								++seed;
+
+							}
+						}
+					}
+				}
+			}
+		}
+
+	}
+
+
+	@Test
+	public void sparseNetworkIsRestoredSparse() throws IOException {
+
+		FluidNN sparse = run(30, 30, 90, 1, FluidNN.GridModel.SPARSE, FNN.Topology.FNN_MOORE, FNN.SelfModel.INCLUDE_SELF,
+				FNN.FNN_BoundaryModel.TORUS, FNN.FNN_ActivityModel.ALL_NEURONS);
+		FluidNN restored = Checkpoint.fromBytes(Checkpoint.toBytes(sparse));
+		assertEquals(FluidNN.GridModel.SPARSE, restored.getGridModel());
+		assertGridHoldsTheNeurons(restored);
+		assertSameRun("restored", sparse, restored);
+
+	}
+
+
+	@Test
+	public void gridKeepsTrackOfItsCellsAsAMapWould() {
+
+		int numRows = 300;
+		int numCols = 301;
+		Neuron wall = new Neuron(-1, -1, -1);
+		// starts too small, so it has to grow
+		SparseGrid grid = new SparseGrid(numRows, numCols, 0, wall);
+		HashMap<Long, Neuron> cells = new HashMap<Long, Neuron>();
+		Neuron[] neurons = new Neuron[50];
+		for (int n = 0 ; n < neurons.length ; ++n) {
+			neurons[n] = new Neuron(n, 0, 0);
+		}
+
+		Random random = new Random(1);
+		for (int i = 0 ; i < 200000 ; ++i) {
+			int row = random.nextInt(numRows);
+			int col = random.nextInt(numCols);
+			Long cell = Long.valueOf((long) row * numCols + col);
+			// emptying cells moves others back in the table
+			if (random.nextInt(3) == 0) {
+				grid.put(row, col, null);
+				cells.remove(cell);
+			}
+			else {
+				Neuron neuron = neurons[random.nextInt(neurons.length)];
+				grid.put(row, col, neuron);
+				cells.put(cell, neuron);
+			}
+			int queryRow = random.nextInt(numRows);
+			int queryCol = random.nextInt(numCols);
+			assertSame(cells.get(Long.valueOf((long) queryRow * numCols + queryCol)), grid.get(queryRow, queryCol));
+		}
+		assertEquals(cells.size(), grid.size());
+
+	}
+
+
+	@Test
+	public void neighborsOffTheLatticeAreTheWallOrWrapAround() {
+
+		Neuron wall = new Neuron(-1, -1, -1);
+		Neuron corner = new Neuron(0, 0, 0);
+		Neuron opposite = new Neuron(1, 4, 5);
+		SparseGrid grid = new SparseGrid(5, 6, 2, wall);
+		grid.put(0, 0, corner);
+		grid.put(4, 5, opposite);
+
+		grid.setBoundaryModel(FNN.FNN_BoundaryModel.LATTICE);
+		assertSame(wall, grid.getNeighbor(0, 0, -1, -1));
+		assertSame(wall, grid.getNeighbor(4, 5, 1, 0));
+		assertNull(grid.getNeighbor(0, 0, 1, 1));
+
+		grid.setBoundaryModel(FNN.FNN_BoundaryModel.TORUS);
+		assertSame(opposite, grid.getNeighbor(0, 0, -1, -1));
+		assertSame(corner, grid.getNeighbor(4, 5, 1, 1));
+		assertNull(grid.getNeighbor(0, 0, -1, 0));
+
+	}
+
+}
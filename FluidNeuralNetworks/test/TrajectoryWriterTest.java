@@ -0,0 +1,110 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+
+/**
+ * With FNN.trajectoryDirectory set, runExperiment writes the trajectory of every run, and
+ * what is read back is what the run did.
+ */
+public class TrajectoryWriterTest {
+
+	private static final int NUM_RUNS = 2;
+	private static final int LATTICE_SIZE = 6;
+	private static final double DENSITY = 0.5;
+	private static final int NUM_NEURONS = 18;
+	private static final double GAIN = 0.2;
+	private static final double SPONT_ACT_LEVEL = 0.2;
+	private static final double SPONT_ACT_PROB = 0.01;
+	private static final long SEED = 42;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+
+	@After
+	public void stopWritingTrajectories() {
+		FNN.trajectoryDirectory = null;
+	}
+
+
+	private static String runExperiment() {
+		return FNN.runExperiment(NUM_RUNS, LATTICE_SIZE, DENSITY, NUM_NEURONS, GAIN, SPONT_ACT_LEVEL, SPONT_ACT_PROB,
+				1e-16, 0.0, SEED);
+	}
+
+
+	// run r of the experiment, as runExperiment runs it
+	private static FluidNN rerun(int run) {
+
+		SimulationContext context = new SimulationContext(RandomStream.create(FNN.generator, SEED + run),
+				FNN.NUM_ITERATIONS, FNN.NUM_ITERATIONS_DISCARDED, GAIN, 0.0, 1e-16, SPONT_ACT_LEVEL, SPONT_ACT_PROB);
+		context.setHistoryEncoding(FNN.historyEncoding);
+		FluidNN fnn = new FluidNN(LATTICE_SIZE, LATTICE_SIZE, NUM_NEURONS, context, FNN.gridModel);
+		for (int iteration = 1 ; iteration <= context.getNumIterations() ; ++iteration) {
+			context.setIteration(iteration);
+			fnn.moveAndUpdateNeurons(FNN.Topology.FNN_MOORE, FNN.SelfModel.INCLUDE_SELF, FNN.FNN_BoundaryModel.LATTICE,
+					FNN.FNN_ActivityModel.ALL_NEURONS);
+		}
+		return fnn;
+
+	}
+
+
+	@Test
+	public void runExperimentWritesEveryRunWithoutChangingItsResults() throws IOException {
+
+		String row = runExperiment();
+
+		File directory = new File(folder.getRoot(), "trajectories");
+		FNN.trajectoryDirectory = directory;
+		assertEquals(row, runExperiment());
+
+		for (int run = 0 ; run < NUM_RUNS ; ++run) {
+
+			File file = FNN.trajectoryFile(directory, LATTICE_SIZE, DENSITY, GAIN, SPONT_ACT_LEVEL, SPONT_ACT_PROB, run);
+			assertTrue(file.getName(), file.isFile());
+			TrajectoryReader trajectory = new TrajectoryReader(file);
+			try {
+				assertEquals(FNN.NUM_ITERATIONS, trajectory.getNumSteps());
+				assertEquals(SEED + run, trajectory.getSeed());
+				assertEquals(FNN.generator, trajectory.getGenerator());
+				assertEquals(LATTICE_SIZE, trajectory.getNumRows());
+				assertEquals(LATTICE_SIZE, trajectory.getNumCols());
+				assertEquals(NUM_NEURONS, trajectory.getNumNeurons());
+				assertEquals(1, trajectory.getIteration(0));
+				assertEquals(FNN.NUM_ITERATIONS, trajectory.getIteration(trajectory.getNumSteps() - 1));
+
+				// the last step is where the run ended, and the histories over data collection
+				// are the ones the run recorded
+				FluidNN fnn = rerun(run);
+				Neuron[] neurons = fnn.getNeuronList();
+				int lastStep = trajectory.getNumSteps() - 1;
+				int firstStep = trajectory.findStep(trajectory.getNumIterationsDiscarded() + 1);
+				for (int n = 0 ; n < NUM_NEURONS ; ++n) {
+					assertEquals(neurons[n].getRow(), trajectory.getRow(lastStep, n));
+					assertEquals(neurons[n].getCol(), trajectory.getCol(lastStep, n));
+					assertEquals(neurons[n].getActivationLevel(), trajectory.getActivationLevel(lastStep, n), 0.0);
+					assertEquals(neurons[n].active(), trajectory.active(lastStep, n));
+					assertArrayEquals(neurons[n].getActivationLevelHistory().toArray(),
+							trajectory.getActivationLevelHistory(n, firstStep, trajectory.getNumSteps(),
+									ActivationLevelHistory.Encoding.DOUBLE).toArray(), 0.0);
+				}
+			}
+			finally {
+				trajectory.close();
+			}
+
+		}
+
+	}
+
+}
@@ -0,0 +1,127 @@
+package fnn.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * The per-iteration work of a FluidNN:  a whole iteration (moveAndUpdateNeurons), and the
+ * pieces of it, one neuron at a time (getSumActivations, moveMoore, hasNeighbors), on networks
+ * from 9 x 9 to 2048 x 2048 cells.
+ *
+ * The network is built once per trial and then just keeps going, as in a run; the context
+ * stays at iteration 1, before data collection starts, so no histories grow.  The per-neuron
+ * benchmarks go through the neurons in list order, one per call.  The largest networks need
+ * a big heap (a 2048 x 2048 lattice at density 0.5 has about two million neurons).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+public class FluidNNBenchmark {
+
+	@Param({ "9", "64", "256", "1024", "2048" })
+	public int latticeSize;
+
+	@Param({ "0.1", "0.5" })
+	public double density;
+
+	// FNN_GBEST sums over every neuron, so it is left out of the default runs
+	@Param({ "FNN_MOORE", "FNN_vonNEUMANN" })
+	public String topology;
+
+	@Param({ "LATTICE", "TORUS" })
+	public String boundaryModel;
+
+	private Object fnn;
+	private Object[] neurons;
+	private int next;
+
+	private Object topologyConstant;
+	private Object selfModel;
+	private Object boundaryModelConstant;
+	private Object activityModel;
+
+
+	@Setup
+	public void setUp() throws Throwable {
+
+		topologyConstant = Fnn.enumConstant(Fnn.TOPOLOGY, topology);
+		selfModel = Fnn.enumConstant(Fnn.SELF_MODEL, "INCLUDE_SELF");
+		boundaryModelConstant = Fnn.enumConstant(Fnn.BOUNDARY_MODEL, boundaryModel);
+		activityModel = Fnn.enumConstant(Fnn.ACTIVITY_MODEL, "ALL_NEURONS");
+
+		fnn = newNetwork(latticeSize, density, 0L);
+		neurons = (Object[]) (Object) Fnn.GET_NEURON_LIST.invokeExact(fnn);
+		Fnn.SET_HALO_BOUNDARY_MODEL.invokeExact(fnn, boundaryModelConstant);
+		next = 0;
+
+		// settle down a little, so the activation levels aren't the random initial ones
+		for (int i = 0 ; i < 10 ; ++i) {
+			Fnn.MOVE_AND_UPDATE_NEURONS.invokeExact(fnn, topologyConstant, selfModel, boundaryModelConstant, activityModel);
+		}
+
+	}
+
+
+	// a network of the given size and density, with the parameters of FNN.main, whose
+	// histories are a single iteration long (the context is left at iteration 1)
+	static Object newNetwork(int latticeSize, double density, long seed) throws Throwable {
+
+		Object rand = (Object) Fnn.CREATE_RANDOM_STREAM.invokeExact(Fnn.enumConstant(Fnn.GENERATOR, "JAVA_RANDOM"), seed);
+		Object context = (Object) Fnn.NEW_SIMULATION_CONTEXT.invokeExact(rand, 2, 1, 0.2, 0.0, 1e-16, 0.2, 0.01);
+		Fnn.SET_ITERATION.invokeExact(context, 1);
+		int numNeurons = Math.max(1, (int) (density * latticeSize * latticeSize));
+		return (Object) Fnn.NEW_FLUID_NN.invokeExact(latticeSize, latticeSize, numNeurons, context);
+
+	}
+
+
+	private Object nextNeuron() {
+		Object neuron = neurons[next];
+		next = next + 1 == neurons.length ? 0 : next + 1;
+		return neuron;
+	}
+
+
+	// one whole iteration:  update every neuron, then move every active one
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public void moveAndUpdateNeurons() throws Throwable {
+		Fnn.MOVE_AND_UPDATE_NEURONS.invokeExact(fnn, topologyConstant, selfModel, boundaryModelConstant, activityModel);
+	}
+
+
+	@Benchmark
+	public double getSumActivations() throws Throwable {
+		return (double) Fnn.GET_SUM_ACTIVATIONS.invokeExact(fnn, nextNeuron(), topologyConstant, selfModel, boundaryModelConstant,
+				activityModel);
+	}
+
+
+	// always Moore, whatever the topology
+	@Benchmark
+	public boolean moveMoore() throws Throwable {
+		return (boolean) Fnn.MOVE_MOORE.invokeExact(fnn, nextNeuron(), boundaryModelConstant);
+	}
+
+
+	@Benchmark
+	public boolean hasNeighbors() throws Throwable {
+		return (boolean) Fnn.HAS_NEIGHBORS.invokeExact(fnn, nextNeuron(), boundaryModelConstant);
+	}
+
+}
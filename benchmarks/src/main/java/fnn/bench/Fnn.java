@@ -0,0 +1,127 @@
+package fnn.bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+
+/**
+ * The simulation's classes are all in the default package, which code in a package can't
+ * name (and JMH won't take benchmarks in the default package), so the benchmarks call them
+ * through method handles, looked up once, with every simulation type erased to Object.
+ *
+ * The handles are static finals, so the JIT treats them as constants, and invokeExact on
+ * them compiles down to a direct call plus a cast per argument; what's measured is the
+ * simulation's code, not the bridge.  Callers have to match the erased types exactly:
+ * arguments of simulation types passed as Object, results cast to Object, double, etc.
+ */
+final class Fnn {
+
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+
+	static final Class<?> FNN = load("FNN");
+	static final Class<?> FLUID_NN = load("FluidNN");
+	static final Class<?> NEURON = load("Neuron");
+	static final Class<?> SIMULATION_CONTEXT = load("SimulationContext");
+	static final Class<?> RANDOM_STREAM = load("RandomStream");
+	static final Class<?> GENERATOR = load("RandomStream$Generator");
+	static final Class<?> TOPOLOGY = load("FNN$Topology");
+	static final Class<?> SELF_MODEL = load("FNN$SelfModel");
+	static final Class<?> BOUNDARY_MODEL = load("FNN$FNN_BoundaryModel");
+	static final Class<?> ACTIVITY_MODEL = load("FNN$FNN_ActivityModel");
+	static final Class<?> HISTORY = load("History");
+	static final Class<?> HISTORY_KEY = load("HistoryKey");
+
+	// (Generator, long) -> RandomStream
+	static final MethodHandle CREATE_RANDOM_STREAM = staticMethod(RANDOM_STREAM, "create", RANDOM_STREAM, GENERATOR, long.class);
+	// (rand, numIterations, numIterationsDiscarded, gain, sumNeighborActivationsThreshold,
+	//  activationThreshold, spontaneousActivationLevel, spontaneousActivationProbability)
+	static final MethodHandle NEW_SIMULATION_CONTEXT = constructor(SIMULATION_CONTEXT, RANDOM_STREAM, int.class, int.class,
+			double.class, double.class, double.class, double.class, double.class);
+	static final MethodHandle SET_ITERATION = method(SIMULATION_CONTEXT, "setIteration", void.class, int.class);
+
+	// (numRows, numCols, numNeurons, context)
+	static final MethodHandle NEW_FLUID_NN = constructor(FLUID_NN, int.class, int.class, int.class, SIMULATION_CONTEXT);
+	static final MethodHandle MOVE_AND_UPDATE_NEURONS = method(FLUID_NN, "moveAndUpdateNeurons", void.class,
+			TOPOLOGY, SELF_MODEL, BOUNDARY_MODEL, ACTIVITY_MODEL);
+	static final MethodHandle GET_SUM_ACTIVATIONS = method(FLUID_NN, "getSumActivations", double.class,
+			NEURON, TOPOLOGY, SELF_MODEL, BOUNDARY_MODEL, ACTIVITY_MODEL);
+	static final MethodHandle MOVE_MOORE = method(FLUID_NN, "moveMoore", boolean.class, NEURON, BOUNDARY_MODEL);
+	static final MethodHandle HAS_NEIGHBORS = method(FLUID_NN, "hasNeighbors", boolean.class, NEURON, BOUNDARY_MODEL);
+	static final MethodHandle SET_HALO_BOUNDARY_MODEL = method(FLUID_NN, "setHaloBoundaryModel", void.class, BOUNDARY_MODEL);
+	// -> Neuron[]
+	static final MethodHandle GET_NEURON_LIST = method(FLUID_NN, "getNeuronList", java.lang.reflect.Array.newInstance(NEURON, 0).getClass());
+
+	// (Neuron, int, Neuron, int) -> double
+	static final MethodHandle PROBABILITY_STATES_JOINT = staticMethod(NEURON, "probabilityStatesJoint", double.class,
+			NEURON, int.class, NEURON, int.class);
+	// (double[]) -> double
+	static final MethodHandle CALCULATE_SKE = staticMethod(FNN, "calculateSKE", double.class, double[].class);
+
+	static final MethodHandle NEW_HISTORY = constructor(HISTORY);
+	static final MethodHandle NEW_VP_TREE_HISTORY = constructor(load("VPTreeHistory"));
+	static final MethodHandle PUT = method(HISTORY, "put", void.class, HISTORY_KEY);
+	// (HistoryKey, double) -> Integer
+	static final MethodHandle GET = method(HISTORY, "get", Integer.class, HISTORY_KEY, double.class);
+	// (double[]) -> HistoryKey
+	static final MethodHandle NEW_HISTORY_KEY = constructor(HISTORY_KEY, double[].class);
+	static final MethodHandle DISTANCE_FROM = method(HISTORY_KEY, "distanceFrom", double.class, HISTORY_KEY);
+
+
+	private Fnn() {
+	}
+
+
+	// the constant of an enum of the simulation with the given name
+	static Object enumConstant(Class<?> enumClass, String name) {
+		for (Object constant : enumClass.getEnumConstants()) {
+			if (((Enum<?>) constant).name().equals(name)) {
+				return constant;
+			}
+		}
+		throw new IllegalArgumentException("no " + name + " in " + enumClass.getName());
+	}
+
+
+	private static Class<?> load(String name) {
+		try {
+			return Class.forName(name);
+		}
+		catch (ClassNotFoundException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static MethodHandle method(Class<?> owner, String name, Class<?> returnType, Class<?>... parameterTypes) {
+		try {
+			return erase(LOOKUP.findVirtual(owner, name, MethodType.methodType(returnType, parameterTypes)));
+		}
+		catch (ReflectiveOperationException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static MethodHandle staticMethod(Class<?> owner, String name, Class<?> returnType, Class<?>... parameterTypes) {
+		try {
+			return erase(LOOKUP.findStatic(owner, name, MethodType.methodType(returnType, parameterTypes)));
+		}
+		catch (ReflectiveOperationException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static MethodHandle constructor(Class<?> owner, Class<?>... parameterTypes) {
+		try {
+			return erase(LOOKUP.findConstructor(owner, MethodType.methodType(void.class, parameterTypes)));
+		}
+		catch (ReflectiveOperationException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	// every reference type (including arrays) to Object; primitives are left alone
+	private static MethodHandle erase(MethodHandle handle) {
+		return handle.asType(handle.type().erase());
+	}
+
+}
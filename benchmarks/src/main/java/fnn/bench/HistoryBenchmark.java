@@ -0,0 +1,99 @@
+package fnn.bench;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Counting the neighbors of a history in a pooled History (History.get, as the AIS of
+ * FNN.runExperiment2 does for every neuron), and the distance between two histories that
+ * every count is made of (HistoryKey.distanceFrom).
+ *
+ * The keys are activation-level-like series:  a few shapes, each with its own noise, so that
+ * there are near and far keys, as in a run.  The radius is the distance from the query to
+ * its radiusRank-th nearest key, as a fraction of the number of keys, so that the same
+ * fraction of keys is in the neighborhood whatever the length.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HistoryBenchmark {
+
+	@Param({ "History", "VPTreeHistory" })
+	public String index;
+
+	@Param({ "100", "1000" })
+	public int numKeys;
+
+	@Param({ "1000", "10000" })
+	public int historyLength;
+
+	@Param({ "0.01", "0.5" })
+	public double radiusRank;
+
+	private Object history;
+	private Object[] keys;
+	private Object query;
+	private double radius;
+
+
+	@Setup
+	public void setUp() throws Throwable {
+
+		Random rand = new Random(0);
+		history = index.equals("History") ? (Object) Fnn.NEW_HISTORY.invokeExact() : (Object) Fnn.NEW_VP_TREE_HISTORY.invokeExact();
+		keys = new Object[numKeys];
+		for (int k = 0 ; k < numKeys ; ++k) {
+			keys[k] = (Object) Fnn.NEW_HISTORY_KEY.invokeExact((Object) series(rand, k % 5));
+			Fnn.PUT.invokeExact(history, keys[k]);
+		}
+		query = (Object) Fnn.NEW_HISTORY_KEY.invokeExact((Object) series(rand, 0));
+
+		double[] distances = new double[numKeys];
+		for (int k = 0 ; k < numKeys ; ++k) {
+			distances[k] = (double) Fnn.DISTANCE_FROM.invokeExact(query, keys[k]);
+		}
+		Arrays.sort(distances);
+		radius = distances[Math.min(numKeys - 1, (int) (radiusRank * numKeys))];
+
+	}
+
+
+	private double[] series(Random rand, int shape) {
+		double[] series = new double[historyLength];
+		for (int t = 0 ; t < historyLength ; ++t) {
+			series[t] = 0.5 * Math.sin(0.01 * (shape + 1) * t) + 0.02 * rand.nextGaussian();
+		}
+		return series;
+	}
+
+
+	@Benchmark
+	public Object get() throws Throwable {
+		return (Object) Fnn.GET.invokeExact(history, query, radius);
+	}
+
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public double distanceFrom() throws Throwable {
+		return (double) Fnn.DISTANCE_FROM.invokeExact(query, keys[numKeys - 1]);
+	}
+
+}
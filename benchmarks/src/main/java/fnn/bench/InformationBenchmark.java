@@ -0,0 +1,90 @@
+package fnn.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * The measures worked out at the end of a run:  the joint probability of the states of a
+ * pair of neurons, from their activity histories (Neuron.probabilityStatesJoint, four of
+ * which make up the info transfer of a pair), and the Shannon-Kolmogorov entropy of a
+ * histogram of the number of active neurons (FNN.calculateSKE).
+ *
+ * The pair's histories come from an actual run of historyLength iterations of data
+ * collection on a small network; the histogram is random.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InformationBenchmark {
+
+	@Param({ "1000", "10000" })
+	public int historyLength;
+
+	// number of neurons, i.e., one less than the number of bins of the histogram
+	@Param({ "40", "2000" })
+	public int numNeurons;
+
+	private Object neuron1;
+	private Object neuron2;
+	private double[] histogramNumActive;
+
+
+	@Setup
+	public void setUp() throws Throwable {
+
+		Object rand = (Object) Fnn.CREATE_RANDOM_STREAM.invokeExact(Fnn.enumConstant(Fnn.GENERATOR, "JAVA_RANDOM"), 0L);
+		int numIterationsDiscarded = 100;
+		int numIterations = numIterationsDiscarded + historyLength;
+		Object context = (Object) Fnn.NEW_SIMULATION_CONTEXT.invokeExact(rand, numIterations, numIterationsDiscarded,
+				0.2, 0.0, 1e-16, 0.2, 0.01);
+		Object fnn = (Object) Fnn.NEW_FLUID_NN.invokeExact(10, 10, 50, context);
+		Object topology = Fnn.enumConstant(Fnn.TOPOLOGY, "FNN_MOORE");
+		Object selfModel = Fnn.enumConstant(Fnn.SELF_MODEL, "INCLUDE_SELF");
+		Object boundaryModel = Fnn.enumConstant(Fnn.BOUNDARY_MODEL, "LATTICE");
+		Object activityModel = Fnn.enumConstant(Fnn.ACTIVITY_MODEL, "ALL_NEURONS");
+		// as in FNN.runExperiment
+		for (int iteration = 1 ; iteration <= numIterations ; ++iteration) {
+			Fnn.SET_ITERATION.invokeExact(context, iteration);
+			Fnn.MOVE_AND_UPDATE_NEURONS.invokeExact(fnn, topology, selfModel, boundaryModel, activityModel);
+		}
+		Object[] neurons = (Object[]) (Object) Fnn.GET_NEURON_LIST.invokeExact(fnn);
+		neuron1 = neurons[0];
+		neuron2 = neurons[1];
+
+		Random random = new Random(0);
+		histogramNumActive = new double[numNeurons + 1];
+		for (int i = 0 ; i < historyLength ; ++i) {
+			++histogramNumActive[random.nextInt(numNeurons + 1)];
+		}
+
+	}
+
+
+	@Benchmark
+	public double probabilityStatesJoint() throws Throwable {
+		return (double) Fnn.PROBABILITY_STATES_JOINT.invokeExact(neuron1, 1, neuron2, 0);
+	}
+
+
+	@Benchmark
+	public double calculateSKE() throws Throwable {
+		return (double) Fnn.CALCULATE_SKE.invokeExact((Object) histogramNumActive);
+	}
+
+}